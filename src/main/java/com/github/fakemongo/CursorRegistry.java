@@ -0,0 +1,96 @@
+package com.github.fakemongo;
+
+import com.github.fakemongo.impl.ServerCursor;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The open cursors of a {@link Fongo}, by id, between a query and its getMore.
+ * <p/>
+ * As mongod, a cursor not used for {@link #DEFAULT_TIMEOUT_MILLIS} is killed, unless opened with noCursorTimeout. The
+ * idle cursors are collected when a cursor is registered : there is no thread.
+ */
+final class CursorRegistry {
+  // 10 minutes, as cursorTimeoutMillis of mongod.
+  static final long DEFAULT_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+  private final Map<Long, Entry> cursors = new ConcurrentHashMap<Long, Entry>();
+  private final AtomicLong ids = new AtomicLong();
+  private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+  private static final class Entry {
+    private final ServerCursor cursor;
+    private final boolean noTimeout;
+    private volatile long lastUsed;
+
+    Entry(ServerCursor cursor, boolean noTimeout, long now) {
+      this.cursor = cursor;
+      this.noTimeout = noTimeout;
+      this.lastUsed = now;
+    }
+  }
+
+  long register(ServerCursor cursor, boolean noTimeout, long now) {
+    killIdle(now);
+    final long id = ids.incrementAndGet();
+    cursors.put(id, new Entry(cursor, noTimeout, now));
+    return id;
+  }
+
+  /**
+   * @return the cursor, null if unknown, killed or timed out.
+   */
+  ServerCursor get(long id, long now) {
+    final Entry entry = cursors.get(id);
+    if (entry == null) {
+      return null;
+    }
+    if (isIdle(entry, now)) {
+      kill(id);
+      return null;
+    }
+    entry.lastUsed = now;
+    return entry.cursor;
+  }
+
+  /**
+   * @return true if the cursor existed.
+   */
+  boolean kill(long id) {
+    final Entry entry = cursors.remove(id);
+    if (entry != null) {
+      entry.cursor.close();
+    }
+    return entry != null;
+  }
+
+  /**
+   * @return the number of killed cursors.
+   */
+  int killIdle(long now) {
+    int killed = 0;
+    for (Iterator<Map.Entry<Long, Entry>> iterator = cursors.entrySet().iterator(); iterator.hasNext(); ) {
+      final Entry entry = iterator.next().getValue();
+      if (isIdle(entry, now)) {
+        iterator.remove();
+        entry.cursor.close();
+        killed++;
+      }
+    }
+    return killed;
+  }
+
+  private boolean isIdle(Entry entry, long now) {
+    return !entry.noTimeout && now - entry.lastUsed >= timeoutMillis;
+  }
+
+  int size() {
+    return cursors.size();
+  }
+
+  void setTimeoutMillis(long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+}
@@ -1,5 +1,8 @@
 package com.github.fakemongo;
 
+import com.github.fakemongo.impl.Oplog;
+import com.github.fakemongo.impl.ServerCursor;
+import com.github.fakemongo.impl.index.IndexBuild;
 import com.mongodb.*;
 import com.mongodb.binding.ConnectionSource;
 import com.mongodb.binding.ReadBinding;
@@ -18,11 +21,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Faked out version of com.mongodb.Mongo
@@ -57,6 +63,14 @@ public class Fongo implements OperationExecutor, VisibleOperationExecutor {
   private final String name;
   private final ServerVersion serverVersion;
   private final CodecRegistry codecRegistry;
+  private final AtomicLong operationIds = new AtomicLong();
+  // Background index builds in progress, by opid.
+  private final Map<Long, IndexBuild> indexBuilds = new ConcurrentHashMap<Long, IndexBuild>();
+  private final TtlMonitor ttlMonitor;
+  private final CursorRegistry cursors = new CursorRegistry();
+  // Started by the first change stream.
+  private volatile Oplog oplog;
+  private volatile Clock clock = Clock.systemUTC();
 
   /**
    * @param name Used only for a nice toString in case you have multiple instances
@@ -84,6 +98,7 @@ public class Fongo implements OperationExecutor, VisibleOperationExecutor {
     this.serverVersion = serverVersion;
     this.codecRegistry = codecRegistry;
     this.mongo = createMongo();
+    this.ttlMonitor = new TtlMonitor(this, name);
   }
 
   /**
@@ -169,6 +184,146 @@ public class Fongo implements OperationExecutor, VisibleOperationExecutor {
     return codecRegistry;
   }
 
+  /**
+   * @return a new id of operation, as reported by currentOp.
+   */
+  public long nextOperationId() {
+    return operationIds.incrementAndGet();
+  }
+
+  /**
+   * Register a background index build in the operations in progress.
+   *
+   * @param build the build.
+   */
+  public void indexBuildStarted(IndexBuild build) {
+    indexBuilds.put(build.getOpid(), build);
+  }
+
+  /**
+   * @param build the build, finished, failed or aborted.
+   */
+  public void indexBuildFinished(IndexBuild build) {
+    indexBuilds.remove(build.getOpid());
+  }
+
+  /**
+   * The operations in progress : only the background index builds are long enough to be reported.
+   *
+   * @return the operations, as in the inprog of a currentOp.
+   */
+  public List<DBObject> currentOp() {
+    final List<DBObject> operations = new ArrayList<DBObject>();
+    for (IndexBuild build : indexBuilds.values()) {
+      operations.add(build.toDBObject());
+    }
+    return operations;
+  }
+
+  /**
+   * Keep a cursor for the next getMore.
+   *
+   * @param noTimeout true if the cursor must not be killed when idle.
+   * @return the id of the cursor.
+   */
+  public long registerCursor(ServerCursor cursor, boolean noTimeout) {
+    return cursors.register(cursor, noTimeout, clock.millis());
+  }
+
+  /**
+   * @return the cursor, null if unknown, killed or timed out.
+   */
+  public ServerCursor getCursor(long id) {
+    return cursors.get(id, clock.millis());
+  }
+
+  /**
+   * @return true if the cursor existed.
+   */
+  public boolean killCursor(long id) {
+    return cursors.kill(id);
+  }
+
+  /**
+   * Kill the cursors idle for longer than the cursor timeout.
+   *
+   * @return the number of killed cursors.
+   */
+  public int killIdleCursors() {
+    return cursors.killIdle(clock.millis());
+  }
+
+  /**
+   * @return the number of open cursors.
+   */
+  public int getOpenCursorCount() {
+    return cursors.size();
+  }
+
+  /**
+   * @param timeoutMillis time after which an idle cursor is killed, 10 minutes by default.
+   */
+  public void setCursorTimeoutMillis(long timeoutMillis) {
+    cursors.setTimeoutMillis(timeoutMillis);
+  }
+
+  /**
+   * @return the clock giving the time of the TTL monitor and of the cursor timeouts.
+   */
+  public Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * Change the clock giving the time of the TTL monitor and of the cursor timeouts : a fixed clock lets a test decide
+   * which documents are expired.
+   *
+   * @param clock the new clock.
+   */
+  public void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * @return the oplog, null if no change stream was opened : the writes are not recorded.
+   */
+  public Oplog getOplog() {
+    return oplog;
+  }
+
+  /**
+   * Start recording the writes, for the change streams.
+   *
+   * @return the oplog.
+   */
+  public synchronized Oplog startOplog() {
+    if (oplog == null) {
+      oplog = new Oplog(this, Oplog.DEFAULT_MAX_EVENTS);
+    }
+    return oplog;
+  }
+
+  /**
+   * Called with the creation of a TTL index : starts the TTL monitor if needed.
+   */
+  public void ttlIndexCreated() {
+    ttlMonitor.start(TtlMonitor.DEFAULT_SLEEP_SECONDS);
+  }
+
+  /**
+   * Remove now the documents expired at the time of the clock, as the TTL monitor does every 60 seconds.
+   *
+   * @return the number of removed documents.
+   */
+  public int removeExpiredDocuments() {
+    final Date now = new Date(clock.millis());
+    int removed = 0;
+    for (FongoDB db : dbMap.values()) {
+      removed += db.removeExpired(now);
+    }
+    return removed;
+  }
+
   private MongoClient createMongo() {
     return MockMongoClient.create(this);
   }
@@ -1,6 +1,9 @@
 package com.github.fakemongo;
 
+import com.github.fakemongo.impl.ChangeStreamCursor;
 import com.github.fakemongo.impl.ExpressionParser;
+import com.github.fakemongo.impl.IteratorCursor;
+import com.github.fakemongo.impl.ServerCursor;
 import com.github.fakemongo.impl.geo.GeoUtil;
 import com.github.fakemongo.impl.index.IndexAbstract;
 import com.mongodb.*;
@@ -195,6 +198,8 @@ public class FongoConnection implements Connection {
       throw new IllegalArgumentException("Invalid collection name " + collectionName);
   }
 
+  // As mongod, when the query gives no batchSize.
+  private static final int DEFAULT_FIRST_BATCH_SIZE = 101;
   private static final List<String> IGNORED_KEYS = asList("ok", "err", "code");
 
   BulkWriteError getBulkWriteError(final WriteConcernException writeException) {
@@ -489,7 +494,12 @@ public class FongoConnection implements Connection {
     final FongoDB db = fongo.getDB(database);
     LOG.debug("command() database:{}, command:{}", database, command);
     if (command.containsKey("create")) {
-      final FongoDBCollection dbCollection = (FongoDBCollection) db.getCollection(command.get("create").asString().getValue());
+      final String collectionName = command.get("create").asString().getValue();
+      if (getBooleanOrFalse(command, "capped")) {
+        db.createCollection(collectionName, dbObject(command));
+      } else {
+        db.getCollection(collectionName);
+      }
 
       return (T) new BsonDocument("ok", BsonBoolean.TRUE);
     } else if (command.containsKey("count")) {
@@ -529,8 +539,12 @@ public class FongoConnection implements Connection {
       final List<Object> distincts = dbCollection.distinct(command.getString("key").getValue(), query);
       return reencode(commandResultDecoder, "values", bsonArray(distincts));
     } else if (command.containsKey("aggregate")) {
+      final List<DBObject> pipeline = dbObjects(command, "pipeline");
+      if (!pipeline.isEmpty() && pipeline.get(0).containsField("$changeStream")) {
+        return changeStream(db, command, pipeline, commandResultDecoder);
+      }
       final DBCollection dbCollection = db.getCollection(command.get("aggregate").asString().getValue());
-      final AggregationOutput aggregate = dbCollection.aggregate(dbObjects(command, "pipeline"));
+      final AggregationOutput aggregate = dbCollection.aggregate(pipeline);
       final boolean v3 = command.containsKey("cursor");
       final String resultField = v3 ? "cursor" : "result";
       final Iterable<DBObject> results = aggregate.results();
@@ -550,8 +564,22 @@ public class FongoConnection implements Connection {
         DBObject keys = dbObject(bsonDocument.getDocument("key"));
         String name = bsonDocument.getString("name").getValue();
         boolean unique = bsonDocument.getBoolean("unique", BsonBoolean.FALSE).getValue();
+        boolean background = bsonDocument.getBoolean("background", BsonBoolean.FALSE).getValue();
 
-        dbCollection.createIndex(keys, name, unique);
+        final DBObject options = new BasicDBObject("name", name);
+        if (unique) {
+          options.put("unique", Boolean.TRUE);
+        }
+        if (background) {
+          options.put("background", Boolean.TRUE);
+        }
+        if (bsonDocument.containsKey("partialFilterExpression")) {
+          options.put("partialFilterExpression", dbObject(bsonDocument.getDocument("partialFilterExpression")));
+        }
+        if (bsonDocument.containsKey("expireAfterSeconds")) {
+          options.put("expireAfterSeconds", bsonDocument.getNumber("expireAfterSeconds").longValue());
+        }
+        dbCollection.createIndex(keys, options);
       }
 
       return (T) new BsonDocument("ok", BsonBoolean.TRUE);
@@ -584,6 +612,10 @@ public class FongoConnection implements Connection {
       return (T) new BsonDocument("ok", new BsonInt32(1));
     } else if (command.containsKey("ping")) {
       return (T) new Document("ok", 1.0);
+    } else if (command.containsKey("currentOp")) {
+      final CommandResult commandResult = db.command(dbObject(command));
+      commandResult.throwOnError();
+      return commandResultDecoder.decode(new BsonDocumentReader(bsonDocument(commandResult)), decoderContext());
     } else if (command.containsKey("insert")) {
       final FongoDBCollection dbCollection = (FongoDBCollection) db.getCollection(command.get("insert").asString().getValue());
       List<BsonValue> documentsToInsert = command.getArray("documents").getValues();
@@ -634,20 +666,59 @@ public class FongoConnection implements Connection {
       if (command.containsKey("projection")) {
         projection = dbObject(command.getDocument("projection"));
       }
-      DBObject query = new BasicDBObject();
-      query.put("$query", dbObject(asDocument(command.get("filter"))));
-      if (command.containsKey("sort")) {
-        query.put("$orderby", dbObject(command.getDocument("sort")));
+      final ServerCursor cursor;
+      if (getBooleanOrFalse(command, "tailable")) {
+        cursor = dbCollection.tailableCursor(dbObject(asDocument(command.get("filter"))), projection, getBooleanOrFalse(command, "awaitData"));
+      } else {
+        DBObject query = new BasicDBObject();
+        query.put("$query", dbObject(asDocument(command.get("filter"))));
+        if (command.containsKey("sort")) {
+          query.put("$orderby", dbObject(command.getDocument("sort")));
+        }
+        final DBCursor cur = dbCollection.find(query, projection);
+        cur.limit(limit.getValue());
+        cur.skip(skip.getValue());
+        cur.maxScan(maxScan.getValue());
+        cursor = new IteratorCursor(dbCollection.getFullName(), cur);
       }
-      final DBCursor cur = dbCollection.find(query, projection);
-      cur.limit(limit.getValue());
-      cur.skip(skip.getValue());
-      cur.maxScan(maxScan.getValue());
-      final List<Document> each = documents(cur.toArray());
-//      return (T) new BsonDocument("cursor", new BsonDocument("id",
-//          new BsonInt64(0)).append("ns", new BsonString(dbCollection.getFullName()))
-//          .append("firstBatch", FongoBsonArrayWrapper.bsonArrayWrapper(each)));
-      return reencode(commandResultDecoder, "cursor", new BasicDBObject("id", 0L).append("ns", dbCollection.getFullName()).append("firstBatch", each));
+      final int batchSize = command.containsKey("batchSize") ? command.getNumber("batchSize").intValue() : DEFAULT_FIRST_BATCH_SIZE;
+      // A batchSize of 0 opens the cursor without documents.
+      final List<Document> firstBatch = batchSize == 0 ? new ArrayList<Document>() : documents(cursor.next(batchSize, 0));
+      final long cursorId = cursorId(cursor, getBooleanOrFalse(command, "singleBatch"), getBooleanOrFalse(command, "noCursorTimeout"));
+      return reencode(commandResultDecoder, "cursor", new BasicDBObject("id", cursorId).append("ns", dbCollection.getFullName()).append("firstBatch", firstBatch));
+    } else if (command.containsKey("getMore")) {
+      final long cursorId = command.getNumber("getMore").longValue();
+      final ServerCursor cursor = fongo.getCursor(cursorId);
+      if (cursor == null) {
+        throw db.mongoCommandException(43, "Cursor not found, cursor id: " + cursorId);
+      }
+      final int batchSize = command.containsKey("batchSize") ? command.getNumber("batchSize").intValue() : 0;
+      final long awaitMillis = !cursor.isAwaitData() ? 0
+          : command.containsKey("maxTimeMS") ? command.getNumber("maxTimeMS").longValue() : FongoTailableCursor.DEFAULT_AWAIT_MILLIS;
+      final List<Document> nextBatch;
+      try {
+        nextBatch = documents(cursor.next(batchSize, awaitMillis));
+      } catch (MongoException e) {
+        fongo.killCursor(cursorId);
+        throw db.mongoCommandException(e.getCode(), e.getMessage());
+      }
+      final long nextCursorId = cursor.isExhausted() && fongo.killCursor(cursorId) ? 0 : cursorId;
+      return reencode(commandResultDecoder, "cursor", new BasicDBObject("id", nextCursorId).append("ns", cursor.getNamespace()).append("nextBatch", nextBatch));
+    } else if (command.containsKey("killCursors")) {
+      final List<BsonValue> killed = new ArrayList<BsonValue>();
+      final List<BsonValue> notFound = new ArrayList<BsonValue>();
+      for (BsonValue cursor : command.getArray("cursors")) {
+        if (fongo.killCursor(cursor.asNumber().longValue())) {
+          killed.add(cursor);
+        } else {
+          notFound.add(cursor);
+        }
+      }
+      return (T) new BsonDocument("cursorsKilled", new BsonArray(killed))
+          .append("cursorsNotFound", new BsonArray(notFound))
+          .append("cursorsAlive", new BsonArray())
+          .append("cursorsUnknown", new BsonArray())
+          .append("ok", new BsonDouble(1.0));
     } else if (command.containsKey("listDatabases")) {
       final List<String> databaseNames = fongo.getDatabaseNames();
       final List<BsonDocument> documents = new ArrayList<BsonDocument>();
@@ -802,43 +873,66 @@ public class FongoConnection implements Connection {
 
   @Override
   public <T> QueryResult<T> query(MongoNamespace namespace, BsonDocument queryDocument, BsonDocument fields, int numberToReturn, int skip, boolean slaveOk, boolean tailableCursor, boolean awaitData, boolean noCursorTimeout, boolean partial, boolean oplogReplay, Decoder<T> resultDecoder) {
-    LOG.debug("query() namespace:{} queryDocument:{}, fields:{}", namespace, queryDocument, fields);
-    final DBCollection collection = dbCollection(namespace);
-
-    final List<DBObject> objects = collection
-        .find(dbObject(queryDocument), dbObject(fields))
-        .limit(numberToReturn)
-        .skip(skip)
-        .toArray();
-
-    return new QueryResult(namespace, decode(objects, resultDecoder), 1, fongo.getServerAddress());
+    // numberToReturn is the size of the first batch, negative for a single batch.
+    return query(namespace, queryDocument, fields, skip, 0, numberToReturn, slaveOk, tailableCursor, awaitData,
+        noCursorTimeout, partial, oplogReplay, resultDecoder);
   }
 
   @Override
   public <T> QueryResult<T> query(MongoNamespace namespace, BsonDocument queryDocument, BsonDocument fields, int skip,
                                   int limit, int batchSize, boolean slaveOk, boolean tailableCursor, boolean awaitData,
                                   boolean noCursorTimeout, boolean partial, boolean oplogReplay, Decoder<T> resultDecoder) {
-    // we ignore the batchSize here since batching is not implemented.
-    return query(namespace, queryDocument, fields,
-        limit, skip, slaveOk, tailableCursor, awaitData,
-        noCursorTimeout, partial, oplogReplay, resultDecoder);
+    LOG.debug("query() namespace:{} queryDocument:{}, fields:{}, batchSize:{}", namespace, queryDocument, fields, batchSize);
+    final FongoDBCollection collection = dbCollection(namespace);
+    final ServerCursor cursor;
+    if (tailableCursor) {
+      cursor = collection.tailableCursor(dbObject(queryDocument), dbObject(fields), awaitData);
+    } else {
+      cursor = new IteratorCursor(namespace.getFullName(), collection
+          .find(dbObject(queryDocument), dbObject(fields))
+          .limit(Math.abs(limit))
+          .skip(skip));
+    }
+    // A negative limit or batchSize asks for a single batch.
+    final List<DBObject> firstBatch = cursor.next(batchSize == 0 ? DEFAULT_FIRST_BATCH_SIZE : Math.abs(batchSize), 0);
+    final long cursorId = cursorId(cursor, limit < 0 || batchSize < 0, noCursorTimeout);
+    return new QueryResult(namespace, decode(firstBatch, resultDecoder), cursorId, fongo.getServerAddress());
   }
 
   @Override
   public <T> QueryResult<T> getMore(MongoNamespace namespace, long cursorId, int numberToReturn, Decoder<T> resultDecoder) {
     LOG.debug("getMore() namespace:{} cursorId:{}", namespace, cursorId);
+    final ServerCursor cursor = fongo.getCursor(cursorId);
+    if (cursor == null) {
+      throw new MongoCursorNotFoundException(cursorId, fongo.getServerAddress());
+    }
+    final long awaitMillis = cursor.isAwaitData() ? FongoTailableCursor.DEFAULT_AWAIT_MILLIS : 0;
+    final List<DBObject> nextBatch;
+    try {
+      nextBatch = cursor.next(numberToReturn, awaitMillis);
+    } catch (MongoException e) {
+      fongo.killCursor(cursorId);
+      throw e;
+    }
     // 0 means Cursor exhausted.
-    return new QueryResult(namespace, Collections.emptyList(), 0, fongo.getServerAddress());
+    final long nextCursorId = cursor.isExhausted() && fongo.killCursor(cursorId) ? 0 : cursorId;
+    return new QueryResult(namespace, decode(nextBatch, resultDecoder), nextCursorId, fongo.getServerAddress());
   }
 
   @Override
   public void killCursor(List<Long> cursors) {
     LOG.info("killCursor() cursors:{}", cursors);
+    for (Long cursor : cursors) {
+      fongo.killCursor(cursor);
+    }
   }
 
   @Override
   public void killCursor(MongoNamespace namespace, List<Long> cursors) {
     LOG.debug("killCursor() namespace:{}, cursors:{}", namespace.getFullName(), cursors);
+    for (Long cursor : cursors) {
+      fongo.killCursor(cursor);
+    }
   }
 
   @Override
@@ -852,6 +946,40 @@ public class FongoConnection implements Connection {
     LOG.debug("release()");
   }
 
+  /**
+   * Open a change stream : on a collection, on a database with {aggregate: 1}, or on all the databases with
+   * allChangesForCluster.
+   */
+  private <T> T changeStream(FongoDB db, BsonDocument command, List<DBObject> pipeline, Decoder<T> commandResultDecoder) {
+    final String collectionName = command.isString("aggregate") ? command.getString("aggregate").getValue() : null;
+    final DBObject options = ExpressionParser.toDbObject(pipeline.get(0).get("$changeStream"));
+    final String databaseName = Boolean.TRUE.equals(options.get("allChangesForCluster")) ? null : db.getName();
+    final ChangeStreamCursor cursor;
+    try {
+      cursor = new ChangeStreamCursor(fongo, databaseName, collectionName, options, pipeline.subList(1, pipeline.size()));
+    } catch (MongoException e) {
+      throw db.mongoCommandException(e.getCode(), e.getMessage());
+    }
+    final BsonDocument cursorOptions = command.containsKey("cursor") ? command.getDocument("cursor") : new BsonDocument();
+    final int batchSize = cursorOptions.containsKey("batchSize") ? cursorOptions.getNumber("batchSize").intValue() : DEFAULT_FIRST_BATCH_SIZE;
+    final List<Document> firstBatch = batchSize == 0 ? new ArrayList<Document>() : documents(cursor.next(batchSize, 0));
+    final long cursorId = cursorId(cursor, false, false);
+    return reencode(commandResultDecoder, "cursor", new BasicDBObject("id", cursorId).append("ns", cursor.getNamespace()).append("firstBatch", firstBatch));
+  }
+
+  /**
+   * Keep the cursor for the next getMore if documents remain after its first batch.
+   *
+   * @return the id of the cursor, 0 if closed.
+   */
+  private long cursorId(ServerCursor cursor, boolean singleBatch, boolean noCursorTimeout) {
+    if (singleBatch || cursor.isExhausted()) {
+      cursor.close();
+      return 0;
+    }
+    return fongo.registerCursor(cursor, noCursorTimeout);
+  }
+
   private FongoDBCollection dbCollection(MongoNamespace namespace) {
     return fongo.getDB(namespace.getDatabaseName()).getCollection(namespace.getCollectionName());
   }
@@ -0,0 +1,67 @@
+package com.github.fakemongo;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The thread removing the expired documents of the TTL indexes of a {@link Fongo}, every 60 seconds like the TTL
+ * monitor of MongoDB. Started with the first TTL index.
+ * <p/>
+ * The thread only holds a weak reference to the Fongo : it stops when the Fongo is no more used.
+ */
+final class TtlMonitor {
+  private final static Logger LOG = LoggerFactory.getLogger(TtlMonitor.class);
+
+  static final long DEFAULT_SLEEP_SECONDS = 60;
+
+  private final WeakReference<Fongo> fongo;
+  private final String name;
+  private final AtomicBoolean started = new AtomicBoolean();
+  private volatile ScheduledExecutorService executor;
+
+  TtlMonitor(Fongo fongo, String name) {
+    this.fongo = new WeakReference<Fongo>(fongo);
+    this.name = name;
+  }
+
+  void start(long sleepSeconds) {
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "fongo-ttl-monitor-" + name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        final Fongo current = fongo.get();
+        if (current == null) {
+          executor.shutdown();
+          return;
+        }
+        try {
+          final int removed = current.removeExpiredDocuments();
+          LOG.debug("TTL monitor of {} removed {} documents", name, removed);
+        } catch (RuntimeException e) {
+          // The next pass must run.
+          LOG.warn("TTL monitor of {} failed", name, e);
+        }
+      }
+    }, sleepSeconds, sleepSeconds, TimeUnit.SECONDS);
+  }
+
+  boolean isStarted() {
+    return started.get();
+  }
+}
@@ -1,14 +1,17 @@
 package com.github.fakemongo.impl;
 
 import com.github.fakemongo.impl.aggregation.*;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.FongoDB;
 import com.mongodb.FongoDBCollection;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,33 +37,161 @@ public class Aggregator {
   }
 
   /**
+   * The stages which can be applied on a stream pull the documents one by one from the previous stage : only the
+   * other stages work on a collection, created from the stream when needed.
+   * <p/>
+   * The leading $match, $sort, $skip and $limit stages are pushed down to a find on the collection : it uses the
+   * indexes, keeps only the top documents of a sort, and clones only the documents entering the pipeline.
+   *
    * @return null if error.
    */
   public List<DBObject> computeResult() {
-    DBCollection coll = fongoDB.createCollection(UUID.randomUUID().toString(), new BasicDBObject());
+    final SourceQuery sourceQuery = new SourceQuery();
+    final int firstStage = sourceQuery.pushDown(pipeline);
+    Iterator<DBObject> objects = sourceQuery.find(this.fongoDBCollection);
+    // The collection of the last stage which can't be applied on a stream, null if the documents are streamed.
+    DBCollection coll = null;
     try {
-      coll.insert(this.fongoDBCollection.find().toArray());
-
-      for (DBObject object : pipeline) {
-        boolean found = false;
-        for (PipelineKeyword keyword : keywords) {
-          if (keyword.canApply(object)) {
+      for (int i = firstStage; i < pipeline.size(); i++) {
+        final DBObject object = pipeline.get(i);
+        final PipelineKeyword keyword = keywordOf(object);
+        if (keyword == null) {
+          fongoDB.notOkErrorResult(16436, "exception: Unrecognized pipeline stage name: '" + object.keySet() + "'").throwOnError();
+          // Not found : com.mongodb.CommandFailureException: { "serverUsed" : "localhost/127.0.0.1:27017" , "errmsg" : "exception: Unrecognized pipeline stage name: '_id'" , "code" : 16436 , "ok" : 0.0}
+        }
+        final Integer limit = keyword == Sort.INSTANCE ? limitOf(i + 1) : null;
+        if (keyword.canStream(object)) {
+          if (coll != null) {
+            objects = coll.find().toArray().iterator();
+            coll.drop();
+            coll = null;
+          }
+          if (limit != null) {
+            objects = Sort.INSTANCE.apply(this.fongoDBCollection, objects, object, limit);
+          } else {
+            objects = keyword.apply(this.fongoDBCollection, objects, object);
+          }
+        } else {
+          if (coll == null) {
+            coll = PipelineKeyword.createAndInsert(objects);
+            objects = null;
+          }
+          if (limit != null) {
+            coll = Sort.INSTANCE.apply(this.fongoDBCollection.getDB(), coll, object, limit);
+          } else {
             coll = keyword.apply(this.fongoDBCollection.getDB(), coll, object);
-            found = true;
-            break;
           }
         }
-        if (!found) {
-          fongoDB.notOkErrorResult(16436, "exception: Unrecognized pipeline stage name: '" + object.keySet() + "'").throwOnError();
-        }
-        // Not found : com.mongodb.CommandFailureException: { "serverUsed" : "localhost/127.0.0.1:27017" , "errmsg" : "exception: Unrecognized pipeline stage name: '_id'" , "code" : 16436 , "ok" : 0.0}
       }
 
-      List<DBObject> result = coll.find().toArray();
+      final List<DBObject> result;
+      if (coll != null) {
+        result = coll.find().toArray();
+      } else {
+        result = new ArrayList<DBObject>();
+        while (objects.hasNext()) {
+          result.add(objects.next());
+        }
+      }
       LOG.debug("computeResult() : {}", result);
       return result;
     } finally {
-      coll.drop();
+      if (coll != null) {
+        coll.drop();
+      }
+    }
+  }
+
+  /**
+   * The leading stages of a pipeline done by a find on the collection.
+   */
+  private static final class SourceQuery {
+    private final List<DBObject> matches = new ArrayList<DBObject>();
+    private DBObject orderBy;
+    private int skip;
+    // 0 for no limit.
+    private int limit;
+
+    /**
+     * Push down the leading $match (merged), the $sort they surround and the following $skip and $limit.
+     *
+     * @return the index of the first stage not done by the find.
+     */
+    int pushDown(List<? extends DBObject> pipeline) {
+      int stage = 0;
+      for (; stage < pipeline.size(); stage++) {
+        final DBObject object = pipeline.get(stage);
+        if (Match.INSTANCE.canApply(object) && ExpressionParser.isDbObject(object.get(Match.INSTANCE.getKeyword()))) {
+          matches.add(ExpressionParser.toDbObject(object.get(Match.INSTANCE.getKeyword())));
+        } else if (orderBy == null && Sort.INSTANCE.canApply(object) && Sort.INSTANCE.canStream(object)
+            && !ExpressionParser.toDbObject(object.get(Sort.INSTANCE.getKeyword())).keySet().isEmpty()) {
+          orderBy = ExpressionParser.toDbObject(object.get(Sort.INSTANCE.getKeyword()));
+        } else {
+          break;
+        }
+      }
+      // A $match after a $skip or a $limit doesn't select the same documents : only the $skip and $limit follow.
+      for (; stage < pipeline.size(); stage++) {
+        final DBObject object = pipeline.get(stage);
+        if (Skip.INSTANCE.canApply(object) && positive(object.get(Skip.INSTANCE.getKeyword()))) {
+          final int value = ((Number) object.get(Skip.INSTANCE.getKeyword())).intValue();
+          if (limit > 0 && limit <= value) {
+            // Nothing left : the find can't have a limit of 0.
+            break;
+          }
+          skip = (int) Math.min((long) skip + value, Integer.MAX_VALUE);
+          limit = limit > 0 ? limit - value : 0;
+        } else if (Limit.INSTANCE.canApply(object) && positive(object.get(Limit.INSTANCE.getKeyword()))) {
+          final int value = ((Number) object.get(Limit.INSTANCE.getKeyword())).intValue();
+          limit = limit > 0 ? Math.min(limit, value) : value;
+        } else {
+          break;
+        }
+      }
+      return stage;
+    }
+
+    private static boolean positive(Object value) {
+      return value instanceof Number && ((Number) value).intValue() > 0;
+    }
+
+    Iterator<DBObject> find(FongoDBCollection collection) {
+      final DBObject query;
+      if (matches.size() == 1) {
+        query = matches.get(0);
+      } else {
+        final BasicDBList and = new BasicDBList();
+        and.addAll(matches);
+        query = matches.isEmpty() ? new BasicDBObject() : new BasicDBObject("$and", and);
+      }
+      LOG.debug("pushDown() find({}).sort({}).skip({}).limit({})", query, orderBy, skip, limit);
+      final DBCursor cursor = collection.find(query);
+      if (orderBy != null) {
+        cursor.sort(orderBy);
+      }
+      return cursor.skip(skip).limit(limit).iterator();
+    }
+  }
+
+  private static PipelineKeyword keywordOf(DBObject object) {
+    for (PipelineKeyword keyword : keywords) {
+      if (keyword.canApply(object)) {
+        return keyword;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the limit if the stage at this position is a positive $limit, null otherwise.
+   */
+  private Integer limitOf(int stage) {
+    if (stage < pipeline.size() && Limit.INSTANCE.canApply(pipeline.get(stage))) {
+      final Object limit = pipeline.get(stage).get(Limit.INSTANCE.getKeyword());
+      if (limit instanceof Number && ((Number) limit).intValue() > 0) {
+        return ((Number) limit).intValue();
+      }
     }
+    return null;
   }
 }
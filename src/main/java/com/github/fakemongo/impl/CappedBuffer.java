@@ -0,0 +1,205 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The documents of a capped collection, in insertion order, in a ring buffer : appended at the tail, evicted from the
+ * head (oldest first) when the total size or the number of documents goes over the caps.
+ * <p/>
+ * Each document has a position, increasing with the insertions : a tailable cursor reads from the position following
+ * the last document it returned, and waits for the next insertions with {@link #await(long, long)}.
+ * <p/>
+ * NOT Thread Safe for the writes : they must be done under the write lock of the collection, the reads under its read
+ * lock. Only {@link #await(long, long)} can be called without lock.
+ */
+public final class CappedBuffer {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final long maxSize;
+  private final long maxCount;
+
+  private DBObject[] objects;
+  private int[] sizes;
+  // Index in the arrays of the oldest document.
+  private int head;
+  private int count;
+  private long totalSize;
+  // Position of the oldest document.
+  private long first;
+  // Position of the next appended document.
+  private volatile long next;
+  // Position of the documents, for the updates (in place, same size).
+  private final Map<DBObject, Long> positions = new IdentityHashMap<DBObject, Long>();
+
+  /**
+   * @param maxSize  maximum total size of the documents in bytes.
+   * @param maxCount maximum number of documents, 0 for no maximum.
+   */
+  public CappedBuffer(long maxSize, long maxCount) {
+    this.maxSize = maxSize;
+    this.maxCount = maxCount <= 0 ? Long.MAX_VALUE : maxCount;
+    final int capacity = (int) Math.min(this.maxCount, INITIAL_CAPACITY);
+    this.objects = new DBObject[capacity];
+    this.sizes = new int[capacity];
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public long getMaxCount() {
+    return maxCount == Long.MAX_VALUE ? 0 : maxCount;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Append a document, evicting the oldest ones to stay under the caps.
+   *
+   * @param object the stored document.
+   * @param size   its size in bytes.
+   * @return the evicted documents, oldest first.
+   */
+  public List<DBObject> add(DBObject object, int size) {
+    List<DBObject> evicted = Collections.emptyList();
+    while (count > 0 && (count >= maxCount || totalSize + size > maxSize)) {
+      if (evicted.isEmpty()) {
+        evicted = new ArrayList<DBObject>();
+      }
+      evicted.add(removeFirst());
+    }
+    if (count == objects.length) {
+      grow();
+    }
+    final int index = (head + count) % objects.length;
+    objects[index] = object;
+    sizes[index] = size;
+    count++;
+    totalSize += size;
+    positions.put(object, next);
+    synchronized (this) {
+      next++;
+      notifyAll();
+    }
+    return evicted;
+  }
+
+  private DBObject removeFirst() {
+    final DBObject object = objects[head];
+    objects[head] = null;
+    totalSize -= sizes[head];
+    head = (head + 1) % objects.length;
+    count--;
+    first++;
+    positions.remove(object);
+    return object;
+  }
+
+  private void grow() {
+    final int capacity = (int) Math.min(maxCount, Math.max(INITIAL_CAPACITY, (long) objects.length * 2));
+    final DBObject[] newObjects = new DBObject[capacity];
+    final int[] newSizes = new int[capacity];
+    for (int i = 0; i < count; i++) {
+      newObjects[i] = objects[(head + i) % objects.length];
+      newSizes[i] = sizes[(head + i) % objects.length];
+    }
+    objects = newObjects;
+    sizes = newSizes;
+    head = 0;
+  }
+
+  /**
+   * @return the size of the stored document, -1 if not in the buffer.
+   */
+  public int sizeOf(DBObject object) {
+    final Long position = positions.get(object);
+    return position == null ? -1 : sizes[index(position)];
+  }
+
+  /**
+   * Replace a document updated in place, at the same position.
+   */
+  public void replace(DBObject oldObject, DBObject object) {
+    final Long position = positions.remove(oldObject);
+    if (position != null) {
+      objects[index(position)] = object;
+      positions.put(object, position);
+    }
+  }
+
+  private int index(long position) {
+    return (int) ((head + (position - first)) % objects.length);
+  }
+
+  /**
+   * @return the position of the oldest document.
+   */
+  public long first() {
+    return first;
+  }
+
+  /**
+   * @return the position of the next appended document.
+   */
+  public long next() {
+    return next;
+  }
+
+  /**
+   * Read the documents from a position, in insertion order.
+   *
+   * @param position position of the first document to read, not before {@link #first()}.
+   * @param max      maximum number of documents to read.
+   * @param result   receives the documents.
+   * @return the position following the last read document.
+   */
+  public long read(long position, int max, List<DBObject> result) {
+    if (position < first) {
+      throw new IllegalArgumentException("position " + position + " evicted, first is " + first);
+    }
+    long current = position;
+    while (current < first + count && result.size() < max) {
+      result.add(objects[index(current)]);
+      current++;
+    }
+    return current;
+  }
+
+  /**
+   * Wait for a document appended at or after a position.
+   *
+   * @return true if such a document exists, false if the timeout elapsed.
+   */
+  public synchronized boolean await(long position, long timeoutMillis) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (next <= position) {
+      final long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return false;
+      }
+      wait(remaining);
+    }
+    return true;
+  }
+
+  /**
+   * Remove all the documents : the positions already given stay valid, without documents.
+   */
+  public void clear() {
+    for (int i = 0; i < count; i++) {
+      objects[(head + i) % objects.length] = null;
+    }
+    head = 0;
+    count = 0;
+    totalSize = 0;
+    first = next;
+    positions.clear();
+  }
+}
@@ -0,0 +1,176 @@
+package com.github.fakemongo.impl;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.DBObject;
+import com.mongodb.FongoDBCollection;
+import com.mongodb.MongoException;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.types.BSONTimestamp;
+
+/**
+ * The cursor of a $changeStream : the events of the {@link Oplog} on a collection, a database or the whole Fongo, after
+ * the stages following $changeStream ($match and $project).
+ * <p/>
+ * A getMore parks on the oplog until a write arrives : the consumer is notified without polling the collections.
+ */
+public final class ChangeStreamCursor implements ServerCursor {
+  private static final int READ_BATCH_SIZE = 100;
+
+  private final Fongo fongo;
+  private final Oplog oplog;
+  // null for all the databases.
+  private final String db;
+  // null for all the collections of the database.
+  private final String collection;
+  private final boolean updateLookup;
+  private final BSONTimestamp startAtOperationTime;
+  private final List<DBObject> stages;
+  private final ExpressionParser expressionParser = new ExpressionParser();
+  private final List<Filter> filters = new ArrayList<Filter>();
+  private long position;
+  private volatile boolean closed;
+  private volatile boolean invalidated;
+
+  /**
+   * @param db         the database, null for all the databases.
+   * @param collection the collection, null for all the collections.
+   * @param options    the options of $changeStream : fullDocument, resumeAfter, startAtOperationTime.
+   * @param stages     the stages following $changeStream.
+   * @throws MongoException if the resume token is no more in the oplog or a stage is not supported.
+   */
+  public ChangeStreamCursor(Fongo fongo, String db, String collection, DBObject options, List<DBObject> stages) {
+    this.fongo = fongo;
+    this.oplog = fongo.startOplog();
+    this.db = db;
+    this.collection = collection;
+    this.updateLookup = "updateLookup".equals(options.get("fullDocument"));
+    this.stages = stages;
+    for (DBObject stage : stages) {
+      if (stage.containsField("$match")) {
+        filters.add(expressionParser.buildFilter(ExpressionParser.toDbObject(stage.get("$match"))));
+      } else if (stage.containsField("$project")) {
+        filters.add(null);
+      } else {
+        throw new MongoException(16436, "Unrecognized pipeline stage name in a change stream: '" + stage.keySet() + "'");
+      }
+    }
+    final Object resumeAfter = options.get("resumeAfter");
+    final Object startAt = options.get("startAtOperationTime");
+    if (resumeAfter != null) {
+      this.startAtOperationTime = null;
+      this.position = Oplog.position(resumeAfter) + 1;
+      if (this.position <= oplog.first() || this.position > oplog.next()) {
+        throw new MongoException(280, "resume of change stream was not possible, as the resume token was not found. " + resumeAfter);
+      }
+    } else if (startAt instanceof BSONTimestamp) {
+      this.startAtOperationTime = (BSONTimestamp) startAt;
+      this.position = oplog.first();
+    } else {
+      this.startAtOperationTime = null;
+      this.position = oplog.next();
+    }
+  }
+
+  @Override
+  public synchronized List<DBObject> next(int batchSize, long awaitMillis) {
+    final int max = batchSize <= 0 ? Integer.MAX_VALUE : batchSize;
+    final List<DBObject> result = new ArrayList<DBObject>();
+    final long deadline = System.currentTimeMillis() + awaitMillis;
+    final List<DBObject> events = new ArrayList<DBObject>();
+    while (!closed && !invalidated && result.size() < max) {
+      events.clear();
+      oplog.read(position, Math.min(max - result.size(), READ_BATCH_SIZE), events);
+      for (DBObject event : events) {
+        position++;
+        final DBObject change = change(event);
+        if (change != null) {
+          result.add(change);
+        }
+        if (invalidated) {
+          break;
+        }
+      }
+      final long remaining = deadline - System.currentTimeMillis();
+      if (!events.isEmpty() || invalidated) {
+        continue;
+      }
+      if (!result.isEmpty() || remaining <= 0) {
+        break;
+      }
+      try {
+        oplog.await(position, remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the event as seen by this stream, null if filtered.
+   */
+  private DBObject change(DBObject event) {
+    final DBObject ns = (DBObject) event.get("ns");
+    if (db != null && !db.equals(ns.get("db")) || collection != null && !collection.equals(ns.get("coll"))) {
+      return null;
+    }
+    if (startAtOperationTime != null && startAtOperationTime.compareTo((BSONTimestamp) event.get("clusterTime")) > 0) {
+      return null;
+    }
+    final boolean invalidate = "invalidate".equals(event.get("operationType"));
+    if (invalidate && collection == null) {
+      // Only the streams of the dropped collection are closed.
+      return null;
+    }
+    DBObject change = Util.clone(event);
+    if (updateLookup && "update".equals(change.get("operationType"))) {
+      final DBObject documentKey = (DBObject) change.get("documentKey");
+      change.put("fullDocument", fongo.getDB((String) ns.get("db")).getCollection((String) ns.get("coll")).findOne(documentKey));
+    }
+    for (int i = 0; i < stages.size(); i++) {
+      final Filter filter = filters.get(i);
+      if (filter != null) {
+        if (!filter.apply(change)) {
+          return null;
+        }
+      } else {
+        change = FongoDBCollection.applyProjections(change, ExpressionParser.toDbObject(stages.get(i).get("$project")));
+      }
+    }
+    if (!change.containsField("_id")) {
+      throw new MongoException(280, "cannot resume stream; the resume token was not found. " + change);
+    }
+    if (invalidate) {
+      invalidated = true;
+    }
+    return change;
+  }
+
+  /**
+   * A change stream stays open until closed, or invalidated by the drop of its collection.
+   */
+  @Override
+  public boolean isExhausted() {
+    return closed || invalidated;
+  }
+
+  @Override
+  public boolean isAwaitData() {
+    return true;
+  }
+
+  @Override
+  public String getNamespace() {
+    if (collection != null) {
+      return db + "." + collection;
+    }
+    return (db == null ? "admin" : db) + ".$cmd.aggregate";
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+}
@@ -6,7 +6,6 @@ import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.mongodb.DBRef;
-import com.mongodb.FongoDBCollection;
 import com.mongodb.LazyDBObject;
 import com.mongodb.QueryOperators;
 import com.mongodb.util.FongoJSON;
@@ -32,6 +31,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -113,37 +113,32 @@ public class ExpressionParser {
   List<FilterFactory> filterFactories = Arrays.<FilterFactory>asList(
       new ConditionalOperatorFilterFactory(GTE) {
         @Override
-        boolean singleCompare(Object queryValue, Object storedValue) {
-          Integer result = compareObjects(queryValue, storedValue, true);
-          return result != null && result.intValue() <= 0;
+        public boolean accept(int comparison) {
+          return comparison <= 0;
         }
       },
       new ConditionalOperatorFilterFactory(LTE) {
         @Override
-        boolean singleCompare(Object queryValue, Object storedValue) {
-          Integer result = compareObjects(queryValue, storedValue, true);
-          return result != null && result.intValue() >= 0;
+        public boolean accept(int comparison) {
+          return comparison >= 0;
         }
       },
       new ConditionalOperatorFilterFactory(GT) {
         @Override
-        boolean singleCompare(Object queryValue, Object storedValue) {
-          Integer result = compareObjects(queryValue, storedValue, true);
-          return result != null && result.intValue() < 0;
+        public boolean accept(int comparison) {
+          return comparison < 0;
         }
       },
       new ConditionalOperatorFilterFactory(LT) {
         @Override
-        boolean singleCompare(Object queryValue, Object storedValue) {
-          Integer result = compareObjects(queryValue, storedValue, true);
-          return result != null && result.intValue() > 0;
+        public boolean accept(int comparison) {
+          return comparison > 0;
         }
       },
       new ConditionalOperatorFilterFactory(EQ) {
         @Override
-        boolean singleCompare(Object queryValue, Object storedValue) {
-          Integer result = compareObjects(queryValue, storedValue, true);
-          return result != null && result.intValue() == 0;
+        public boolean accept(int comparison) {
+          return comparison == 0;
         }
       },
       new BasicCommandFilterFactory(NE) {
@@ -201,6 +196,8 @@ public class ExpressionParser {
             return false;
           }
 
+          // Keys of the stored values, built only if a scalar is searched.
+          Set<ValueKey> storedKeys = null;
           for (Object queryObject : queryList) {
             if (queryObject instanceof Pattern) {
               if (!listContainsPattern(storedList, (Pattern) queryObject)) {
@@ -216,7 +213,21 @@ public class ExpressionParser {
                 return false;
               }
             } else {
-              if (!storedList.contains(queryObject)) {
+              final ValueKey queryKey = ValueKey.of(queryObject);
+              if (queryKey != null) {
+                if (storedKeys == null) {
+                  storedKeys = new HashSet<ValueKey>();
+                  for (Object stored : storedList) {
+                    final ValueKey storedKey = ValueKey.of(stored);
+                    if (storedKey != null) {
+                      storedKeys.add(storedKey);
+                    }
+                  }
+                }
+                if (!storedKeys.contains(queryKey)) {
+                  return false;
+                }
+              } else if (!storedList.contains(queryObject)) {
                 return false;
               }
             }
@@ -329,6 +340,38 @@ public class ExpressionParser {
     return new SortSpecificationComparator(orderBy);
   }
 
+  /**
+   * The order of the documents sorted by a find.
+   *
+   * @param orderby the directions (1 or -1) by path.
+   */
+  public Comparator<DBObject> sortComparator(final DBObject orderby) {
+    final Set<String> orderbyKeySet = orderby.keySet();
+    final List<List<String>> paths = new ArrayList<List<String>>(orderbyKeySet.size());
+    final int[] sortDirections = new int[orderbyKeySet.size()];
+    for (String sortKey : orderbyKeySet) {
+      sortDirections[paths.size()] = (Integer) orderby.get(sortKey);
+      paths.add(Util.split(sortKey));
+    }
+    return new Comparator<DBObject>() {
+      @Override
+      public int compare(DBObject o1, DBObject o2) {
+        for (int i = 0; i < sortDirections.length; i++) {
+          final List<String> path = paths.get(i);
+
+          List<Object> o1list = getEmbeddedValues(path, o1);
+          List<Object> o2list = getEmbeddedValues(path, o2);
+
+          int compareValue = compareLists(o1list, o2list) * sortDirections[i];
+          if (compareValue != 0) {
+            return compareValue;
+          }
+        }
+        return 0;
+      }
+    };
+  }
+
   private boolean isDBObjectButNotDBList(Object o) {
     return isDbObject(o) && !(o instanceof List);
   }
@@ -633,6 +676,8 @@ public class ExpressionParser {
       }
     } else if (expression instanceof Pattern) {
       return createPatternFilter(path, (Pattern) expression);
+    } else if (FieldFilter.isCompilable(expression)) {
+      return FieldFilter.equalsFilter(path, expression, simpleFilter(path, expression));
     } else {
       return simpleFilter(path, expression);
     }
@@ -745,6 +790,9 @@ public class ExpressionParser {
     // Not comparable for MinKey/MaxKey
     if (!clazz1.isAssignableFrom(clazz2) || !(cc1 instanceof Comparable)) {
       boolean checkTypes = true;
+      if (FieldFilter.isIntegral(cc1) && FieldFilter.isIntegral(cc2)) {
+        return FieldFilter.compareLongs(((Number) cc1).longValue(), ((Number) cc2).longValue());
+      }
       if (cc1 instanceof Number) {
         if (cc2 instanceof Number) {
           cc1 = new BigDecimal(cc1.toString());
@@ -1029,15 +1077,77 @@ public class ExpressionParser {
     return new Filter() {
       @Override
       public boolean apply(DBObject o) {
-        final Geometry objectGeometry = GeoUtil.toGeometry(toDbObject(Util.extractField(o, path)));
-
-        double distance = GeoUtil.distanceInRadians(geometry, objectGeometry, sphere);
-        o.put(FongoDBCollection.FONGO_SPECIAL_ORDER_BY, distance);
+        double distance = nearDistance(o, path, geometry, sphere);
         return maxDistance == null || distance < maxDistance.doubleValue();
       }
     };
   }
 
+  /**
+   * The order of the results of a $near/$nearSphere query without sort : nearest first. The distances are kept by
+   * the comparator, the documents (the stored ones) are not modified.
+   *
+   * @return <code>null</code> if the query has no $near/$nearSphere.
+   */
+  public Comparator<DBObject> nearComparator(final DBObject query) {
+    for (String key : query.keySet()) {
+      final Object value = query.get(key);
+      if (AND.equals(key) && value instanceof List) {
+        for (Object item : (List) value) {
+          final Comparator<DBObject> comparator = isDbObject(item) ? nearComparator(toDbObject(item)) : null;
+          if (comparator != null) {
+            return comparator;
+          }
+        }
+      } else if (isDbObject(value)) {
+        final DBObject refExpression = toDbObject(value);
+        if (refExpression.containsField(NEAR_SPHERE)) {
+          return createNearComparator(Util.split(key), nearGeometry(NEAR_SPHERE, refExpression), true);
+        }
+        if (refExpression.containsField(NEAR)) {
+          return createNearComparator(Util.split(key), nearGeometry(NEAR, refExpression), false);
+        }
+      }
+    }
+    return null;
+  }
+
+  private Comparator<DBObject> createNearComparator(final List<String> path, final Geometry geometry, final boolean sphere) {
+    final Map<DBObject, Double> distances = new IdentityHashMap<DBObject, Double>();
+    return new Comparator<DBObject>() {
+      @Override
+      public int compare(DBObject o1, DBObject o2) {
+        return Double.compare(distance(o1), distance(o2));
+      }
+
+      private double distance(DBObject o) {
+        Double distance = distances.get(o);
+        if (distance == null) {
+          distance = nearDistance(o, path, geometry, sphere);
+          distances.put(o, distance);
+        }
+        return distance;
+      }
+    };
+  }
+
+  private double nearDistance(DBObject o, List<String> path, Geometry geometry, boolean sphere) {
+    final Geometry objectGeometry = GeoUtil.toGeometry(toDbObject(Util.extractField(o, path)));
+    return GeoUtil.distanceInRadians(geometry, objectGeometry, sphere);
+  }
+
+  /**
+   * The point of a $near/$nearSphere : legacy coordinates or a GeoJSON <code>$geometry</code>.
+   */
+  private Geometry nearGeometry(String command, DBObject refExpression) {
+    if (refExpression.get(command) instanceof BasicDBList) {
+      final List<Coordinate> coordinates = GeoUtil.coordinate(Collections.singletonList(command), refExpression);
+      return GeoUtil.createGeometryPoint(coordinates.get(0));
+    }
+    DBObject dbObject = castToDBObject(command, refExpression.get(command));
+    return GeoUtil.toGeometry((toDbObject(Util.extractField(dbObject, "$geometry"))));
+  }
+
   private Filter createGeowithinFilter(final List<String> path, final Geometry geometry) {
     return new Filter() {
 
@@ -1114,12 +1224,43 @@ public class ExpressionParser {
 
     final List<Filter> filters = new ArrayList<Filter>();
 
+    /**
+     * Keep the cheapest filters first : the evaluation stops at the first filter deciding the result.
+     */
     public void addFilter(Filter filter) {
-      filters.add(filter);
+      final int cost = cost(filter);
+      int index = filters.size();
+      while (index > 0 && cost(filters.get(index - 1)) > cost) {
+        index--;
+      }
+      filters.add(index, filter);
     }
 
   }
 
+  /**
+   * Rough cost of a filter, to order the evaluation of $and/$or.
+   */
+  static int cost(Filter filter) {
+    if (filter instanceof FieldFilter) {
+      return 1;
+    }
+    if (filter instanceof ConjunctionFilter) {
+      int cost = 0;
+      for (Filter child : ((ConjunctionFilter) filter).filters) {
+        cost += cost(child);
+      }
+      return cost;
+    }
+    if (filter instanceof NotFilter) {
+      return cost(((NotFilter) filter).filter);
+    }
+    if (filter instanceof WhereFilter) {
+      return 1000;
+    }
+    return 10;
+  }
+
   static class AndFilter extends ConjunctionFilter {
     @Override
     public boolean apply(DBObject o) {
@@ -1305,6 +1446,7 @@ public class ExpressionParser {
         queryList = typecast(command + " clause", expression, Collection.class);
       }
       final Set<?> querySet = new HashSet<Object>(queryList);
+      final QueryValues queryValues = new QueryValues(querySet);
       return new Filter() {
         @Override
         public boolean apply(DBObject o) {
@@ -1315,7 +1457,7 @@ public class ExpressionParser {
             return querySet.contains(null) ? direction : !direction;
           } else {
             for (Object storedValue : storedList) {
-              if (compare(expression, storedValue, querySet) == direction) {
+              if (compare(storedValue, queryValues) == direction) {
                 return direction;
               }
             }
@@ -1325,31 +1467,62 @@ public class ExpressionParser {
       };
     }
 
-    boolean compare(Object queryValueIgnored, Object storedValue, Set querySet) {
+    boolean compare(Object storedValue, QueryValues queryValues) {
       if (storedValue instanceof List) {
         for (Object valueItem : (List) storedValue) {
-          if (containsWithRegex(querySet, valueItem)) {
+          if (queryValues.contains(valueItem)) {
             return direction;
           }
         }
-        if (containsWithRegex(querySet, storedValue)) {
+        if (queryValues.contains(storedValue)) {
           return direction;
         }
         return !direction;
       } else {
-        return !(direction ^ containsWithRegex(querySet, storedValue));
+        return !(direction ^ queryValues.contains(storedValue));
+      }
+    }
+  }
+
+  /**
+   * Values of a $in/$nin : the scalars are found by their {@link ValueKey}, the others (patterns, documents, lists...)
+   * are compared one by one.
+   */
+  private final class QueryValues {
+    private final Collection<?> all;
+    private final Set<ValueKey> keys = new HashSet<ValueKey>();
+    private final List<Object> others = new ArrayList<Object>();
+
+    QueryValues(Collection<?> values) {
+      this.all = values;
+      for (Object value : values) {
+        final ValueKey key = ValueKey.of(value);
+        if (key != null) {
+          keys.add(key);
+        } else {
+          others.add(value);
+        }
       }
     }
 
-    boolean containsWithRegex(Set querySet, Object storedValue) {
-      for (Object queryObject : querySet) {
+    boolean contains(Object storedValue) {
+      final ValueKey key = ValueKey.of(storedValue);
+      if (key != null && keys.contains(key)) {
+        return true;
+      }
+      // A value without key (a binary, a decimal...) may still be equal to a scalar of the query.
+      return containsWithRegex(key != null ? others : all, storedValue);
+    }
+
+    private boolean containsWithRegex(Collection<?> queryValues, Object storedValue) {
+      for (Object queryObject : queryValues) {
         if (Integer.valueOf(0).equals(compareObjects(queryObject, storedValue, true))) {
           return true;
         }
       }
       if (storedValue instanceof CharSequence) {
         CharSequence s = (CharSequence) storedValue;
-        for (Object o : querySet) {
+        for (Object o : queryValues) {
           if (o instanceof Pattern) {
             Pattern p = (Pattern) o;
             if (p.matcher(s).find()) {
@@ -1376,14 +1549,11 @@ public class ExpressionParser {
     public Filter createFilter(final List<String> path, DBObject refExpression) {
       LOG.debug("path:{}, refExp:{}", path, refExpression);
       Number maxDistance;
-      final Geometry geometry;
+      final Geometry geometry = nearGeometry(command, refExpression);
       if (refExpression.get(command) instanceof BasicDBList) {
-        final List<Coordinate> coordinates = GeoUtil.coordinate(Collections.singletonList(command), refExpression);// typecast(command, refExpression.get(command), List.class);
-        geometry = GeoUtil.createGeometryPoint(coordinates.get(0));
         maxDistance = typecast(MAX_DISTANCE, refExpression.get(MAX_DISTANCE), Number.class);
       } else {
         DBObject dbObject = castToDBObject(command, refExpression.get(command));
-        geometry = GeoUtil.toGeometry((toDbObject(Util.extractField(dbObject, "$geometry"))));
         maxDistance = typecast(MAX_DISTANCE, dbObject.get(MAX_DISTANCE), Number.class);
         if (maxDistance != null) {
           // When in GeoJSon, distance is in meter.
@@ -1433,12 +1603,22 @@ public class ExpressionParser {
     }
   }
 
-  abstract class ConditionalOperatorFilterFactory extends BasicFilterFactory {
+  abstract class ConditionalOperatorFilterFactory extends BasicFilterFactory implements FieldFilter.Comparison {
 
     public ConditionalOperatorFilterFactory(String command) {
       super(command);
     }
 
+    @Override
+    public Filter createFilter(final List<String> path, final DBObject refExpression) {
+      final Filter filter = super.createFilter(path, refExpression);
+      final Object queryValue = refExpression.get(command);
+      if (FieldFilter.isCompilable(queryValue)) {
+        return FieldFilter.comparisonFilter(path, queryValue, this, filter);
+      }
+      return filter;
+    }
+
     @Override
     final boolean compare(Object queryValue, Object storedValue) {
       if (storedValue instanceof List) {
@@ -1457,6 +1637,9 @@ public class ExpressionParser {
       }
     }
 
-    abstract boolean singleCompare(Object queryValue, Object storedValue);
+    final boolean singleCompare(Object queryValue, Object storedValue) {
+      Integer result = compareObjects(queryValue, storedValue, true);
+      return result != null && accept(result);
+    }
   }
 }
@@ -0,0 +1,125 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.DBObject;
+import java.util.Date;
+import java.util.List;
+import org.bson.types.ObjectId;
+
+/**
+ * Filter specialized for the most common expressions : a field equal or compared to a scalar ({a: 1}, {a.b: {$gt: 1}}).
+ * <p/>
+ * The path is split once and walked without allocation, and values of the same type are compared directly.
+ * Anything else (lists, DBRef, mixed types...) goes to the generic filter built by {@link ExpressionParser}.
+ */
+abstract class FieldFilter implements Filter {
+  // The path goes through a list or a DBRef : only the generic filter handles it.
+  private static final Object COMPLEX = new Object();
+  private static final Object MISSING = new Object();
+
+  private final String[] path;
+  final Object queryValue;
+  final Filter generic;
+
+  /**
+   * Result of an operator for the comparison of the query value with the stored value.
+   */
+  interface Comparison {
+    boolean accept(int comparison);
+  }
+
+  private FieldFilter(List<String> path, Object queryValue, Filter generic) {
+    this.path = path.toArray(new String[path.size()]);
+    this.queryValue = queryValue;
+    this.generic = generic;
+  }
+
+  /**
+   * @return true if a filter can be specialized for this query value.
+   */
+  static boolean isCompilable(Object queryValue) {
+    if (queryValue == null) {
+      return false;
+    }
+    final Class<?> clazz = queryValue.getClass();
+    return clazz == String.class || clazz == Integer.class || clazz == Long.class || clazz == Double.class
+        || clazz == Boolean.class || clazz == ObjectId.class || clazz == Date.class;
+  }
+
+  static Filter equalsFilter(List<String> path, Object queryValue, Filter generic) {
+    return new FieldFilter(path, queryValue, generic) {
+      @Override
+      boolean apply(Object storedValue, DBObject o) {
+        if (storedValue.getClass() == queryValue.getClass()) {
+          return queryValue.equals(storedValue);
+        }
+        if (isIntegral(queryValue) && isIntegral(storedValue)) {
+          return ((Number) queryValue).longValue() == ((Number) storedValue).longValue();
+        }
+        return generic.apply(o);
+      }
+    };
+  }
+
+  static Filter comparisonFilter(List<String> path, Object queryValue, final Comparison comparison, Filter generic) {
+    return new FieldFilter(path, queryValue, generic) {
+      @Override
+      @SuppressWarnings("unchecked")
+      boolean apply(Object storedValue, DBObject o) {
+        if (storedValue.getClass() == queryValue.getClass()) {
+          return comparison.accept(((Comparable) queryValue).compareTo(storedValue));
+        }
+        if (isIntegral(queryValue) && isIntegral(storedValue)) {
+          return comparison.accept(compareLongs(((Number) queryValue).longValue(), ((Number) storedValue).longValue()));
+        }
+        return generic.apply(o);
+      }
+    };
+  }
+
+  @Override
+  public final boolean apply(DBObject o) {
+    final Object storedValue = resolve(o);
+    if (storedValue == COMPLEX || storedValue instanceof List) {
+      return generic.apply(o);
+    }
+    // The query value is never null : a missing or null field never matches.
+    if (storedValue == MISSING || storedValue == null) {
+      return false;
+    }
+    return apply(storedValue, o);
+  }
+
+  /**
+   * @param storedValue not null, not a list.
+   */
+  abstract boolean apply(Object storedValue, DBObject o);
+
+  private Object resolve(DBObject o) {
+    DBObject current = o;
+    final int last = path.length - 1;
+    for (int i = 0; i < last; i++) {
+      final Object value = current.get(path[i]);
+      if (value instanceof DBObject && !(value instanceof List)) {
+        current = (DBObject) value;
+      } else if (value == null || value instanceof Number || value instanceof CharSequence || value instanceof Boolean
+          || value instanceof Date || value instanceof ObjectId) {
+        return MISSING;
+      } else {
+        return COMPLEX;
+      }
+    }
+    final Object value = current.get(path[last]);
+    if (value == null && !current.containsField(path[last])) {
+      return MISSING;
+    }
+    return value;
+  }
+
+  static boolean isIntegral(Object value) {
+    return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+  }
+
+  static int compareLongs(long l1, long l2) {
+    return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+  }
+}
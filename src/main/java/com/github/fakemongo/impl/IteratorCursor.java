@@ -0,0 +1,59 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.DBObject;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A server cursor on the lazy iterator of a query : each batch pulls only its documents from the collection.
+ */
+public final class IteratorCursor implements ServerCursor {
+  private final String namespace;
+  private final Iterator<DBObject> iterator;
+  private volatile boolean closed;
+
+  public IteratorCursor(String namespace, Iterator<DBObject> iterator) {
+    this.namespace = namespace;
+    this.iterator = iterator;
+  }
+
+  @Override
+  public synchronized List<DBObject> next(int batchSize, long awaitMillis) {
+    final int max = batchSize <= 0 ? Integer.MAX_VALUE : batchSize;
+    final List<DBObject> result = new ArrayList<DBObject>(Math.min(max, 101));
+    while (!closed && result.size() < max && iterator.hasNext()) {
+      result.add(iterator.next());
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized boolean isExhausted() {
+    return closed || !iterator.hasNext();
+  }
+
+  @Override
+  public boolean isAwaitData() {
+    return false;
+  }
+
+  @Override
+  public String getNamespace() {
+    return namespace;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (iterator instanceof Closeable) {
+      try {
+        ((Closeable) iterator).close();
+      } catch (IOException e) {
+        // Nothing to free.
+      }
+    }
+  }
+}
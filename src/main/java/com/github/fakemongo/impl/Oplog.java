@@ -0,0 +1,171 @@
+package com.github.fakemongo.impl;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import java.util.List;
+import java.util.Map;
+import org.bson.types.BSONTimestamp;
+
+/**
+ * The writes of a {@link Fongo}, as change events, in a bounded ring buffer : the source of the change streams.
+ * <p/>
+ * Each event has a position, increasing with the writes : its resume token and the increment of its clusterTime. A
+ * change stream reads from the position following the last event it returned, and parks on {@link #await(long, long)}
+ * until the next write.
+ * <p/>
+ * Thread Safe : the collections record under their write lock, the change streams read without lock.
+ */
+public final class Oplog {
+  public static final int DEFAULT_MAX_EVENTS = 10000;
+
+  private final Fongo fongo;
+  private final CappedBuffer buffer;
+
+  public Oplog(Fongo fongo, int maxEvents) {
+    this.fongo = fongo;
+    this.buffer = new CappedBuffer(Long.MAX_VALUE, maxEvents);
+  }
+
+  public void insert(String db, String collection, DBObject document) {
+    final DBObject event = event("insert", db, collection, document.get("_id"));
+    event.put("fullDocument", Util.clone(document));
+    add(event);
+  }
+
+  /**
+   * @param replace true if the document was replaced, false if modified by update operators.
+   */
+  public void update(String db, String collection, DBObject oldDocument, DBObject document, boolean replace) {
+    final DBObject event = event(replace ? "replace" : "update", db, collection, document.get("_id"));
+    if (replace) {
+      event.put("fullDocument", Util.clone(document));
+    } else {
+      event.put("updateDescription", updateDescription(oldDocument, document));
+    }
+    add(event);
+  }
+
+  public void delete(String db, String collection, DBObject document) {
+    add(event("delete", db, collection, document.get("_id")));
+  }
+
+  /**
+   * The collection was dropped : its change streams are closed.
+   */
+  public void invalidate(String db, String collection) {
+    final DBObject event = event("invalidate", db, collection, null);
+    event.removeField("documentKey");
+    add(event);
+  }
+
+  private static DBObject event(String operationType, String db, String collection, Object id) {
+    final DBObject event = new BasicDBObject("_id", null);
+    event.put("operationType", operationType);
+    event.put("clusterTime", null);
+    event.put("ns", new BasicDBObject("db", db).append("coll", collection));
+    event.put("documentKey", new BasicDBObject("_id", Util.clone(id)));
+    return event;
+  }
+
+  private synchronized void add(DBObject event) {
+    final long position = buffer.next();
+    event.put("_id", resumeToken(position));
+    // The increment orders the events of the same second.
+    event.put("clusterTime", new BSONTimestamp((int) (fongo.getClock().millis() / 1000), (int) (position + 1)));
+    buffer.add(event, 0);
+  }
+
+  /**
+   * The fields changed by an update, with their path : the documents are compared down to the embedded documents.
+   */
+  static DBObject updateDescription(DBObject oldDocument, DBObject document) {
+    final DBObject updatedFields = new BasicDBObject();
+    final BasicDBList removedFields = new BasicDBList();
+    diff("", oldDocument, document, updatedFields, removedFields);
+    return new BasicDBObject("updatedFields", updatedFields).append("removedFields", removedFields);
+  }
+
+  private static void diff(String prefix, DBObject oldDocument, DBObject document, DBObject updatedFields, List<Object> removedFields) {
+    for (Map.Entry<String, Object> entry : Util.entrySet(document)) {
+      final String path = prefix + entry.getKey();
+      final Object oldValue = oldDocument.get(entry.getKey());
+      final Object value = entry.getValue();
+      if (isEmbedded(oldValue) && isEmbedded(value)) {
+        diff(path + ".", (DBObject) oldValue, (DBObject) value, updatedFields, removedFields);
+      } else if (!oldDocument.containsField(entry.getKey()) || (value == null ? oldValue != null : !value.equals(oldValue))) {
+        updatedFields.put(path, Util.clone(value));
+      }
+    }
+    for (String key : oldDocument.keySet()) {
+      if (!document.containsField(key)) {
+        removedFields.add(prefix + key);
+      }
+    }
+  }
+
+  private static boolean isEmbedded(Object value) {
+    return value instanceof DBObject && !(value instanceof List);
+  }
+
+  public static DBObject resumeToken(long position) {
+    return new BasicDBObject("_data", String.format("%016X", position));
+  }
+
+  /**
+   * @return the position of the event of this resume token.
+   * @throws MongoException if the token was not given by a change stream (code 280).
+   */
+  public static long position(Object resumeToken) {
+    if (ExpressionParser.isDbObject(resumeToken)) {
+      final Object data = ExpressionParser.toDbObject(resumeToken).get("_data");
+      if (data instanceof String && ((String) data).length() == 16) {
+        try {
+          return Long.parseLong((String) data, 16);
+        } catch (NumberFormatException e) {
+          // Invalid token.
+        }
+      }
+    }
+    throw new MongoException(280, "invalid resume token: " + resumeToken);
+  }
+
+  /**
+   * @return the position of the oldest event.
+   */
+  public synchronized long first() {
+    return buffer.first();
+  }
+
+  /**
+   * @return the position of the next event.
+   */
+  public long next() {
+    return buffer.next();
+  }
+
+  /**
+   * Read the events from a position.
+   *
+   * @param position position of the first event, not before {@link #first()}.
+   * @return the position following the last read event.
+   * @throws MongoException if the position was evicted (code 280).
+   */
+  public synchronized long read(long position, int max, List<DBObject> result) {
+    if (position < buffer.first()) {
+      throw new MongoException(280, "resume of change stream was not possible, as the resume point may no longer be in the oplog.");
+    }
+    return buffer.read(position, max, result);
+  }
+
+  /**
+   * Wait for an event at or after a position.
+   *
+   * @return true if such an event exists, false if the timeout elapsed.
+   */
+  public boolean await(long position, long timeoutMillis) throws InterruptedException {
+    return buffer.await(position, timeoutMillis);
+  }
+}
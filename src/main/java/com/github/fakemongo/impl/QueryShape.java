@@ -0,0 +1,74 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.DBObject;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shape of a query : the field names, operators and embedded documents, without the values.
+ * <p/>
+ * Null values and lists stay in the shape, the choice of an index depends on them.
+ * <pre>
+ * {a: 1, b: {$in: [1, 2]}, c: null} -> {a:?,b:{$in:[?]},c:null}
+ * </pre>
+ */
+public final class QueryShape {
+  private static final String SPECIAL_CHARS = "{}[]():,?\"\\";
+
+  private QueryShape() {
+  }
+
+  public static String of(DBObject query) {
+    final StringBuilder sb = new StringBuilder();
+    append(sb, query);
+    return sb.toString();
+  }
+
+  private static void append(StringBuilder sb, Object value) {
+    if (value == null) {
+      sb.append("null");
+    } else if (value instanceof List) {
+      // Each different shape of the elements, only once : a $in of 1000 values has the shape of a $in of 1 value.
+      final Set<String> elements = new LinkedHashSet<String>();
+      for (Object element : (List) value) {
+        final StringBuilder elementShape = new StringBuilder();
+        append(elementShape, element);
+        elements.add(elementShape.toString());
+      }
+      sb.append(value instanceof BasicDBList ? '[' : '(');
+      String separator = "";
+      for (String element : elements) {
+        sb.append(separator).append(element);
+        separator = ",";
+      }
+      sb.append(value instanceof BasicDBList ? ']' : ')');
+    } else if (ExpressionParser.isDbObject(value)) {
+      final DBObject dbObject = ExpressionParser.toDbObject(value);
+      sb.append('{');
+      String separator = "";
+      for (String key : dbObject.keySet()) {
+        sb.append(separator);
+        appendKey(sb, key);
+        sb.append(':');
+        append(sb, dbObject.get(key));
+        separator = ",";
+      }
+      sb.append('}');
+    } else {
+      sb.append('?');
+    }
+  }
+
+  private static void appendKey(StringBuilder sb, String key) {
+    for (int i = 0; i < key.length(); i++) {
+      if (SPECIAL_CHARS.indexOf(key.charAt(i)) >= 0) {
+        // Keep distinct shapes distinct.
+        sb.append('"').append(key.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        return;
+      }
+    }
+    sb.append(key);
+  }
+}
@@ -0,0 +1,37 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.DBObject;
+import java.util.List;
+
+/**
+ * A cursor kept by the server between a query and its getMore : the documents are read by batch, when the client
+ * asks for them.
+ */
+public interface ServerCursor {
+
+  /**
+   * Read the next batch.
+   *
+   * @param batchSize   maximum number of documents, 0 or less for all the remaining ones.
+   * @param awaitMillis time to wait for a document if there is none (tailable cursors only), 0 to return at once.
+   * @return the documents, empty if none.
+   */
+  List<DBObject> next(int batchSize, long awaitMillis);
+
+  /**
+   * @return true if no more document can be read : the cursor can be freed.
+   */
+  boolean isExhausted();
+
+  /**
+   * @return true if a getMore must wait for the next documents.
+   */
+  boolean isAwaitData();
+
+  /**
+   * @return the full name of the collection.
+   */
+  String getNamespace();
+
+  void close();
+}
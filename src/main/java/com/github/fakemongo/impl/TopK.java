@@ -0,0 +1,90 @@
+package com.github.fakemongo.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keep the k smallest elements of an iteration, in O(n log k) with a bounded heap.
+ * <p/>
+ * Stable like {@link java.util.Arrays#sort(Object[], Comparator)} : equal elements keep their iteration order.
+ */
+public final class TopK<T> {
+
+  private final Comparator<? super T> comparator;
+  private final int k;
+  private final PriorityQueue<Entry<T>> heap;
+  private long sequence = 0;
+
+  public TopK(Comparator<? super T> comparator, int k) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("k must be positive : " + k);
+    }
+    this.comparator = comparator;
+    this.k = k;
+    // The greatest element is at the head, ready to be evicted.
+    this.heap = new PriorityQueue<Entry<T>>(Math.min(k, 1024), Collections.reverseOrder(new Comparator<Entry<T>>() {
+      @Override
+      public int compare(Entry<T> o1, Entry<T> o2) {
+        return TopK.this.compare(o1, o2);
+      }
+    }));
+  }
+
+  public void offer(T element) {
+    final Entry<T> entry = new Entry<T>(element, sequence++);
+    if (heap.size() < k) {
+      heap.add(entry);
+    } else if (compare(entry, heap.peek()) < 0) {
+      heap.poll();
+      heap.add(entry);
+    }
+  }
+
+  /**
+   * @return the elements kept, sorted.
+   */
+  public List<T> sorted() {
+    final List<Entry<T>> entries = new ArrayList<Entry<T>>(heap);
+    Collections.sort(entries, new Comparator<Entry<T>>() {
+      @Override
+      public int compare(Entry<T> o1, Entry<T> o2) {
+        return TopK.this.compare(o1, o2);
+      }
+    });
+    final List<T> result = new ArrayList<T>(entries.size());
+    for (Entry<T> entry : entries) {
+      result.add(entry.element);
+    }
+    return result;
+  }
+
+  public static <T> List<T> sorted(Iterator<T> elements, Comparator<? super T> comparator, int k) {
+    final TopK<T> topK = new TopK<T>(comparator, k);
+    while (elements.hasNext()) {
+      topK.offer(elements.next());
+    }
+    return topK.sorted();
+  }
+
+  private int compare(Entry<T> o1, Entry<T> o2) {
+    final int compare = comparator.compare(o1.element, o2.element);
+    if (compare != 0) {
+      return compare;
+    }
+    return o1.sequence < o2.sequence ? -1 : (o1.sequence == o2.sequence ? 0 : 1);
+  }
+
+  private static final class Entry<T> {
+    final T element;
+    final long sequence;
+
+    Entry(T element, long sequence) {
+      this.element = element;
+      this.sequence = sequence;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.github.fakemongo.impl;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.UUID;
+import org.bson.types.ObjectId;
+
+/**
+ * Canonical key of a BSON scalar : two values equal for a query (like 1, 1L and 1.0) have equal keys, so they can be
+ * found in a hash set.
+ * <p/>
+ * Numbers are normalized (integral values as long, others as a {@link BigDecimal} parsed from their string form,
+ * like {@link ExpressionParser} compares them, so 0.0 and -0.0 are equal). Strings, ObjectIds, Booleans, Dates and
+ * UUIDs are hashed by value.
+ * Other values (documents, lists, binaries, patterns...) have no key and must be compared one by one.
+ */
+public final class ValueKey {
+  // Doubles up to 2^53 and floats up to 2^24 have an exact integral value.
+  private static final double MAX_EXACT_DOUBLE = 9007199254740992D;
+  private static final float MAX_EXACT_FLOAT = 16777216F;
+
+  private static final int NULL = 0;
+  private static final int NUMBER = 1;
+  private static final int STRING = 2;
+  private static final int OBJECT_ID = 7;
+  private static final int BOOLEAN = 8;
+  private static final int DATE = 9;
+  private static final int UUID_TYPE = 20;
+
+  private static final ValueKey NULL_KEY = new ValueKey(NULL, null);
+
+  private final int type;
+  private final Object value;
+
+  private ValueKey(int type, Object value) {
+    this.type = type;
+    this.value = value;
+  }
+
+  /**
+   * @return the key of the value, null if the value has no canonical form.
+   */
+  public static ValueKey of(Object value) {
+    if (value == null) {
+      return NULL_KEY;
+    }
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      return new ValueKey(NUMBER, ((Number) value).longValue());
+    }
+    if (value instanceof Double) {
+      final double d = (Double) value;
+      if (Math.abs(d) < MAX_EXACT_DOUBLE && d == Math.rint(d)) {
+        return new ValueKey(NUMBER, (long) d);
+      }
+      return number(value);
+    }
+    if (value instanceof Float) {
+      final float f = (Float) value;
+      if (Math.abs(f) < MAX_EXACT_FLOAT && f == Math.rint(f)) {
+        return new ValueKey(NUMBER, (long) f);
+      }
+      return number(value);
+    }
+    if (value instanceof String) {
+      return new ValueKey(STRING, value);
+    }
+    if (value instanceof ObjectId) {
+      return new ValueKey(OBJECT_ID, value);
+    }
+    if (value instanceof Boolean) {
+      return new ValueKey(BOOLEAN, value);
+    }
+    if (value.getClass() == Date.class) {
+      // Not the subclasses (Timestamp...), they aren't compared like dates.
+      return new ValueKey(DATE, ((Date) value).getTime());
+    }
+    if (value instanceof UUID) {
+      return new ValueKey(UUID_TYPE, value);
+    }
+    return null;
+  }
+
+  private static ValueKey number(Object value) {
+    final BigDecimal decimal;
+    try {
+      decimal = new BigDecimal(value.toString()).stripTrailingZeros();
+    } catch (NumberFormatException e) {
+      // NaN, Infinity.
+      return null;
+    }
+    if (decimal.scale() <= 0 && decimal.toBigInteger().bitLength() < 64) {
+      return new ValueKey(NUMBER, decimal.longValue());
+    }
+    return new ValueKey(NUMBER, decimal);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ValueKey)) {
+      return false;
+    }
+    final ValueKey other = (ValueKey) o;
+    return type == other.type && (value == null ? other.value == null : value.equals(other.value));
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * type + (value == null ? 0 : value.hashCode());
+  }
+
+  @Override
+  public String toString() {
+    return "ValueKey{" + value + '}';
+  }
+}
@@ -29,24 +29,44 @@ public class AddFields extends PipelineKeyword {
 
   }
 
+  @Override
+  public boolean canStream(DBObject object) {
+    return true;
+  }
+
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, final Iterator<DBObject> objects, DBObject addFieldsQuery) {
+    final DBObject fieldsToAddExpr = ExpressionParser.toDbObject(addFieldsQuery.get(getKeyword()));
+    return new PipelineIterator() {
+      @Override
+      protected DBObject computeNext() {
+        return objects.hasNext() ? addFieldsToDocument(objects.next(), fieldsToAddExpr) : null;
+      }
+    };
+  }
+
   private List<DBObject> addFieldsToDocument(DBCollection parentColl, DBObject fieldsToAddExpr) {
     List<DBObject> dbObjects = new ArrayList<DBObject>();
     DBCursor cursor = parentColl.find();
     for (DBObject item : cursor) {
-      DBObject newObject = new BasicDBObject();
-      newObject.putAll(item);
-      dbObjects.add(newObject);
-      for (String fieldToAdd : fieldsToAddExpr.keySet()) {
-        Object object = fieldsToAddExpr.get(fieldToAdd);
-        validateNull(object, "Expression for field " + fieldToAdd + " cannot be null");
-        for (AddFieldsExpr addFieldsExpr : AddFieldsExpr.values()) {
-          if (addFieldsExpr.canApply(object)) {
-            addFieldsExpr.apply(newObject, fieldToAdd, object);
-          }
+      dbObjects.add(addFieldsToDocument(item, fieldsToAddExpr));
+    }
+    return dbObjects;
+  }
+
+  private DBObject addFieldsToDocument(DBObject item, DBObject fieldsToAddExpr) {
+    DBObject newObject = new BasicDBObject();
+    newObject.putAll(item);
+    for (String fieldToAdd : fieldsToAddExpr.keySet()) {
+      Object object = fieldsToAddExpr.get(fieldToAdd);
+      validateNull(object, "Expression for field " + fieldToAdd + " cannot be null");
+      for (AddFieldsExpr addFieldsExpr : AddFieldsExpr.values()) {
+        if (addFieldsExpr.canApply(object)) {
+          addFieldsExpr.apply(newObject, fieldToAdd, object);
         }
       }
     }
-    return dbObjects;
+    return newObject;
   }
 
   @Override
@@ -6,16 +6,17 @@ import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.FongoDBCollection;
 import com.mongodb.MongoException;
 import com.mongodb.annotations.ThreadSafe;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -33,29 +34,63 @@ public class Group extends PipelineKeyword {
 
   public static final Group INSTANCE = new Group();
 
+  /**
+   * The state of a group : its result, and the state of its accumulators.
+   */
   static class Mapping {
-    private final DBObject key;
-
-    private final DBCollection collection;
-
     private final DBObject result;
 
-    public Mapping(DBObject key, DBCollection collection, DBObject result) {
-      this.key = key;
-      this.collection = collection;
+    private final Accumulator[] accumulators;
+
+    public Mapping(DBObject result, Accumulator[] accumulators) {
       this.result = result;
+      this.accumulators = accumulators;
+    }
+
+    void accumulate(DBObject object) {
+      for (Accumulator accumulator : accumulators) {
+        accumulator.accumulate(object);
+      }
     }
 
     @Override
     public String toString() {
       return "Mapping{" +
-          "keyword=" + key +
-          ", collection=" + collection +
-          ", result=" + result +
+          "result=" + result +
+          ", accumulators=" + Arrays.toString(accumulators) +
           '}';
     }
   }
 
+  /**
+   * The state of an accumulator ($sum, $first...) for a group, updated with each document of the group.
+   */
+  abstract static class Accumulator {
+    abstract void accumulate(DBObject object);
+
+    /**
+     * @return the value for the group, null if none.
+     */
+    abstract Object result();
+  }
+
+  /**
+   * A field of the result, computed by an accumulator.
+   */
+  private static class Field {
+    private final String name;
+
+    private final GroupKeyword keyword;
+
+    private final Object parameter;
+
+    Field(String name, GroupKeyword keyword, Object parameter) {
+      this.name = name;
+      this.keyword = keyword;
+      this.parameter = parameter;
+    }
+  }
+
   private Group() {
   }
 
@@ -63,50 +98,50 @@ public class Group extends PipelineKeyword {
   enum GroupKeyword {
     MIN("$min") {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return minmax(coll, keywordParameter, 1);
+      Accumulator accumulator(Object keywordParameter) {
+        return minmax(keywordParameter, 1);
       }
     },
     MAX("$max") {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return minmax(coll, keywordParameter, -1);
+      Accumulator accumulator(Object keywordParameter) {
+        return minmax(keywordParameter, -1);
       }
     },
     FIRST("$first", true) {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return firstlast(coll, keywordParameter, true);
+      Accumulator accumulator(Object keywordParameter) {
+        return firstlast(keywordParameter, true);
       }
     },
     LAST("$last", true) {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return firstlast(coll, keywordParameter, false);
+      Accumulator accumulator(Object keywordParameter) {
+        return firstlast(keywordParameter, false);
       }
     },
     AVG("$avg") {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return avg(coll, keywordParameter);
+      Accumulator accumulator(Object keywordParameter) {
+        return avg(keywordParameter);
       }
     },
     SUM("$sum") {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return sum(coll, keywordParameter);
+      Accumulator accumulator(Object keywordParameter) {
+        return sum(keywordParameter);
       }
     },
     PUSH("$push") {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return pushAddToSet(coll, keywordParameter, false);
+      Accumulator accumulator(Object keywordParameter) {
+        return pushAddToSet(keywordParameter, false);
       }
     },
     ADD_TO_SET("$addToSet") {
       @Override
-      Object work(DBCollection coll, Object keywordParameter) {
-        return pushAddToSet(coll, keywordParameter, true);
+      Accumulator accumulator(Object keywordParameter) {
+        return pushAddToSet(keywordParameter, true);
       }
     };
 
@@ -123,10 +158,13 @@ public class Group extends PipelineKeyword {
       this.canReturnNull = canReturnNull;
     }
 
-    abstract Object work(DBCollection coll, Object keywordParameter);
+    /**
+     * @return a new accumulator, for one group.
+     */
+    abstract Accumulator accumulator(Object keywordParameter);
 
-    public Object apply(DBCollection coll, DBObject parameter) {
-      return work(coll, parameter.get(keyword));
+    public Object parameter(DBObject parameter) {
+      return parameter.get(keyword);
     }
 
     public boolean canApply(DBObject parameter) {
@@ -144,87 +182,105 @@ public class Group extends PipelineKeyword {
 
   @Override
   public DBCollection apply(DB originalDB, DBCollection coll, DBObject object) {
+    final List<DBObject> result = new ArrayList<DBObject>();
+    final Iterator<DBObject> groups = apply(null, coll.find().iterator(), object);
+    while (groups.hasNext()) {
+      result.add(groups.next());
+    }
+    return dropAndInsert(coll, result);
+  }
+
+  @Override
+  public boolean canStream(DBObject object) {
+    return true;
+  }
+
+  /**
+   * A single pass on the documents : each one is accumulated in the state of its group, found by hash of its _id.
+   * The state is released once the results are built.
+   */
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, Iterator<DBObject> objects, DBObject object) {
     DBObject group = ExpressionParser.toDbObject(object.get(getKeyword()));
 
     if (!group.containsField(FongoDBCollection.ID_FIELD_NAME)) {
       fongo.errorResult(15955, "a group specification must include an _id").throwOnError();
     }
-    Object id = group.removeField(FongoDBCollection.ID_FIELD_NAME);
+    Object id = group.get(FongoDBCollection.ID_FIELD_NAME);
     LOG.debug("group() for _id : {}", id);
-    // Try to group in the mapping.
-    Map<DBObject, Mapping> mapping = createMapping(coll, id);
+    List<Field> fields = fields(group);
 
+    Map<DBObject, Mapping> mapping = new HashMap<DBObject, Mapping>();
+    while (objects.hasNext()) {
+      DBObject dbObject = objects.next();
+      DBObject criteria = criteriaForId(id, dbObject);
+      Mapping groupMapping = mapping.get(criteria);
+      if (groupMapping == null) {
+        groupMapping = createMapping(id, dbObject, fields);
+        mapping.put(criteria, groupMapping);
+        LOG.trace("group() new criteria : {}", criteria);
+      }
+      groupMapping.accumulate(dbObject);
+    }
+
+    // Extract from mapping to do the result.
+    List<DBObject> result = new ArrayList<DBObject>(mapping.size());
+    for (Mapping groupMapping : mapping.values()) {
+      for (int i = 0; i < fields.size(); i++) {
+        Field field = fields.get(i);
+        Object value = groupMapping.accumulators[i].result();
+        if (value != null || field.keyword.isCanReturnNull()) {
+          LOG.debug("_id:{}, keyword:{}, result:{}", groupMapping.result.get(FongoDBCollection.ID_FIELD_NAME), field.name, value);
+          groupMapping.result.put(field.name, value);
+        } else {
+          LOG.warn("result is null for entry {}={}", field.name, field.parameter);
+        }
+      }
+      result.add(groupMapping.result);
+    }
+    mapping.clear();
+
+    LOG.debug("group() : {} result : {}", object, result);
+    return result.iterator();
+  }
+
+  /**
+   * The fields of the result with an accumulator, in the order of the group specification.
+   */
+  private List<Field> fields(DBObject group) {
+    List<Field> fields = new ArrayList<Field>();
     //noinspection unchecked
     for (Map.Entry<String, Object> entry : ((Set<Map.Entry<String, Object>>) group.toMap().entrySet())) {
       String key = entry.getKey();
       Object value = entry.getValue();
-      if (ExpressionParser.isDbObject(value)) {
+      if (!FongoDBCollection.ID_FIELD_NAME.equals(key) && ExpressionParser.isDbObject(value)) {
         DBObject objectValue = ExpressionParser.toDbObject(value);
-        for (Map.Entry<DBObject, Mapping> entryMapping : mapping.entrySet()) {
-          DBCollection workColl = entryMapping.getValue().collection;
-          for (GroupKeyword keyword : GroupKeyword.values()) {
-            if (keyword.canApply(objectValue)) {
-              Object result = keyword.apply(workColl, objectValue);
-              if (result != null || keyword.isCanReturnNull()) {
-                LOG.debug("_id:{}, keyword:{}, result:{}", entryMapping.getKey(), key, result);
-                entryMapping.getValue().result.put(key, result);
-              } else {
-                LOG.warn("result is null for entry {}", entry);
-              }
-              break;
-            }
+        for (GroupKeyword keyword : GroupKeyword.values()) {
+          if (keyword.canApply(objectValue)) {
+            fields.add(new Field(key, keyword, keyword.parameter(objectValue)));
+            break;
           }
         }
       }
     }
-
-    coll = dropAndInsert(coll, new ArrayList<DBObject>());
-
-    // Extract from mapping to do the result.
-    for (Map.Entry<DBObject, Mapping> entry : mapping.entrySet()) {
-      coll.insert(entry.getValue().result);
-      entry.getValue().collection.drop();
-    }
-
-    if (LOG.isDebugEnabled()) {
-      LOG.debug("group() : {} result : {}", object, coll.find().toArray());
-    }
-    return coll;
+    return fields;
   }
 
   /**
-   * Create mapping. Group result with a 'keyword'.
+   * Create the mapping of a new group.
    *
-   * @param coll collection to be mapped
-   * @param id   id of the group
-   * @return a (Criteria, Mapping) for the id.
+   * @param id       id of the group
+   * @param dbObject the first document of the group.
+   * @return the mapping, with new accumulators.
    */
-  private Map<DBObject, Mapping> createMapping(DBCollection coll, Object id) {
-    // create groups
-    Map<DBObject, List<DBObject>> groups = new HashMap<DBObject, List<DBObject>>();
-    List<DBObject> objects = coll.find().toArray();
-    for (DBObject dbObject : objects) {
-      DBObject criteria = criteriaForId(id, dbObject);
-      List<DBObject> groupCollection = groups.get(criteria);
-      if (groupCollection == null) {
-        groupCollection = new LinkedList<DBObject>();
-        groups.put(criteria, groupCollection);
-      }
-      groupCollection.add(dbObject);
+  private Mapping createMapping(Object id, DBObject dbObject, List<Field> fields) {
+    // Generate keyword
+    DBObject key = keyForId(id, dbObject);
+    Accumulator[] accumulators = new Accumulator[fields.size()];
+    for (int i = 0; i < accumulators.length; i++) {
+      accumulators[i] = fields.get(i).keyword.accumulator(fields.get(i).parameter);
     }
-
-    // and mappings
-    Map<DBObject, Mapping> mapping = new HashMap<DBObject, Mapping>();
-    for (Map.Entry<DBObject, List<DBObject>> group: groups.entrySet()) {
-      DBObject criteria = group.getKey();
-      List<DBObject> newCollection = group.getValue();
-      // Generate keyword
-      DBObject key = keyForId(id, newCollection.get(0));
-      // Save into mapping
-      mapping.put(criteria, new Mapping(key, createAndInsert(newCollection), Util.clone(key)));
-      LOG.trace("createMapping() new criteria : {}", criteria);
-    }
-    return mapping;
+    return new Mapping(key, accumulators);
   }
 
   /**
@@ -346,35 +402,53 @@ public class Group extends PipelineKeyword {
   /**
    * {@see http://docs.mongodb.org/manual/reference/aggregation/sum/#grp._S_sum}
    */
-  private static Object sum(DBCollection coll, Object value) {
-    Number result = null;
+  private static Accumulator sum(final Object value) {
     if (value.toString().startsWith("$")) {
-      String field = value.toString().substring(1);
-      List<DBObject> objects = coll.find(null, new BasicDBObject(field, 1).append(FongoDBCollection.ID_FIELD_NAME, 0)).toArray();
-      for (DBObject object : objects) {
-        if (Util.containsField(object, field)) {
-          if (result == null) {
-            result = Util.extractField(object, field);
-          } else {
-            Number other = Util.extractField(object, field);
-            result = addWithSameType(result, other);
+      final String field = value.toString().substring(1);
+      return new Accumulator() {
+        private Number result;
+
+        @Override
+        void accumulate(DBObject object) {
+          if (Util.containsField(object, field)) {
+            if (result == null) {
+              result = Util.extractField(object, field);
+            } else {
+              Number other = Util.extractField(object, field);
+              result = addWithSameType(result, other);
+            }
           }
         }
+
+        @Override
+        Object result() {
+          return result;
+        }
+      };
+    }
+    final Number iValue = (Number) value;
+    return new Accumulator() {
+      private long count;
+
+      @Override
+      void accumulate(DBObject object) {
+        count++;
       }
-    } else {
-      Number iValue = (Number) value;
-      // TODO : handle null value ?
-      if (iValue instanceof Float || iValue instanceof Double) {
-        result = coll.count() * iValue.doubleValue();
-      } else if (iValue instanceof Byte || iValue instanceof Short || iValue instanceof Integer) {
-        result = intOrLong(coll.count() * iValue.longValue());
-      } else if (iValue instanceof Long) {
-        result = coll.count() * iValue.longValue();
-      } else {
-        LOG.warn("type of field not handled for sum:{}", result == null ? null : result.getClass());
+
+      @Override
+      Object result() {
+        // TODO : handle null value ?
+        if (iValue instanceof Float || iValue instanceof Double) {
+          return count * iValue.doubleValue();
+        } else if (iValue instanceof Byte || iValue instanceof Short || iValue instanceof Integer) {
+          return intOrLong(count * iValue.longValue());
+        } else if (iValue instanceof Long) {
+          return count * iValue.longValue();
+        }
+        LOG.warn("type of field not handled for sum:{}", iValue.getClass());
+        return null;
       }
-    }
-    return result;
+    };
   }
 
   /**
@@ -391,19 +465,21 @@ public class Group extends PipelineKeyword {
   /**
    * {@see http://docs.mongodb.org/manual/reference/aggregation/avg/#grp._S_avg}
    *
-   * @param coll  grouped collection to make the avg
    * @param value field to be averaged.
-   * @return the average of the collection.
+   * @return the average of the group, as a double.
    */
-  private static Double avg(DBCollection coll, Object value) {
-    Number result = null;
-    long count = 1;
-    if (value.toString().startsWith("$")) {
-      String field = value.toString().substring(1);
-      List<DBObject> objects = coll.find(null, new BasicDBObject(field, 1).append(FongoDBCollection.ID_FIELD_NAME, 0)).toArray();
-      for (DBObject object : objects) {
-        LOG.debug("avg object {} ", object);
+  private static Accumulator avg(Object value) {
+    if (!value.toString().startsWith("$")) {
+      LOG.error("Sorry, doesn't know what to do...");
+      return NONE;
+    }
+    final String field = value.toString().substring(1);
+    return new Accumulator() {
+      private Number result;
+      private long count = 1;
 
+      @Override
+      void accumulate(DBObject object) {
         if (Util.containsField(object, field)) {
           if (result == null) {
             result = Util.extractField(object, field);
@@ -414,85 +490,92 @@ public class Group extends PipelineKeyword {
           }
         }
       }
-    } else {
-      LOG.error("Sorry, doesn't know what to do...");
-      return null;
-    }
-    // Always return double.
-    return result == null ? null : (result.doubleValue() / (double) count);
+
+      @Override
+      Object result() {
+        // Always return double.
+        return result == null ? null : (result.doubleValue() / (double) count);
+      }
+    };
   }
 
   /**
-   * Return the first or the last of a collection.
+   * Return the first or the last of a group.
    *
-   * @param coll  collection who contains data.
    * @param value fieldname for searching.
-   * @return
    */
-  private static Object firstlast(DBCollection coll, Object value, boolean first) {
-    LOG.debug("first({})/last({}) on {}", first, !first, value);
-    Object result = null;
-    if (value.toString().startsWith("$")) {
-      String field = value.toString().substring(1);
-      DBCursor cursor = coll.find();
-      while (cursor.hasNext()) {
-        result = extractFieldOrAggregationException(cursor.next(), field);
-        if (first) {
-          break;
-        }
-      }
-    } else {
+  private static Accumulator firstlast(Object value, final boolean first) {
+    if (!value.toString().startsWith("$")) {
       LOG.error("Sorry, doesn't know what to do...");
+      return NONE;
     }
+    final String field = value.toString().substring(1);
+    return new Accumulator() {
+      private boolean found;
+      private Object result;
 
-    LOG.debug("first({})/last({}) on {}, result : {}", first, !first, value, result);
-    return result;
+      @Override
+      void accumulate(DBObject object) {
+        if (!first || !found) {
+          result = extractFieldOrAggregationException(object, field);
+          found = true;
+        }
+      }
+
+      @Override
+      Object result() {
+        return result;
+      }
+    };
   }
 
   /**
-   * Return the first or the last of a collection.
+   * Return the values of a group, without duplicates for $addToSet.
    *
-   * @param coll
    * @param value fieldname for searching.
-   * @return
    */
-  private static BasicDBList pushAddToSet(DBCollection coll, Object value, boolean uniqueness) {
-    LOG.debug("pushAddToSet() on {}", value);
-    BasicDBList result = null;
-    if (value.toString().startsWith("$")) {
-      result = new BasicDBList();
-      String field = value.toString().substring(1);
-      DBCursor cursor = coll.find();
-      while (cursor.hasNext()) {
-        Object fieldValue = extractFieldOrAggregationException(cursor.next(), field);
-        if (!uniqueness || !result.contains(fieldValue)) {
+  private static Accumulator pushAddToSet(Object value, final boolean uniqueness) {
+    if (!value.toString().startsWith("$")) {
+      LOG.error("Sorry, doesn't know what to do...");
+      return NONE;
+    }
+    final String field = value.toString().substring(1);
+    return new Accumulator() {
+      private final BasicDBList result = new BasicDBList();
+      // The values already in the set, to find the duplicates in constant time.
+      private final Set<Object> values = uniqueness ? new HashSet<Object>() : null;
+
+      @Override
+      void accumulate(DBObject object) {
+        Object fieldValue = extractFieldOrAggregationException(object, field);
+        if (!uniqueness || values.add(fieldValue)) {
           result.add(fieldValue);
         }
       }
-    } else {
-      LOG.error("Sorry, doesn't know what to do...");
-    }
 
-    LOG.debug("pushAddToSet() on {}, result : {}", value, result);
-    return result;
+      @Override
+      Object result() {
+        return result;
+      }
+    };
   }
 
   /**
-   * Return the min or the max of a collection.
+   * Return the min or the max of a group.
    *
-   * @param coll
-   * @param value
    * @param valueComparable 0 for equals, -1 for min, +1 for max
-   * @return
    */
+  private static Accumulator minmax(Object value, final int valueComparable) {
+    if (!value.toString().startsWith("$")) {
+      LOG.error("Sorry, doesn't know what to do...");
+      return NONE;
+    }
+    final String field = value.toString().substring(1);
+    return new Accumulator() {
+      private Comparable comparable;
 
-  private static Object minmax(DBCollection coll, Object value, int valueComparable) {
-    if (value.toString().startsWith("$")) {
-      String field = value.toString().substring(1);
-      DBCursor cursor = coll.find();
-      Comparable comparable = null;
-      while (cursor.hasNext()) {
-        DBObject object = cursor.next();
+      @Override
+      void accumulate(DBObject object) {
         if (Util.containsField(object, field)) {
           if (comparable == null) {
             comparable = Util.extractField(object, field);
@@ -504,13 +587,28 @@ public class Group extends PipelineKeyword {
           }
         }
       }
-      return comparable;
-    } else {
-      LOG.error("Sorry, doesn't know what to do...");
-    }
-    return null;
+
+      @Override
+      Object result() {
+        return comparable;
+      }
+    };
   }
 
+  /**
+   * For the parameters not handled : no value.
+   */
+  private static final Accumulator NONE = new Accumulator() {
+    @Override
+    void accumulate(DBObject object) {
+    }
+
+    @Override
+    Object result() {
+      return null;
+    }
+  };
+
   /**
    * Add two number in the same type.
    *
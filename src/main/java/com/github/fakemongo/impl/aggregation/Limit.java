@@ -3,7 +3,9 @@ package com.github.fakemongo.impl.aggregation;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.FongoDBCollection;
 import com.mongodb.annotations.ThreadSafe;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -25,6 +27,35 @@ public class Limit extends PipelineKeyword {
     return dropAndInsert(coll, objects);
   }
 
+  @Override
+  public boolean canStream(DBObject object) {
+    return true;
+  }
+
+  /**
+   * The previous stages stop being pulled once the limit is reached.
+   */
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, final Iterator<DBObject> objects, DBObject object) {
+    final int limit = ((Number) object.get(getKeyword())).intValue();
+    if (limit <= 0) {
+      // As a find : no limit.
+      return objects;
+    }
+    return new PipelineIterator() {
+      private int count;
+
+      @Override
+      protected DBObject computeNext() {
+        if (count >= limit || !objects.hasNext()) {
+          return null;
+        }
+        count++;
+        return objects.next();
+      }
+    };
+  }
+
   @Override
   public String getKeyword() {
     return "$limit";
@@ -1,22 +1,38 @@
 package com.github.fakemongo.impl.aggregation;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.junit.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.fakemongo.impl.ExpressionParser;
+import com.github.fakemongo.impl.ValueKey;
+import com.github.fakemongo.impl.index.IndexAbstract;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.FongoDBCollection;
 
 /**
+ * The join is done by the cheapest of :
+ * <ul>
+ * <li>an index nested loop join : the index of the foreign collection on <code>foreignField</code> is probed once
+ * for each distinct local value,</li>
+ * <li>a hash join : the foreign collection is read once, into a hash table of the local values.</li>
+ * </ul>
+ *
  * @author Kollivakkam Raghavan
  * @created 4/22/2016
  */
@@ -27,81 +43,211 @@ public class Lookup extends PipelineKeyword {
   public static final Lookup INSTANCE = new Lookup();
   public static final String ID = "_id";
 
+  // Cost of a probe of the index (a find), in documents read by the hash join.
+  static final int INDEX_PROBE_COST = 8;
+
   @Override
   public DBCollection apply(DB originalDB, DBCollection parentColl, DBObject object) {
     DBObject lookup = ExpressionParser.toDbObject(object.get(getKeyword()));
-    List<DBObject> parentItems = performLookup(originalDB, parentColl, lookup);
+    List<DBObject> parentItems = performLookup(originalDB, parentColl.find().iterator(), lookup);
     return dropAndInsert(parentColl, parentItems);
   }
 
+  @Override
+  public boolean canStream(DBObject object) {
+    return true;
+  }
+
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, Iterator<DBObject> objects, DBObject object) {
+    DBObject lookup = ExpressionParser.toDbObject(object.get(getKeyword()));
+    return performLookup(source.getDB(), objects, lookup).iterator();
+  }
+
   @Override
   public String getKeyword() {
     return "$lookup";
   }
 
-  private List<DBObject> performLookup(DB originalDB, DBCollection parentColl, DBObject lookup) {
+  private List<DBObject> performLookup(DB originalDB, Iterator<DBObject> iterator, DBObject lookup) {
     String from = (String) lookup.get("from");
     String localField = (String) lookup.get("localField");
     String foreignField = (String) lookup.get("foreignField");
     String as = (String) lookup.get("as");
-    LOG.debug("Value {} will be returned from {} in parent collection {}.  Local field {} will be joined with {}",
-              as, from, parentColl.getName(), localField, foreignField);
+    LOG.debug("Value {} will be returned from {}.  Local field {} will be joined with {}",
+              as, from, localField, foreignField);
 
-    DBCursor parentItems = parentColl.find();
-    // can't use lambdas
-    Iterator<DBObject> iterator = parentItems.iterator();
-    Map<Object, List<DBObject>> parentMap = new HashMap<Object, List<DBObject>>();
+    ExpressionParser expressionParser = new ExpressionParser();
+    // The parents of each distinct local value, by join key.
+    Map<Object, List<DBObject>> parentMap = new LinkedHashMap<Object, List<DBObject>>();
+    Map<Object, Object> localValues = new HashMap<Object, Object>();
     List<DBObject> parentsWithLocalField = new ArrayList<DBObject>();
     List<DBObject> parentsWithMissingLocalField = new ArrayList<DBObject>();
     // go through all parent items - put a list of DBObjects for the children
     while (iterator.hasNext()) {
       DBObject parentItem = iterator.next();
-      Object localFieldValue = parentItem.get(localField);
-      if (localFieldValue == null || "".equals(localField.toString().trim())) {
-        parentItem.put(as, new ArrayList<DBObject>());
+      parentItem.put(as, new BasicDBList());
+      Map<Object, Object> joinKeys = "".equals(localField.trim()) ? Collections.<Object, Object>emptyMap() :
+          joinKeys(expressionParser.getEmbeddedValues(localField, parentItem));
+      if (joinKeys.isEmpty()) {
         parentsWithMissingLocalField.add(parentItem);
-      }
-      else {
-        List<DBObject> childItems = (List<DBObject>) parentItem.get(as);
-        if (childItems == null) {
-          childItems = new ArrayList<DBObject>();
-          parentItem.put(as, childItems);
-        }
-        if(!parentMap.containsKey(localFieldValue)) {
-            parentMap.put(localFieldValue, new ArrayList<DBObject>());
+      } else {
+        for (Map.Entry<Object, Object> joinKey : joinKeys.entrySet()) {
+          List<DBObject> parents = parentMap.get(joinKey.getKey());
+          if (parents == null) {
+            parents = new ArrayList<DBObject>();
+            parentMap.put(joinKey.getKey(), parents);
+            localValues.put(joinKey.getKey(), joinKey.getValue());
+          }
+          parents.add(parentItem);
         }
-        parentMap.get(localFieldValue).add(parentItem);
         parentsWithLocalField.add(parentItem);
       }
     }
-    // now loop through the children item and add them to the parent
+
     DBCollection childColl = originalDB.getCollection(from);
+    Map<Object, List<DBObject>> childMap;
+    if (!parentMap.isEmpty() && useIndex(childColl, foreignField, parentMap.keySet())) {
+      childMap = indexNestedLoopJoin(childColl, foreignField, localValues);
+    } else {
+      childMap = hashJoin(childColl, foreignField, parentMap.keySet(), expressionParser);
+    }
 
-    DBCursor childItems = childColl.find();
-    Iterator<DBObject> childIterator = childItems.iterator();
-    while (childIterator.hasNext()) {
-      DBObject childItem = childIterator.next();
-      Object parentOid = childItem.get(foreignField);
-      if (parentOid == null) {
-        LOG.warn("Ignoring null parent id");
+    // now add the children to their parents, once even if they match many local values.
+    Map<DBObject, Set<Object>> childrenOfParent = new IdentityHashMap<DBObject, Set<Object>>();
+    for (Map.Entry<Object, List<DBObject>> entry : parentMap.entrySet()) {
+      List<DBObject> childItems = childMap.get(entry.getKey());
+      if (childItems == null) {
+        continue;
       }
-      else {
-        if(parentMap.containsKey(parentOid)) {
-          for(DBObject parent: parentMap.get(parentOid)) {
-            LOG.debug("Adding child with id {} to parent wth id {}", childItem.get(ID), parentOid);
-            List<DBObject> childObjects = (List<DBObject>) parent.get(as);
-            Assert.assertNotNull("Unexpected null value", childObjects);
+      for (DBObject parent : entry.getValue()) {
+        BasicDBList childObjects = (BasicDBList) parent.get(as);
+        Set<Object> childIds = childrenOfParent.get(parent);
+        if (childIds == null) {
+          childIds = new HashSet<Object>();
+          childrenOfParent.put(parent, childIds);
+        }
+        for (DBObject childItem : childItems) {
+          if (childIds.add(joinKey(childItem.get(ID)))) {
+            LOG.debug("Adding child with id {} to parent wth id {}", childItem.get(ID), parent.get(ID));
             childObjects.add(childItem);
           }
-        } else {
-          LOG.warn("Ignoring missing parent with id {}", parentOid);
         }
       }
     }
+    // The children of many local values (or probed by an index) are in the order of the foreign collection.
+    if (childColl instanceof FongoDBCollection) {
+      for (DBObject parent : childrenOfParent.keySet()) {
+        @SuppressWarnings("unchecked") List<DBObject> childObjects = (List<DBObject>) (List) parent.get(as);
+        ((FongoDBCollection) childColl).sortInNaturalOrder(childObjects);
+      }
+    }
     List<DBObject> retval = new ArrayList<DBObject>(parentsWithLocalField.size() + parentsWithMissingLocalField.size());
     retval.addAll(parentsWithLocalField);
     retval.addAll(parentsWithMissingLocalField);
     return retval;
   }
 
+  /**
+   * The nested loop join is used when the foreign collection has an index on the foreign field and the probes cost
+   * less than a read of the whole collection.
+   */
+  private boolean useIndex(DBCollection childColl, String foreignField, Set<Object> joinKeys) {
+    if (!(childColl instanceof FongoDBCollection) || !hasIndex((FongoDBCollection) childColl, foreignField)) {
+      return false;
+    }
+    for (Object joinKey : joinKeys) {
+      if (!(joinKey instanceof ValueKey)) {
+        // Documents, lists, patterns : a find would not compare them as the hash join.
+        return false;
+      }
+    }
+    long count = childColl.count();
+    LOG.debug("lookup() {} distinct local values for {} foreign documents", joinKeys.size(), count);
+    return (long) joinKeys.size() * INDEX_PROBE_COST < count;
+  }
+
+  private static boolean hasIndex(FongoDBCollection childColl, String foreignField) {
+    for (IndexAbstract index : childColl.getIndexes()) {
+      if (!index.isGeoIndex() && !index.isPartial() && !index.getKeys().keySet().isEmpty()
+          && foreignField.equals(index.getKeys().keySet().iterator().next())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Probe the index of the foreign collection once by distinct local value.
+   */
+  private Map<Object, List<DBObject>> indexNestedLoopJoin(DBCollection childColl, String foreignField, Map<Object, Object> localValues) {
+    LOG.debug("lookup() index nested loop join on {}.{}", childColl.getName(), foreignField);
+    Map<Object, List<DBObject>> childMap = new HashMap<Object, List<DBObject>>();
+    for (Map.Entry<Object, Object> entry : localValues.entrySet()) {
+      List<DBObject> childItems = childColl.find(new BasicDBObject(foreignField, entry.getValue())).toArray();
+      if (!childItems.isEmpty()) {
+        childMap.put(entry.getKey(), childItems);
+      }
+    }
+    return childMap;
+  }
+
+  /**
+   * Read the foreign collection once : only the children of a local value are kept.
+   */
+  private Map<Object, List<DBObject>> hashJoin(DBCollection childColl, String foreignField, Set<Object> joinKeys, ExpressionParser expressionParser) {
+    LOG.debug("lookup() hash join on {}.{}", childColl.getName(), foreignField);
+    Map<Object, List<DBObject>> childMap = new HashMap<Object, List<DBObject>>();
+    if (joinKeys.isEmpty()) {
+      return childMap;
+    }
+    DBCursor childItems = childColl.find();
+    Iterator<DBObject> childIterator = childItems.iterator();
+    while (childIterator.hasNext()) {
+      DBObject childItem = childIterator.next();
+      for (Object joinKey : joinKeys(expressionParser.getEmbeddedValues(foreignField, childItem)).keySet()) {
+        if (joinKeys.contains(joinKey)) {
+          List<DBObject> children = childMap.get(joinKey);
+          if (children == null) {
+            children = new ArrayList<DBObject>();
+            childMap.put(joinKey, children);
+          }
+          children.add(childItem);
+        } else {
+          LOG.trace("Ignoring missing parent with id {}", joinKey);
+        }
+      }
+    }
+    return childMap;
+  }
+
+  /**
+   * The join keys of the values of a field : an array is joined by its elements. Null values are not joined.
+   *
+   * @return the values by join key.
+   */
+  private static Map<Object, Object> joinKeys(List<Object> values) {
+    Map<Object, Object> joinKeys = new LinkedHashMap<Object, Object>();
+    for (Object value : values) {
+      if (value instanceof List) {
+        for (Object element : (List) value) {
+          if (element != null) {
+            joinKeys.put(joinKey(element), element);
+          }
+        }
+      } else if (value != null) {
+        joinKeys.put(joinKey(value), value);
+      }
+    }
+    return joinKeys;
+  }
+
+  /**
+   * Scalars are joined by their {@link ValueKey} : a local 1 matches a foreign 1L or 1.0.
+   */
+  private static Object joinKey(Object value) {
+    ValueKey key = ValueKey.of(value);
+    return key != null ? key : value;
+  }
+
 }
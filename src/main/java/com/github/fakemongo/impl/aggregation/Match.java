@@ -1,10 +1,13 @@
 package com.github.fakemongo.impl.aggregation;
 
 import com.github.fakemongo.impl.ExpressionParser;
+import com.github.fakemongo.impl.Filter;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.FongoDBCollection;
 import com.mongodb.annotations.ThreadSafe;
+import java.util.Iterator;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +38,28 @@ public class Match extends PipelineKeyword {
     return coll;
   }
 
+  @Override
+  public boolean canStream(DBObject object) {
+    return true;
+  }
+
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, final Iterator<DBObject> objects, DBObject object) {
+    final Filter filter = buildFilter(source, ExpressionParser.toDbObject(object.get(getKeyword())));
+    return new PipelineIterator() {
+      @Override
+      protected DBObject computeNext() {
+        while (objects.hasNext()) {
+          final DBObject next = objects.next();
+          if (filter.apply(next)) {
+            return next;
+          }
+        }
+        return null;
+      }
+    };
+  }
+
   @Override
   public String getKeyword() {
     return "$match";
@@ -0,0 +1,40 @@
+package com.github.fakemongo.impl.aggregation;
+
+import com.mongodb.DBObject;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The documents flowing out of a streamed stage : each one is computed when pulled by the next stage.
+ */
+public abstract class PipelineIterator implements Iterator<DBObject> {
+  private DBObject next;
+
+  /**
+   * @return the next document, null at the end.
+   */
+  protected abstract DBObject computeNext();
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = computeNext();
+    }
+    return next != null;
+  }
+
+  @Override
+  public DBObject next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    final DBObject result = next;
+    next = null;
+    return result;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
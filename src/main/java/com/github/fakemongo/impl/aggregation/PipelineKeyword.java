@@ -1,10 +1,16 @@
 package com.github.fakemongo.impl.aggregation;
 
 import com.github.fakemongo.Fongo;
+import com.github.fakemongo.FongoException;
+import com.github.fakemongo.impl.ExpressionParser;
+import com.github.fakemongo.impl.Filter;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.FongoDB;
+import com.mongodb.FongoDBCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -26,6 +32,27 @@ public abstract class PipelineKeyword {
    */
   public abstract DBCollection apply(DB originalDB, DBCollection coll, DBObject object);
 
+  /**
+   * @param object parameters for keyword.
+   * @return true if the keyword can be applied on a stream of documents, with
+   * {@link #apply(FongoDBCollection, Iterator, DBObject)}.
+   */
+  public boolean canStream(DBObject object) {
+    return false;
+  }
+
+  /**
+   * Apply the keyword on a stream of documents : they are pulled one by one, without intermediate collection.
+   *
+   * @param source  the aggregated collection.
+   * @param objects documents to be processed, owned by the pipeline (they can be modified).
+   * @param object  parameters for keyword.
+   * @return the resulting documents.
+   */
+  public Iterator<DBObject> apply(FongoDBCollection source, Iterator<DBObject> objects, DBObject object) {
+    throw new UnsupportedOperationException(getKeyword() + " can't be applied on a stream");
+  }
+
   /**
    * Return the keyword in the pipeline (like $sort, $group...).
    */
@@ -48,11 +75,40 @@ public abstract class PipelineKeyword {
   }
 
   protected DBCollection createAndInsert(List<DBObject> objects) {
+    return newCollection(objects);
+  }
+
+  /**
+   * Store a stream of documents into a new collection, for the keywords which can't be applied on a stream.
+   */
+  public static DBCollection createAndInsert(Iterator<DBObject> objects) {
+    final List<DBObject> list = new ArrayList<DBObject>();
+    while (objects.hasNext()) {
+      list.add(objects.next());
+    }
+    return newCollection(list);
+  }
+
+  private static DBCollection newCollection(List<DBObject> objects) {
     DBCollection coll = fongo.doGetCollection(UUID.randomUUID().toString(), true, false);
     coll.insert(objects);
     return coll;
   }
 
+  /**
+   * The filter of a query on the documents of the collection, with the same errors as a find.
+   */
+  static Filter buildFilter(FongoDBCollection source, DBObject query) {
+    try {
+      return new ExpressionParser().buildFilter(source.filterLists(query));
+    } catch (FongoException e) {
+      if (e.getCode() != null) {
+        errorResult(source, e.getCode(), e.getMessage());
+      }
+      throw e;
+    }
+  }
+
   public boolean canApply(DBObject object) {
     return object.containsField(getKeyword());
   }
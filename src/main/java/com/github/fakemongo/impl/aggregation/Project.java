@@ -843,46 +843,101 @@ public class Project extends PipelineKeyword {
 
     DBObject project = ExpressionParser.toDbObject(object.get(getKeyword()));
     DBObject projectResult = Util.clone(project);
+    Map<String, List<ProjectedAbstract>> projectedFields = projectedFields(coll, project, projectResult);
+    List<DBObject> objects = coll.find(null, projectResult).toArray();
+
+    List<DBObject> objectsResults = new ArrayList<DBObject>(objects.size());
+    for (DBObject result : objects) {
+      objectsResults.add(project(result, projectedFields));
+    }
+    coll = dropAndInsert(coll, objectsResults);
+    LOG.debug("project() : {}, result : {}", object, objects);
+    return coll;
+  }
+
+  /**
+   * $filter works on a copy of the collection : it can't be streamed.
+   */
+  @Override
+  public boolean canStream(DBObject object) {
+    return !containsKeyword(object.get(getKeyword()), ProjectedFilter.KEYWORD);
+  }
+
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, final Iterator<DBObject> objects, DBObject object) {
+    LOG.debug("project() : {}", object);
+
+    DBObject project = ExpressionParser.toDbObject(object.get(getKeyword()));
+    final DBObject projectResult = Util.clone(project);
+    final Map<String, List<ProjectedAbstract>> projectedFields = projectedFields(source, project, projectResult);
+    return new PipelineIterator() {
+      @Override
+      protected DBObject computeNext() {
+        if (!objects.hasNext()) {
+          return null;
+        }
+        DBObject result = objects.next();
+        if (!Util.isDBObjectEmpty(projectResult)) {
+          result = FongoDBCollection.applyProjections(result, projectResult);
+        }
+        return project(result, projectedFields);
+      }
+    };
+  }
 
-    // Extract fields who will be renamed.
+  /**
+   * Extract fields who will be renamed : <code>projectResult</code> becomes the projection of the find.
+   */
+  private static Map<String, List<ProjectedAbstract>> projectedFields(DBCollection coll, DBObject project, DBObject projectResult) {
     Map<String, List<ProjectedAbstract>> projectedFields = new HashMap<String, List<ProjectedAbstract>>();
     for (Map.Entry<String, Object> entry : Util.entrySet(project)) {
       if (entry.getValue() != null) {
         ProjectedAbstract.createMapping(coll, projectResult, projectedFields, entry.getKey(), entry.getValue(), "", ProjectedRename.newInstance(entry.getKey(), coll, null));
       }
     }
-
     LOG.debug("project() of {} renamed {}", projectResult, projectedFields);
-    List<DBObject> objects = coll.find(null, projectResult).toArray();
+    return projectedFields;
+  }
 
-    // Rename or transform fields
-    List<DBObject> objectsResults = new ArrayList<DBObject>(objects.size());
-    for (DBObject result : objects) {
-      DBObject renamed = new BasicDBObject(FongoDBCollection.ID_FIELD_NAME, result.get(FongoDBCollection.ID_FIELD_NAME));
-      for (Map.Entry<String, List<ProjectedAbstract>> entry : projectedFields.entrySet()) {
-        if (Util.containsField(result, entry.getKey())) {
-          for (ProjectedAbstract projected : entry.getValue()) {
-            projected.unapply(renamed, result, entry.getKey());
-          }
+  /**
+   * Rename or transform fields of a found document.
+   */
+  private static DBObject project(DBObject result, Map<String, List<ProjectedAbstract>> projectedFields) {
+    DBObject renamed = new BasicDBObject(FongoDBCollection.ID_FIELD_NAME, result.get(FongoDBCollection.ID_FIELD_NAME));
+    for (Map.Entry<String, List<ProjectedAbstract>> entry : projectedFields.entrySet()) {
+      if (Util.containsField(result, entry.getKey())) {
+        for (ProjectedAbstract projected : entry.getValue()) {
+          projected.unapply(renamed, result, entry.getKey());
         }
       }
+    }
 
-      // TODO REFACTOR
-      // Handle special case like ifNull who can doesn't have field in list.
-      for (List<ProjectedAbstract> projecteds : projectedFields.values()) {
-        for (ProjectedAbstract projected : projecteds) {
-//        if (!projected.isDone() && (projected.keyword.recallIfNotFound)) {
-          projected.unapply(renamed, result, null);
-//        }
-//        projected.setDone(false);
-        }
+    // TODO REFACTOR
+    // Handle special case like ifNull who can doesn't have field in list.
+    for (List<ProjectedAbstract> projecteds : projectedFields.values()) {
+      for (ProjectedAbstract projected : projecteds) {
+        projected.unapply(renamed, result, null);
       }
+    }
+    return renamed;
+  }
 
-      objectsResults.add(renamed);
+  private static boolean containsKeyword(Object value, String keyword) {
+    if (value instanceof List) {
+      for (Object item : (List) value) {
+        if (containsKeyword(item, keyword)) {
+          return true;
+        }
+      }
+    } else if (ExpressionParser.isDbObject(value)) {
+      DBObject dbObject = ExpressionParser.toDbObject(value);
+      for (String key : dbObject.keySet()) {
+        if (keyword.equals(key) || containsKeyword(dbObject.get(key), keyword)) {
+          return true;
+        }
+      }
     }
-    coll = dropAndInsert(coll, objectsResults);
-    LOG.debug("project() : {}, result : {}", object, objects);
-    return coll;
+    return false;
   }
 
   @Override
@@ -3,7 +3,9 @@ package com.github.fakemongo.impl.aggregation;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.FongoDBCollection;
 import com.mongodb.annotations.ThreadSafe;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -25,6 +27,28 @@ public class Skip extends PipelineKeyword {
     return dropAndInsert(coll, objects);
   }
 
+  @Override
+  public boolean canStream(DBObject object) {
+    return true;
+  }
+
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, final Iterator<DBObject> objects, DBObject object) {
+    final int skip = ((Number) object.get(getKeyword())).intValue();
+    return new PipelineIterator() {
+      private int skipped;
+
+      @Override
+      protected DBObject computeNext() {
+        while (skipped < skip && objects.hasNext()) {
+          objects.next();
+          skipped++;
+        }
+        return objects.hasNext() ? objects.next() : null;
+      }
+    };
+  }
+
   @Override
   public String getKeyword() {
     return "$skip";
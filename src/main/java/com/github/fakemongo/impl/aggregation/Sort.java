@@ -1,10 +1,16 @@
 package com.github.fakemongo.impl.aggregation;
 
 import com.github.fakemongo.impl.ExpressionParser;
+import com.github.fakemongo.impl.TopK;
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.FongoDBCollection;
 import com.mongodb.annotations.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -25,6 +31,56 @@ public class Sort extends PipelineKeyword {
     return dropAndInsert(coll, objects);
   }
 
+  /**
+   * $sort followed by a $limit : only the <code>limit</code> first documents are kept while sorting.
+   */
+  public DBCollection apply(DB originalDB, DBCollection coll, DBObject object, int limit) {
+    final List<DBObject> objects = coll.find().sort(ExpressionParser.toDbObject(object.get(getKeyword()))).limit(limit).toArray();
+    return dropAndInsert(coll, objects);
+  }
+
+  /**
+   * Only the ascending and descending orders : $natural and $meta need a collection.
+   */
+  @Override
+  public boolean canStream(DBObject object) {
+    final Object orderBy = object.get(getKeyword());
+    if (!ExpressionParser.isDbObject(orderBy)) {
+      return false;
+    }
+    for (Object direction : ExpressionParser.toDbObject(orderBy).toMap().values()) {
+      if (!(direction instanceof Integer)) {
+        return false;
+      }
+    }
+    return !ExpressionParser.toDbObject(orderBy).containsField("$natural");
+  }
+
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, Iterator<DBObject> objects, DBObject object) {
+    final DBObject orderBy = ExpressionParser.toDbObject(object.get(getKeyword()));
+    final List<DBObject> sorted = new ArrayList<DBObject>();
+    while (objects.hasNext()) {
+      sorted.add(objects.next());
+    }
+    if (!orderBy.keySet().isEmpty()) {
+      // Stable, as the sort of a find.
+      Collections.sort(sorted, new ExpressionParser().sortComparator(orderBy));
+    }
+    return sorted.iterator();
+  }
+
+  /**
+   * $sort followed by a $limit : only the <code>limit</code> first documents are kept while sorting.
+   */
+  public Iterator<DBObject> apply(FongoDBCollection source, Iterator<DBObject> objects, DBObject object, int limit) {
+    final DBObject orderBy = ExpressionParser.toDbObject(object.get(getKeyword()));
+    if (orderBy.keySet().isEmpty()) {
+      return Limit.INSTANCE.apply(source, objects, new BasicDBObject(Limit.INSTANCE.getKeyword(), limit));
+    }
+    return TopK.sorted(objects, new ExpressionParser().sortComparator(orderBy), limit).iterator();
+  }
+
   @Override
   public String getKeyword() {
     return "$sort";
@@ -6,11 +6,13 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.FongoDBCollection;
 import com.mongodb.MongoException;
 import com.mongodb.annotations.ThreadSafe;
 import org.bson.BSONObject;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -41,8 +43,46 @@ public class Unwind extends PipelineKeyword {
    */
   @Override
   public DBCollection apply(DB originalDB, DBCollection coll, DBObject object) {
+    final String fieldName = getFieldName(object);
+    final boolean preserveNullAndEmptyArrays = getPreserveNullAndEmptyArrays(object);
+
+    List<DBObject> result = new ArrayList<DBObject>();
+    for (DBObject dbObject : coll.find().toArray()) {
+      unwind(dbObject, fieldName, preserveNullAndEmptyArrays, result);
+    }
+    return dropAndInsert(coll, result);
+  }
+
+  @Override
+  public boolean canStream(DBObject object) {
+    return true;
+  }
+
+  @Override
+  public Iterator<DBObject> apply(FongoDBCollection source, final Iterator<DBObject> objects, DBObject object) {
+    final String fieldName = getFieldName(object);
+    final boolean preserveNullAndEmptyArrays = getPreserveNullAndEmptyArrays(object);
+    return new PipelineIterator() {
+      private final List<DBObject> unwound = new ArrayList<DBObject>();
+      private Iterator<DBObject> current = unwound.iterator();
+
+      @Override
+      protected DBObject computeNext() {
+        while (!current.hasNext() && objects.hasNext()) {
+          unwound.clear();
+          unwind(objects.next(), fieldName, preserveNullAndEmptyArrays, unwound);
+          current = unwound.iterator();
+        }
+        return current.hasNext() ? current.next() : null;
+      }
+    };
+  }
+
+  /**
+   * @return the path to unwind, without '$'.
+   */
+  private String getFieldName(DBObject object) {
     String fieldName = null;
-    boolean preserveNullAndEmptyArrays = false;
 
     Object unwindObject = object.get(getKeyword());
     if (unwindObject instanceof String) {
@@ -51,7 +91,6 @@ public class Unwind extends PipelineKeyword {
       BasicDBObject unwindDBObject = (BasicDBObject) unwindObject;
       if (unwindDBObject.containsField("path")) {
         fieldName = unwindDBObject.getString("path");
-        preserveNullAndEmptyArrays = getPreserveNullAndEmptyArrays(unwindDBObject);
       }
     }
 
@@ -61,36 +100,45 @@ public class Unwind extends PipelineKeyword {
     if (!fieldName.startsWith("$")) {
       throw new MongoException(28818, String.format("path option to $unwind stage should be prefixed with a '$': %s", fieldName));
     }
-    fieldName = fieldName.substring(1);
+    return fieldName.substring(1);
+  }
 
-    List<DBObject> result = new ArrayList<DBObject>();
-    for (DBObject dbObject : coll.find().toArray()) {
-      if (Util.containsField(dbObject, fieldName)) {
-        Object oValue = Util.extractField(dbObject, fieldName);
-        if (!(oValue instanceof BasicDBList)) {
+  private boolean getPreserveNullAndEmptyArrays(DBObject object) {
+    Object unwindObject = object.get(getKeyword());
+    if (unwindObject instanceof BasicDBObject && ((BasicDBObject) unwindObject).containsField("path")) {
+      return getPreserveNullAndEmptyArrays((BasicDBObject) unwindObject);
+    }
+    return false;
+  }
+
+  /**
+   * Add to the result a document by element of the array.
+   */
+  private void unwind(DBObject dbObject, String fieldName, boolean preserveNullAndEmptyArrays, List<DBObject> result) {
+    if (Util.containsField(dbObject, fieldName)) {
+      Object oValue = Util.extractField(dbObject, fieldName);
+      if (!(oValue instanceof BasicDBList)) {
 //          throw fongoDB..errorResult(15978, "$unwind:  value at end of field path must be an array").getException;
 //          throw new MongoException(15978, "exception: $unwind:  value at end of field path must be an array");
+        DBObject newValue = Util.clone(dbObject);
+        result.add(newValue);
+      } else {
+        BasicDBList list = (BasicDBList) oValue;
+        for (Object sublist : list) {
           DBObject newValue = Util.clone(dbObject);
-          result.add(newValue);
-        } else {
-          BasicDBList list = (BasicDBList) oValue;
-          for (Object sublist : list) {
-            DBObject newValue = Util.clone(dbObject);
-            Util.putValue(newValue, fieldName, sublist);
+          Util.putValue(newValue, fieldName, sublist);
 //          newValue.removeField("_id"); // TODO _id must be the same (but Fongo doesn't handle)
-            result.add(newValue);
-          }
-          if (preserveNullAndEmptyArrays && list.isEmpty()) {
-            DBObject newValue = Util.clone(dbObject);
-            Util.removeField(newValue, fieldName);
-            result.add(newValue);
-          }
+          result.add(newValue);
+        }
+        if (preserveNullAndEmptyArrays && list.isEmpty()) {
+          DBObject newValue = Util.clone(dbObject);
+          Util.removeField(newValue, fieldName);
+          result.add(newValue);
         }
-      } else if (preserveNullAndEmptyArrays) {
-        result.add(Util.clone(dbObject));
       }
+    } else if (preserveNullAndEmptyArrays) {
+      result.add(Util.clone(dbObject));
     }
-    return dropAndInsert(coll, result);
   }
 
   private boolean getPreserveNullAndEmptyArrays(BasicDBObject unwindDBObject) {
@@ -5,7 +5,6 @@ import com.github.fakemongo.impl.Util;
 import com.github.fakemongo.impl.geo.GeoUtil;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
-import com.mongodb.FongoDBCollection;
 import com.vividsolutions.jts.geom.Geometry;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -27,7 +26,7 @@ public class GeoIndex extends IndexAbstract<GeoUtil.GeoDBObject> {
   private static final Logger LOG = LoggerFactory.getLogger(GeoIndex.class);
 
   GeoIndex(String name, DBObject keys, boolean unique, String geoIndex, boolean sparse) {
-    super(name, keys, unique, new LinkedHashMap<GeoUtil.GeoDBObject, IndexedList<GeoUtil.GeoDBObject>>(), geoIndex, sparse);
+    super(name, keys, unique, new LinkedHashMap<GeoUtil.GeoDBObject, PostingList<GeoUtil.GeoDBObject>>(), geoIndex, sparse);
     //TreeMap<GeoUtil.GeoDBObject, List<GeoUtil.GeoDBObject>>(new GeoUtil.GeoComparator(geoIndex)), geoIndex);
   }
 
@@ -61,8 +60,8 @@ public class GeoIndex extends IndexAbstract<GeoUtil.GeoDBObject> {
   /**
    * Try all the map, without trying to filter by geohash.
    */
-  private void geoNearCoverAll(Map<GeoUtil.GeoDBObject, IndexedList<GeoUtil.GeoDBObject>> values, Filter filterValue, Geometry near, boolean spherical, LinkedHashSet<DBObject> resultSet) {
-    for (Map.Entry<GeoUtil.GeoDBObject, IndexedList<GeoUtil.GeoDBObject>> entry : values.entrySet()) {
+  private void geoNearCoverAll(Map<GeoUtil.GeoDBObject, PostingList<GeoUtil.GeoDBObject>> values, Filter filterValue, Geometry near, boolean spherical, LinkedHashSet<DBObject> resultSet) {
+    for (Map.Entry<GeoUtil.GeoDBObject, PostingList<GeoUtil.GeoDBObject>> entry : values.entrySet()) {
       geoNearResults(entry.getValue().getElements(), filterValue, near, resultSet, spherical);
     }
   }
@@ -90,7 +89,6 @@ public class GeoIndex extends IndexAbstract<GeoUtil.GeoDBObject> {
       // Test against the query filter.
       if (geoDBObject.getGeometry() != null && filterValue.apply(geoDBObject)) {
         double radians = GeoUtil.distanceInRadians(geoDBObject.getGeometry(), near, spherical);
-        geoDBObject.removeField(FongoDBCollection.FONGO_SPECIAL_ORDER_BY);
         result.add(new BasicDBObject("dis", radians).append("obj", Util.clone(geoDBObject)));
       }
     }
@@ -14,7 +14,7 @@ public class HashedIndex extends IndexAbstract<DBObject> {
   private static final Logger LOG = LoggerFactory.getLogger(HashedIndex.class);
 
   HashedIndex(String name, DBObject keys, boolean unique, String hashed, boolean sparse) {
-    super(name, keys, unique, new LinkedHashMap<DBObject, IndexedList<DBObject>>(), hashed, sparse);
+    super(name, keys, unique, new LinkedHashMap<DBObject, PostingList<DBObject>>(), hashed, sparse);
   }
 
   /**
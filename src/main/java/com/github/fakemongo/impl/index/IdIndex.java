@@ -0,0 +1,63 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.DBObject;
+import java.util.Collections;
+import java.util.List;
+
+import static com.mongodb.FongoDBCollection.ID_FIELD_NAME;
+
+/**
+ * The index of the _id : the objects with an Integer, Long, ObjectId or String id are found by their id, without
+ * building a key ({_id: x} in a findOne, an update, a remove...).
+ */
+public class IdIndex extends Index {
+  private final IdMap<PostingList<DBObject>> idMap;
+
+  IdIndex(String name, DBObject keys, boolean unique) {
+    this(name, keys, unique, new IdMap<PostingList<DBObject>>());
+  }
+
+  private IdIndex(String name, DBObject keys, boolean unique, IdMap<PostingList<DBObject>> idMap) {
+    super(name, keys, unique, false, idMap); // _id should never be sparse
+    this.idMap = idMap;
+  }
+
+  /**
+   * @return true if the index is on the _id only.
+   */
+  static boolean isIdIndex(DBObject keys) {
+    return keys.keySet().size() == 1 && keys.get(ID_FIELD_NAME) instanceof Number;
+  }
+
+  @Override
+  public List<DBObject> get(DBObject query) {
+    final Object id = query.get(ID_FIELD_NAME);
+    if (!isUnique() || !IdMap.isSpecialized(id)) {
+      return super.get(query);
+    }
+    lookupCount++;
+    final PostingList<DBObject> result = idMap.getById(id);
+    return result == null ? null : result.getElements();
+  }
+
+  /**
+   * @return the position of the object (found by its _id) in the natural order of the collection, -1 if absent.
+   */
+  public int naturalPosition(DBObject object) {
+    return idMap.positionOf(getKeyFor(object));
+  }
+
+  @Override
+  public List<List<Object>> checkAddOrUpdate(DBObject object, DBObject oldObject) {
+    final Object id = object.get(ID_FIELD_NAME);
+    if (!isUnique() || !IdMap.isSpecialized(id)) {
+      return super.checkAddOrUpdate(object, oldObject);
+    }
+    final PostingList<DBObject> objects = idMap.getById(id);
+    if (objects != null && !objects.contains(oldObject)) {
+      // Duplicate key : let the generic check build the error.
+      return super.checkAddOrUpdate(object, oldObject);
+    }
+    return Collections.emptyList();
+  }
+}
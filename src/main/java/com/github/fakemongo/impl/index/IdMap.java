@@ -0,0 +1,314 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.DBObject;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.bson.types.ObjectId;
+
+import static com.mongodb.FongoDBCollection.ID_FIELD_NAME;
+
+/**
+ * Map of the keys {_id: value} of the _id index, in the order of insertion (like a {@link java.util.LinkedHashMap}).
+ * <p/>
+ * The keys with an Integer, Long, ObjectId or String id are hashed by the id itself : {@link #getById(Object)} finds
+ * them without building a key. The other keys are hashed as documents.
+ * <p/>
+ * Open addressing with linear probing : the table holds the positions of the entries, the entries are kept in the
+ * order of insertion (null when removed, until the next rebuild).
+ * <p/>
+ * NOT Thread Safe. The ThreadSafety must be done by the caller.
+ */
+final class IdMap<V> extends AbstractMap<DBObject, V> {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int FREE = -1;
+  private static final int DELETED = -2;
+
+  private int[] table;
+  private IdEntry<V>[] entries;
+  // Used positions in entries, removed included.
+  private int entryCount;
+  private int size;
+
+  IdMap() {
+    init(INITIAL_CAPACITY);
+  }
+
+  /**
+   * @return true if the id is hashed by itself.
+   */
+  static boolean isSpecialized(Object id) {
+    if (id == null) {
+      return false;
+    }
+    final Class<?> clazz = id.getClass();
+    return clazz == Integer.class || clazz == Long.class || clazz == ObjectId.class || clazz == String.class;
+  }
+
+  /**
+   * @param id an Integer, Long, ObjectId or String.
+   * @return the value of the key {_id: id}, null if absent.
+   */
+  V getById(Object id) {
+    final int slot = find(id);
+    return slot < 0 ? null : entries[table[slot]].value;
+  }
+
+  @Override
+  public V get(Object key) {
+    if (key == null) {
+      return null;
+    }
+    final int slot = find(tokenOf(key));
+    return slot < 0 ? null : entries[table[slot]].value;
+  }
+
+  /**
+   * @return the position of the key in the order of insertion, -1 if absent. The positions change when the map is
+   * rebuilt, but not their order.
+   */
+  int positionOf(Object key) {
+    if (key == null) {
+      return -1;
+    }
+    final int slot = find(tokenOf(key));
+    return slot < 0 ? -1 : table[slot];
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key != null && find(tokenOf(key)) >= 0;
+  }
+
+  @Override
+  public V put(DBObject key, V value) {
+    final Object token = tokenOf(key);
+    final int slot = find(token);
+    if (slot >= 0) {
+      final IdEntry<V> entry = entries[table[slot]];
+      final V old = entry.value;
+      entry.value = value;
+      return old;
+    }
+    if (entryCount == entries.length) {
+      rebuild();
+    }
+    final IdEntry<V> entry = new IdEntry<V>(key, token, value);
+    entries[entryCount] = entry;
+    insert(entry, entryCount);
+    entryCount++;
+    size++;
+    return null;
+  }
+
+  @Override
+  public V remove(Object key) {
+    if (key == null) {
+      return null;
+    }
+    final int slot = find(tokenOf(key));
+    if (slot < 0) {
+      return null;
+    }
+    final int position = table[slot];
+    final IdEntry<V> entry = entries[position];
+    table[slot] = DELETED;
+    entries[position] = null;
+    size--;
+    return entry.value;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    init(INITIAL_CAPACITY);
+  }
+
+  @Override
+  public Set<Entry<DBObject, V>> entrySet() {
+    return new AbstractSet<Entry<DBObject, V>>() {
+      @Override
+      public Iterator<Entry<DBObject, V>> iterator() {
+        return new Iterator<Entry<DBObject, V>>() {
+          private int position = nextPosition(0);
+
+          @Override
+          public boolean hasNext() {
+            return position < entryCount;
+          }
+
+          @Override
+          public Entry<DBObject, V> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            final IdEntry<V> entry = entries[position];
+            position = nextPosition(position + 1);
+            return entry;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private int nextPosition(int from) {
+    int position = from;
+    while (position < entryCount && entries[position] == null) {
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * @return the id for a key {_id: id} with a specialized id, the key itself otherwise.
+   */
+  private static Object tokenOf(Object key) {
+    if (key instanceof DBObject) {
+      final DBObject dbObject = (DBObject) key;
+      final Object id = dbObject.get(ID_FIELD_NAME);
+      if (isSpecialized(id) && dbObject.keySet().size() == 1) {
+        return id;
+      }
+    }
+    return key;
+  }
+
+  private static int spread(int hash) {
+    final int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @return the slot of the table holding the token, -1 if absent.
+   */
+  private int find(Object token) {
+    final int mask = table.length - 1;
+    final int hash = spread(token.hashCode());
+    int slot = hash & mask;
+    while (true) {
+      final int position = table[slot];
+      if (position == FREE) {
+        return -1;
+      }
+      if (position >= 0) {
+        final IdEntry<V> entry = entries[position];
+        if (entry.hash == hash && entry.token.equals(token)) {
+          return slot;
+        }
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private void insert(IdEntry<V> entry, int position) {
+    final int mask = table.length - 1;
+    int slot = entry.hash & mask;
+    while (table[slot] >= 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = position;
+  }
+
+  /**
+   * Drop the removed entries, and grow if more than half of the entries are used.
+   */
+  private void rebuild() {
+    final IdEntry<V>[] old = entries;
+    final int oldCount = entryCount;
+    int capacity = table.length;
+    while ((size + 1) * 2 > threshold(capacity)) {
+      capacity <<= 1;
+    }
+    init(capacity);
+    for (int i = 0; i < oldCount; i++) {
+      if (old[i] != null) {
+        entries[entryCount] = old[i];
+        insert(old[i], entryCount);
+        entryCount++;
+        size++;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void init(int capacity) {
+    table = new int[capacity];
+    Arrays.fill(table, FREE);
+    entries = new IdEntry[threshold(capacity)];
+    entryCount = 0;
+    size = 0;
+  }
+
+  // The table is never more than 3/4 full, with the removed entries.
+  private static int threshold(int capacity) {
+    return capacity / 4 * 3;
+  }
+
+  private static final class IdEntry<V> implements Map.Entry<DBObject, V> {
+    private final DBObject key;
+    private final Object token;
+    private final int hash;
+    private V value;
+
+    IdEntry(DBObject key, Object token, V value) {
+      this.key = key;
+      this.token = token;
+      this.hash = spread(token.hashCode());
+      this.value = value;
+    }
+
+    @Override
+    public DBObject getKey() {
+      return key;
+    }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+
+    @Override
+    public V setValue(V value) {
+      final V old = this.value;
+      this.value = value;
+      return old;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      final Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+      return key.equals(other.getKey()) && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+}
@@ -17,16 +17,20 @@ import java.util.TreeMap;
 public class Index extends IndexAbstract<DBObject> {
 
   Index(String name, DBObject keys, boolean unique, boolean sparse) {
-    super(name, keys, unique, createMap(keys, unique), null, sparse);
+    this(name, keys, unique, sparse, createMap(keys, unique));
   }
 
-  private static Map<DBObject, IndexedList<DBObject>> createMap(DBObject keys, boolean unique) {
+  Index(String name, DBObject keys, boolean unique, boolean sparse, Map<DBObject, PostingList<DBObject>> mapValues) {
+    super(name, keys, unique, mapValues, null, sparse);
+  }
+
+  private static Map<DBObject, PostingList<DBObject>> createMap(DBObject keys, boolean unique) {
     // Preserve order only for id.
     if (keys.containsField(FongoDBCollection.ID_FIELD_NAME) && keys.toMap().size() == 1) {
-      return new LinkedHashMap<DBObject, IndexedList<DBObject>>();
+      return new LinkedHashMap<DBObject, PostingList<DBObject>>();
     } else {
       //noinspection unchecked
-      return new TreeMap<DBObject, IndexedList<DBObject>>(new ExpressionParser().buildObjectComparator(isAsc(keys)));
+      return new TreeMap<DBObject, PostingList<DBObject>>(new ExpressionParser().buildObjectComparator(isAsc(keys)));
     }
   }
 
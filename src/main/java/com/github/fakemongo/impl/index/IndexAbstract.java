@@ -1,5 +1,6 @@
 package com.github.fakemongo.impl.index;
 
+import com.github.fakemongo.FongoException;
 import com.github.fakemongo.impl.ExpressionParser;
 import com.github.fakemongo.impl.Filter;
 import com.github.fakemongo.impl.Util;
@@ -13,15 +14,27 @@ import static com.mongodb.FongoDBCollection.ID_FIELD_NAME;
 import com.mongodb.MongoException;
 import com.mongodb.QueryOperators;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.bson.types.Binary;
+import org.bson.types.MaxKey;
+import org.bson.types.ObjectId;
 
 /**
  * An index for the MongoDB.
@@ -29,18 +42,33 @@ import org.bson.types.Binary;
  * NOT Thread Safe. The ThreadSafety must be done by the caller.
  */
 public abstract class IndexAbstract<T extends DBObject> {
+  // Part of the index walked by a range on other values than numbers or dates.
+  private static final double RANGE_SELECTIVITY = 1D / 3;
+
   final String geoIndex;
   final ExpressionParser expressionParser = new ExpressionParser();
   // Contains all dbObject than field value can have
-  final Map<T, IndexedList<T>> mapValues;
+  final Map<T, PostingList<T>> mapValues;
   private final String name;
   private final DBObject keys;
   private final Set<String> fields;
   private final boolean unique;
   private final boolean sparse;
+  private final boolean ascending;
+  // First field of the index when the keys are ordered by it, null otherwise.
+  private final String rangeField;
+  // Number of keys holding a list : neither the bounds nor the order of the index apply to them.
+  private int multiKeyCount = 0;
+  // Number of objects in the index.
+  private int objectCount = 0;
+  private final IndexStatistics statistics = new IndexStatistics();
   int lookupCount = 0;
+  // Only the objects matching it are in the index, null for a full index.
+  private PartialFilter partialFilter;
+  // Seconds after the date of the field before the object expires, null if the index is not a TTL index.
+  private Long expireAfterSeconds;
 
-  IndexAbstract(String name, DBObject keys, boolean unique, Map<T, IndexedList<T>> mapValues, String geoIndex, boolean sparse) throws MongoException {
+  IndexAbstract(String name, DBObject keys, boolean unique, Map<T, PostingList<T>> mapValues, String geoIndex, boolean sparse) throws MongoException {
     this.name = name;
     this.fields = Collections.unmodifiableSet(keys.keySet()); // Setup BEFORE keys.
     this.keys = prepareKeys(keys);
@@ -48,6 +76,8 @@ public abstract class IndexAbstract<T extends DBObject> {
     this.mapValues = mapValues;
     this.geoIndex = geoIndex;
     this.sparse = sparse;
+    this.ascending = isAsc(keys);
+    this.rangeField = rangeField(fields, this.keys);
 
     for (Object value : keys.toMap().values()) {
       if (!(value instanceof String) && !(value instanceof Number)) {
@@ -62,6 +92,19 @@ public abstract class IndexAbstract<T extends DBObject> {
     return value instanceof Number && ((Number) value).intValue() >= 1;
   }
 
+  private static String rangeField(Set<String> fields, DBObject keys) {
+    final String first = fields.iterator().next();
+    if (first.contains(".")) {
+      return null;
+    }
+    // The key begins with _id when it is not excluded from the projection.
+    final Object id = keys.get(ID_FIELD_NAME);
+    if (first.equals(ID_FIELD_NAME) || id instanceof Number && ((Number) id).intValue() == 0) {
+      return first;
+    }
+    return null;
+  }
+
   private DBObject prepareKeys(DBObject keys) {
     DBObject nKeys = Util.clone(keys);
     if (!nKeys.containsField(ID_FIELD_NAME)) {
@@ -102,6 +145,46 @@ public abstract class IndexAbstract<T extends DBObject> {
     return sparse;
   }
 
+  public boolean isPartial() {
+    return partialFilter != null;
+  }
+
+  /**
+   * @return the partialFilterExpression of the index, null for a full index.
+   */
+  public DBObject getPartialFilterExpression() {
+    return partialFilter == null ? null : partialFilter.getExpression();
+  }
+
+  void setPartialFilterExpression(DBObject partialFilterExpression) throws MongoException {
+    this.partialFilter = new PartialFilter(partialFilterExpression);
+  }
+
+  /**
+   * @return the expireAfterSeconds of a TTL index, null for the other indexes.
+   */
+  public Long getExpireAfterSeconds() {
+    return expireAfterSeconds;
+  }
+
+  void setExpireAfterSeconds(long expireAfterSeconds) {
+    this.expireAfterSeconds = expireAfterSeconds;
+  }
+
+  /**
+   * @return true if the object must be in the index : always, unless the index is partial.
+   */
+  public boolean canIndex(DBObject object) {
+    return partialFilter == null || partialFilter.matches(object);
+  }
+
+  /**
+   * @return true if the index holds all the objects matching the query : always, unless the index is partial.
+   */
+  public boolean canBeUsedFor(DBObject query) {
+    return partialFilter == null || partialFilter.isImpliedBy(query);
+  }
+
   public boolean isGeoIndex() {
     return geoIndex != null;
   }
@@ -123,6 +206,9 @@ public abstract class IndexAbstract<T extends DBObject> {
     if (oldObject != null) {
       remove(oldObject);
     }
+    if (!canIndex(object)) {
+      return Collections.emptyList();
+    }
 
     T key = getKeyFor(object);
     // In a sparse index, we only add to the index if the full key is there.
@@ -136,23 +222,95 @@ public abstract class IndexAbstract<T extends DBObject> {
         return extractFields(object, key.keySet());
       }
       T toAdd = embedded(object);
-      mapValues.put(key, new IndexedList<T>(Collections.singletonList(toAdd))); // DO NOT CLONE !
+      putKey(key, new PostingList<T>(toAdd)); // DO NOT CLONE !
+      added(key, 1);
     } else {
       // Extract previous values
-      IndexedList<T> values = mapValues.get(key);
+      PostingList<T> values = mapValues.get(key);
       if (values == null) {
         // Create if absent.
-        values = new IndexedList<T>(new ArrayList<T>());
-        mapValues.put(key, values);
+        values = new PostingList<T>();
+        putKey(key, values);
       }
 
       // Add to values.
       T toAdd = embedded(object); // DO NOT CLONE ! Indexes must share the same object.
       values.add(toAdd);
+      added(key, 1);
     }
     return Collections.emptyList();
   }
 
+  private void putKey(T key, PostingList<T> values) {
+    if (isMultiKey(key)) {
+      multiKeyCount++;
+    }
+    final boolean distinct = isDistinctValue(key);
+    mapValues.put(key, values);
+    if (distinct) {
+      statistics.distinctValueAdded();
+    }
+  }
+
+  private void removeKey(T key) {
+    if (mapValues.remove(key) != null) {
+      if (isMultiKey(key)) {
+        multiKeyCount--;
+      }
+      if (isDistinctValue(key)) {
+        statistics.distinctValueRemoved();
+      }
+    }
+  }
+
+  /**
+   * @return true if no key of the index has the same value for the first field.
+   */
+  private boolean isDistinctValue(T key) {
+    if (fields.size() == 1 || !(mapValues instanceof NavigableMap) || rangeField == null) {
+      // The value is the key.
+      return !mapValues.containsKey(key);
+    }
+    try {
+      final Object value = key.get(rangeField);
+      return between((NavigableMap<T, PostingList<T>>) mapValues, new KeyRange(value, value)).isEmpty();
+    } catch (FongoException e) {
+      return false;
+    } catch (ClassCastException e) {
+      return false;
+    }
+  }
+
+  private void added(T key, int count) {
+    objectCount += count;
+    if (rangeField != null) {
+      for (int i = 0; i < count; i++) {
+        statistics.add(key.get(rangeField));
+      }
+    }
+  }
+
+  private void removed(T key, int count) {
+    objectCount -= count;
+    if (rangeField != null) {
+      for (int i = 0; i < count; i++) {
+        statistics.remove(key.get(rangeField));
+      }
+    }
+  }
+
+  private boolean isMultiKey(T key) {
+    if (rangeField == null) {
+      return false;
+    }
+    for (String field : key.keySet()) {
+      if (key.get(field) instanceof List) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private boolean isPartialKey(T key) {
     final Set<String> keyProjections = generateProjections(key, "");
     return !getFields().equals(keyProjections);
@@ -190,9 +348,9 @@ public abstract class IndexAbstract<T extends DBObject> {
    * @return keys in error if uniqueness is not respected, empty collection otherwise.
    */
   public List<List<Object>> checkAddOrUpdate(T object, T oldObject) {
-    if (unique) {
+    if (unique && canIndex(object)) {
       DBObject key = getKeyFor(object);
-      IndexedList<T> objects = mapValues.get(key);
+      PostingList<T> objects = mapValues.get(key);
       if (objects != null && !objects.contains(oldObject)) {
         List<List<Object>> fieldsForIndex = extractFields(object, getFields());
         return fieldsForIndex;
@@ -207,15 +365,22 @@ public abstract class IndexAbstract<T extends DBObject> {
    * @param object to remove from the index.
    */
   public void remove(T object) {
+    if (!canIndex(object)) {
+      // Never added : another object may have the same key.
+      return;
+    }
     T key = getKeyFor(object);
     // Extract previous values
-    IndexedList<T> values = mapValues.get(key);
+    PostingList<T> values = mapValues.get(key);
     if (values != null) {
       // Last entry ? or uniqueness ?
       if (values.size() == 1) {
-        mapValues.remove(key);
+        removeKey(key);
+        removed(key, 1);
       } else {
+        final int size = values.size();
         values.remove(object);
+        removed(key, size - values.size());
       }
     }
   }
@@ -227,6 +392,9 @@ public abstract class IndexAbstract<T extends DBObject> {
    * @return keys in error if uniqueness is not respected, empty collection otherwise.
    */
   public List<List<Object>> addAll(Iterable<T> objects) {
+    if (mapValues instanceof SortedMap && mapValues.isEmpty()) {
+      return bulkLoad(objects);
+    }
     for (T object : objects) {
       if (canHandle(object)) {
         List<List<Object>> nonUnique = addOrUpdate(object, null);
@@ -239,6 +407,187 @@ public abstract class IndexAbstract<T extends DBObject> {
     return Collections.emptyList();
   }
 
+  /**
+   * Build an empty ordered index : the keys are extracted in parallel, sorted, checked for uniqueness in one pass and
+   * loaded at once in the map.
+   */
+  private List<List<Object>> bulkLoad(Iterable<T> objects) {
+    final List<T> list = new ArrayList<T>();
+    for (T object : objects) {
+      if (canIndex(object)) {
+        list.add(object);
+      }
+    }
+    @SuppressWarnings("unchecked") final KeyedObject<T>[] extracted = new KeyedObject[list.size()];
+    ForkJoinPool.commonPool().invoke(new KeyExtraction(list, extracted, 0, list.size()));
+
+    // The objects not in the index left a null.
+    int count = 0;
+    for (KeyedObject<T> keyedObject : extracted) {
+      if (keyedObject != null) {
+        extracted[count++] = keyedObject;
+      }
+    }
+    final KeyedObject<T>[] keyedObjects = Arrays.copyOf(extracted, count);
+    final Comparator<? super T> comparator = ((SortedMap<T, PostingList<T>>) mapValues).comparator();
+    // Stable : the objects of a key stay in the order of insertion.
+    Arrays.parallelSort(keyedObjects, new Comparator<KeyedObject<T>>() {
+      @Override
+      public int compare(KeyedObject<T> o1, KeyedObject<T> o2) {
+        return comparator.compare(o1.key, o2.key);
+      }
+    });
+
+    final List<Map.Entry<T, PostingList<T>>> entries = new ArrayList<Map.Entry<T, PostingList<T>>>();
+    int i = 0;
+    while (i < count) {
+      final T key = keyedObjects[i].key;
+      final PostingList<T> values = new PostingList<T>(embedded(keyedObjects[i].object)); // DO NOT CLONE !
+      int next = i + 1;
+      while (next < count && comparator.compare(key, keyedObjects[next].key) == 0) {
+        if (unique) {
+          return extractFields(keyedObjects[next].object, key.keySet());
+        }
+        values.add(embedded(keyedObjects[next].object));
+        next++;
+      }
+      entries.add(new AbstractMap.SimpleImmutableEntry<T, PostingList<T>>(key, values));
+      i = next;
+    }
+    // Linear for a TreeMap.
+    mapValues.putAll(new SortedEntries<T, PostingList<T>>(entries, comparator));
+
+    final Comparator valueComparator = expressionParser.buildObjectComparator(true);
+    Object previousValue = null;
+    boolean first = true;
+    for (Map.Entry<T, PostingList<T>> entry : entries) {
+      final T key = entry.getKey();
+      if (isMultiKey(key)) {
+        multiKeyCount++;
+      }
+      // Same rule as isDistinctValue() : the keys with the same first field are contiguous.
+      if (fields.size() == 1 || rangeField == null) {
+        statistics.distinctValueAdded();
+      } else {
+        final Object value = key.get(rangeField);
+        if (first || valueComparator.compare(previousValue, value) != 0) {
+          statistics.distinctValueAdded();
+        }
+        previousValue = value;
+      }
+      first = false;
+      added(key, entry.getValue().size());
+    }
+    return Collections.emptyList();
+  }
+
+  private static final class KeyedObject<T> {
+    private final T key;
+    private final T object;
+
+    KeyedObject(T key, T object) {
+      this.key = key;
+      this.object = object;
+    }
+  }
+
+  /**
+   * Extract the keys of the objects between from and to, forking for the big ranges.
+   */
+  private final class KeyExtraction extends RecursiveAction {
+    // Under this number of objects, no fork.
+    private static final int THRESHOLD = 1024;
+
+    private final List<T> objects;
+    private final KeyedObject<T>[] extracted;
+    private final int from;
+    private final int to;
+
+    KeyExtraction(List<T> objects, KeyedObject<T>[] extracted, int from, int to) {
+      this.objects = objects;
+      this.extracted = extracted;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          final T object = objects.get(i);
+          if (canHandle(object)) {
+            final T key = getKeyFor(object);
+            // In a sparse index, we only add to the index if the full key is there.
+            if (!sparse || !isPartialKey(key)) {
+              extracted[i] = new KeyedObject<T>(key, object);
+            }
+          }
+        }
+      } else {
+        final int middle = (from + to) >>> 1;
+        invokeAll(new KeyExtraction(objects, extracted, from, middle), new KeyExtraction(objects, extracted, middle, to));
+      }
+    }
+  }
+
+  /**
+   * Entries already sorted, to fill a TreeMap without comparing them again.
+   */
+  private static final class SortedEntries<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+    private final List<Map.Entry<K, V>> entries;
+    private final Comparator<? super K> comparator;
+
+    SortedEntries(List<Map.Entry<K, V>> entries, Comparator<? super K> comparator) {
+      this.entries = entries;
+      this.comparator = comparator;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+      return new AbstractSet<Map.Entry<K, V>>() {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+          return entries.iterator();
+        }
+
+        @Override
+        public int size() {
+          return entries.size();
+        }
+      };
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+      return comparator;
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public K firstKey() {
+      return entries.get(0).getKey();
+    }
+
+    @Override
+    public K lastKey() {
+      return entries.get(entries.size() - 1).getKey();
+    }
+  }
+
   // Only for unique index and for query with values. ($in doesn't work by example.)
   public List<T> get(DBObject query) {
     if (!unique) {
@@ -247,7 +596,7 @@ public abstract class IndexAbstract<T extends DBObject> {
     lookupCount++;
 
     T key = getKeyFor(query);
-    IndexedList<T> result = mapValues.get(key);
+    PostingList<T> result = mapValues.get(key);
     if (result != null)
       return result.getElements();
     else
@@ -273,12 +622,248 @@ public abstract class IndexAbstract<T extends DBObject> {
     Filter filterKey = expressionParser.buildFilter(query, getFields());
     // Filter for the data.
     Filter filter = expressionParser.buildFilter(query);
+    try {
+      return retrieveObjects(candidateEntries(query), filterKey, filter);
+    } catch (FongoException e) {
+      // Some keys can't be compared with the bounds of the query.
+      return retrieveObjects(Collections.singletonList(mapValues), filterKey, filter);
+    } catch (ClassCastException e) {
+      return retrieveObjects(Collections.singletonList(mapValues), filterKey, filter);
+    }
+  }
+
+  private List<T> retrieveObjects(List<Map<T, PostingList<T>>> candidates, Filter filterKey, Filter filter) {
     List<T> result = new ArrayList<T>();
-    for (Map.Entry<T, IndexedList<T>> entry : mapValues.entrySet()) {
-      if (filterKey.apply(entry.getKey())) {
-        for (T object : entry.getValue().getElements()) {
+    for (Map<T, PostingList<T>> entries : candidates) {
+      for (Map.Entry<T, PostingList<T>> entry : entries.entrySet()) {
+        if (filterKey.apply(entry.getKey())) {
+          for (T object : entry.getValue().getElements()) {
+            if (filter.apply(object)) {
+              result.add(object); // DO NOT CLONE ! need for update.
+            }
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Parts of the index which can contain the results of the query, disjoint and in the order of the index :
+   * a view between the bounds of the query on the first field (or one by value of a $in) for an ordered index,
+   * one entry by value of a $in for the _id index, the whole index otherwise.
+   */
+  List<Map<T, PostingList<T>>> candidateEntries(DBObject query) {
+    final List<KeyRange> ranges = rangeField == null || multiKeyCount > 0 ? null : KeyRange.of(query.get(rangeField));
+    if (ranges != null) {
+      if (mapValues instanceof NavigableMap) {
+        return orderedEntries((NavigableMap<T, PostingList<T>>) mapValues, ranges);
+      }
+      if (geoIndex == null && fields.size() == 1 && arePoints(ranges)) {
+        return pointEntries(ranges);
+      }
+    }
+    return Collections.singletonList(mapValues);
+  }
+
+  private List<Map<T, PostingList<T>>> orderedEntries(NavigableMap<T, PostingList<T>> map, List<KeyRange> ranges) {
+    if (ranges.size() > 1) {
+      ranges = distinctPoints(ranges, expressionParser.buildObjectComparator(ascending));
+    }
+    final List<Map<T, PostingList<T>>> entries = new ArrayList<Map<T, PostingList<T>>>(ranges.size());
+    for (KeyRange range : ranges) {
+      entries.add(between(map, range));
+    }
+    return entries;
+  }
+
+  private List<Map<T, PostingList<T>>> pointEntries(List<KeyRange> points) {
+    final List<Map<T, PostingList<T>>> entries = new ArrayList<Map<T, PostingList<T>>>(points.size());
+    // In the order of the values, like a walk of the _id index.
+    for (KeyRange point : distinctPoints(points, expressionParser.buildObjectComparator(true))) {
+      final T key = getKeyFor(new BasicDBObject(rangeField, point.lower));
+      final PostingList<T> values = mapValues.get(key);
+      if (values != null) {
+        entries.add(Collections.singletonMap(key, values));
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Only values equal for the query and for the hash map (numbers of different types are not).
+   */
+  private static boolean arePoints(List<KeyRange> ranges) {
+    for (KeyRange range : ranges) {
+      if (!range.isPoint() || !(range.lower instanceof String || range.lower instanceof ObjectId || range.lower instanceof Boolean)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<KeyRange> distinctPoints(List<KeyRange> points, final Comparator comparator) {
+    final List<KeyRange> sorted = new ArrayList<KeyRange>(points);
+    Collections.sort(sorted, new Comparator<KeyRange>() {
+      @Override
+      public int compare(KeyRange o1, KeyRange o2) {
+        return comparator.compare(o1.lower, o2.lower);
+      }
+    });
+    final List<KeyRange> distinct = new ArrayList<KeyRange>(sorted.size());
+    for (KeyRange point : sorted) {
+      if (distinct.isEmpty() || comparator.compare(distinct.get(distinct.size() - 1).lower, point.lower) != 0) {
+        distinct.add(point);
+      }
+    }
+    return distinct;
+  }
+
+  private NavigableMap<T, PostingList<T>> between(NavigableMap<T, PostingList<T>> map, KeyRange range) {
+    // The map is in the order of the index : swap the bounds for a descending one.
+    final T from = ascending ? lowerProbe(range.lower) : upperProbe(range.upper);
+    final T to = ascending ? upperProbe(range.upper) : lowerProbe(range.lower);
+    if (from == null) {
+      return map.headMap(to, true);
+    }
+    if (to == null) {
+      return map.tailMap(from, true);
+    }
+    if (map.comparator().compare(from, to) > 0) {
+      // Empty range.
+      return map.subMap(from, true, from, false);
+    }
+    return map.subMap(from, true, to, true);
+  }
+
+  private T lowerProbe(Object value) {
+    if (value == null) {
+      return null;
+    }
+    // {field: value} is before {field: value, other: ...}
+    return (T) new BasicDBObject(rangeField, value);
+  }
+
+  private T upperProbe(Object value) {
+    if (value == null) {
+      return null;
+    }
+    final BasicDBObject probe = new BasicDBObject(rangeField, value);
+    if (fields.size() > 1) {
+      // Must be after all the keys {field: value, other: ...} of a compound index.
+      final Iterator<String> iterator = fields.iterator();
+      iterator.next();
+      final String second = iterator.next().split("\\.")[0];
+      if (!second.equals(rangeField)) {
+        probe.put(second, new MaxKey());
+      }
+    }
+    return (T) probe;
+  }
+
+  /**
+   * Estimate, from the statistics, the number of objects walked in the index to answer the query.
+   *
+   * @param query query the index can handle.
+   */
+  public double estimatedCost(DBObject query) {
+    if (objectCount == 0) {
+      return 0;
+    }
+    final List<KeyRange> ranges = rangeField == null || multiKeyCount > 0 ? null : KeyRange.of(query.get(rangeField));
+    if (ranges == null) {
+      return objectCount;
+    }
+    if (allPoints(ranges)) {
+      double byPoint = (double) objectCount / Math.max(1, statistics.getDistinctValues());
+      if (fields.size() > 1 && allFieldsArePoints(query)) {
+        byPoint = Math.min(byPoint, (double) objectCount / Math.max(1, mapValues.size()));
+      }
+      return Math.min(objectCount, byPoint * ranges.size());
+    }
+    final KeyRange range = ranges.get(0);
+    final double estimate = statistics.estimate(range.lower, range.upper);
+    return estimate < 0 ? objectCount * RANGE_SELECTIVITY : estimate;
+  }
+
+  private static boolean allPoints(List<KeyRange> ranges) {
+    for (KeyRange range : ranges) {
+      if (!range.isPoint()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean allFieldsArePoints(DBObject query) {
+    for (String field : fields) {
+      if (!KeyRange.isBound(query.get(field))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public IndexStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @param orderBy sort of a query.
+   * @return 1 if the index walks the objects in the order of the sort, -1 in the reverse order, 0 if it can't give
+   * this order.
+   */
+  public int sortDirection(DBObject orderBy) {
+    if (rangeField == null || multiKeyCount > 0 || !(mapValues instanceof NavigableMap) || orderBy.keySet().size() > fields.size()) {
+      return 0;
+    }
+    // The keys are compared as a whole, in the direction of the first field.
+    final Iterator<String> indexFields = fields.iterator();
+    int direction = 0;
+    for (String field : orderBy.keySet()) {
+      final Object value = orderBy.get(field);
+      if (!field.equals(indexFields.next()) || field.contains(".") || !(value instanceof Number)) {
+        return 0;
+      }
+      final int fieldDirection = ((Number) value).intValue() < 0 ? -1 : 1;
+      if (direction != 0 && direction != fieldDirection) {
+        return 0;
+      }
+      direction = fieldDirection;
+    }
+    return ascending ? direction : -direction;
+  }
+
+  /**
+   * Walk the index to find the objects matching the query in the order of the index.
+   *
+   * @param reverse true to walk in the reverse order.
+   * @param limit   stop after this number of objects found, 0 for all.
+   */
+  public List<T> retrieveOrderedObjects(DBObject query, Filter filter, boolean reverse, int limit) {
+    lookupCount++;
+    try {
+      return retrieveOrderedObjects(candidateEntries(query), filter, reverse, limit);
+    } catch (FongoException e) {
+      // Some keys can't be compared with the bounds of the query.
+      return retrieveOrderedObjects(Collections.singletonList(mapValues), filter, reverse, limit);
+    } catch (ClassCastException e) {
+      return retrieveOrderedObjects(Collections.singletonList(mapValues), filter, reverse, limit);
+    }
+  }
+
+  private List<T> retrieveOrderedObjects(List<Map<T, PostingList<T>>> candidates, Filter filter, boolean reverse, int limit) {
+    final List<T> result = new ArrayList<T>();
+    final ListIterator<Map<T, PostingList<T>>> iterator = candidates.listIterator(reverse ? candidates.size() : 0);
+    while (reverse ? iterator.hasPrevious() : iterator.hasNext()) {
+      final Map<T, PostingList<T>> entries = reverse ? ((NavigableMap<T, PostingList<T>>) iterator.previous()).descendingMap() : iterator.next();
+      for (PostingList<T> values : entries.values()) {
+        for (T object : values.getElements()) {
           if (filter.apply(object)) {
             result.add(object); // DO NOT CLONE ! need for update.
+            if (result.size() == limit) {
+              return result;
+            }
           }
         }
       }
@@ -291,20 +876,12 @@ public abstract class IndexAbstract<T extends DBObject> {
   }
 
   public int size() {
-    int size = 0;
-    if (unique) {
-      size = mapValues.size();
-    } else {
-      for (Map.Entry<T, IndexedList<T>> entry : mapValues.entrySet()) {
-        size += entry.getValue().size();
-      }
-    }
-    return size;
+    return objectCount;
   }
 
   public List<DBObject> values() {
     List<DBObject> values = new ArrayList<DBObject>(mapValues.size() * 10);
-    for (IndexedList<T> objects : mapValues.values()) {
+    for (PostingList<T> objects : mapValues.values()) {
       values.addAll(objects.getElements());
     }
     return values;
@@ -312,6 +889,9 @@ public abstract class IndexAbstract<T extends DBObject> {
 
   public void clear() {
     mapValues.clear();
+    multiKeyCount = 0;
+    objectCount = 0;
+    statistics.clear();
   }
 
   /**
@@ -0,0 +1,146 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background build of an index : the index is filled from a snapshot of the collection without the lock of the
+ * collection, while the writes done meanwhile are kept in a side log. The side log is replayed under the lock before
+ * the index is published.
+ * <p/>
+ * {@link #build()} is called by the thread of the build, the other methods with the write lock of the collection.
+ */
+public final class IndexBuild {
+  private final long opid;
+  private final String ns;
+  private final IndexAbstract index;
+  private final DBObject spec;
+  private final List<DBObject> objects;
+  private final long startTime = System.currentTimeMillis();
+  private final AtomicLong done = new AtomicLong();
+  // Writes done during the build, in their order : {object, oldObject} for an insert or update, {null, object} for a remove.
+  private final List<DBObject[]> sideLog = new ArrayList<DBObject[]>();
+  private volatile boolean aborted;
+
+  /**
+   * @param opid    id of the operation, for currentOp.
+   * @param ns      namespace of the collection.
+   * @param index   index to build, not yet visible.
+   * @param spec    the record of the index (key, name, options).
+   * @param objects snapshot of the objects of the collection.
+   */
+  public IndexBuild(long opid, String ns, IndexAbstract index, DBObject spec, List<DBObject> objects) {
+    this.opid = opid;
+    this.ns = ns;
+    this.index = index;
+    this.spec = spec;
+    this.objects = objects;
+  }
+
+  public long getOpid() {
+    return opid;
+  }
+
+  public IndexAbstract getIndex() {
+    return index;
+  }
+
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * The collection has been dropped : stop the build.
+   */
+  public void abort() {
+    aborted = true;
+  }
+
+  /**
+   * Fill the index with the snapshot.
+   *
+   * @return keys in error if uniqueness is not respected, empty collection otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  public List<List<Object>> build() {
+    for (DBObject object : objects) {
+      if (aborted) {
+        break;
+      }
+      if (index.canHandle(object)) {
+        final List<List<Object>> error = index.addOrUpdate(object, null);
+        if (!error.isEmpty()) {
+          return error;
+        }
+      }
+      done.incrementAndGet();
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Log an insert or an update done during the build.
+   */
+  public void logAdd(DBObject object, DBObject oldObject) {
+    sideLog.add(new DBObject[]{object, oldObject});
+  }
+
+  /**
+   * Log a remove done during the build.
+   */
+  public void logRemove(DBObject object) {
+    sideLog.add(new DBObject[]{null, object});
+  }
+
+  /**
+   * Apply the writes done during the build to the index, like the collection does for its published indexes.
+   *
+   * @return keys in error if uniqueness is not respected, empty collection otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  public List<List<Object>> replay() {
+    for (DBObject[] write : sideLog) {
+      final DBObject object = write[0];
+      final DBObject oldObject = write[1];
+      if (object == null) {
+        if (index.canHandle(oldObject)) {
+          index.remove(oldObject);
+        }
+      } else if (index.canHandle(object)) {
+        final List<List<Object>> error = index.addOrUpdate(object, oldObject);
+        if (!error.isEmpty()) {
+          return error;
+        }
+      } else if (index.canHandle(oldObject)) {
+        index.remove(oldObject);
+      }
+    }
+    sideLog.clear();
+    return Collections.emptyList();
+  }
+
+  /**
+   * @return the description of the build, as in the inprog of a currentOp.
+   */
+  public DBObject toDBObject() {
+    final long total = objects.size();
+    final long current = done.get();
+    final long running = System.currentTimeMillis() - startTime;
+    final int percent = total == 0 ? 100 : (int) (current * 100 / total);
+    return new BasicDBObject("desc", "conn")
+        .append("opid", opid)
+        .append("active", true)
+        .append("secs_running", running / 1000)
+        .append("microsecs_running", running * 1000)
+        .append("op", "command")
+        .append("ns", ns)
+        .append("command", new BasicDBObject("createIndexes", ns.substring(ns.indexOf('.') + 1))
+            .append("indexes", Collections.singletonList(spec)))
+        .append("msg", "Index Build (background) Index Build (background): " + current + "/" + total + " " + percent + "%")
+        .append("progress", new BasicDBObject("done", current).append("total", total));
+  }
+}
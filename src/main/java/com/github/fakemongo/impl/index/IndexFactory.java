@@ -5,6 +5,8 @@ import com.mongodb.DBObject;
 import com.mongodb.MongoException;
 import java.util.Map;
 
+import static com.mongodb.FongoDBCollection.ID_FIELD_NAME;
+
 /**
  * A factory for index.
  */
@@ -13,6 +15,50 @@ public final class IndexFactory {
   }
 
   public static IndexAbstract create(String name, DBObject keys, boolean unique, boolean sparse) throws MongoException {
+    return create(name, keys, unique, sparse, null);
+  }
+
+  /**
+   * @param partialFilterExpression only the objects matching it are indexed, null for a full index.
+   */
+  public static IndexAbstract create(String name, DBObject keys, boolean unique, boolean sparse, DBObject partialFilterExpression) throws MongoException {
+    return create(name, keys, unique, sparse, partialFilterExpression, null);
+  }
+
+  /**
+   * @param partialFilterExpression only the objects matching it are indexed, null for a full index.
+   * @param expireAfterSeconds      the expireAfterSeconds option of a TTL index, null for the other indexes.
+   */
+  public static IndexAbstract create(String name, DBObject keys, boolean unique, boolean sparse, DBObject partialFilterExpression, Object expireAfterSeconds) throws MongoException {
+    final IndexAbstract index;
+    if (partialFilterExpression == null) {
+      index = create(name, keys, unique, sparse, false);
+    } else {
+      if (sparse) {
+        throw new MongoException(67, "cannot mix \"partialFilterExpression\" and \"sparse\" options");
+      }
+      index = create(name, keys, unique, false, true);
+      index.setPartialFilterExpression(partialFilterExpression);
+    }
+    if (expireAfterSeconds != null) {
+      if (!(expireAfterSeconds instanceof Number)) {
+        throw new MongoException(67, "TTL index 'expireAfterSeconds' option must be numeric, but received a type of " + expireAfterSeconds.getClass().getSimpleName());
+      }
+      if (((Number) expireAfterSeconds).longValue() < 0) {
+        throw new MongoException(67, "TTL index 'expireAfterSeconds' option cannot be less than 0");
+      }
+      if (keys.keySet().size() != 1) {
+        throw new MongoException(67, "TTL indexes are single-field indexes, compound indexes do not support TTL. Index spec: " + keys);
+      }
+      if (keys.containsField(ID_FIELD_NAME)) {
+        throw new MongoException(67, "The field 'expireAfterSeconds' is not valid for an _id index specification.");
+      }
+      index.setExpireAfterSeconds(((Number) expireAfterSeconds).longValue());
+    }
+    return index;
+  }
+
+  private static IndexAbstract create(String name, DBObject keys, boolean unique, boolean sparse, boolean partial) throws MongoException {
     String geoIndex = getGeoKey(keys);
     if (geoIndex != null) {
       return new GeoIndex(name, keys, unique, geoIndex, sparse);
@@ -21,6 +67,9 @@ public final class IndexFactory {
       if (hashed != null) {
         return new HashedIndex(name, keys, unique, hashed, sparse);
       }
+      if (!sparse && !partial && IdIndex.isIdIndex(keys)) {
+        return new IdIndex(name, keys, unique);
+      }
       return new Index(name, keys, unique, sparse);
     }
   }
@@ -0,0 +1,138 @@
+package com.github.fakemongo.impl.index;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Cheap statistics on the first field of an index, updated on each add/remove : number of distinct values and an
+ * equi-width histogram of the numbers and dates.
+ * <p/>
+ * The histogram never shrinks : when a value is out of its range, the width of the buckets is doubled.
+ * <p/>
+ * NOT Thread Safe. The ThreadSafety must be done by the caller.
+ */
+public final class IndexStatistics {
+  private static final int BUCKETS = 64;
+
+  private final long[] counts = new long[BUCKETS];
+  // Lower bound of the histogram, and width of a bucket (0 while empty).
+  private double low = 0;
+  private double width = 0;
+  private int distinctValues = 0;
+
+  void add(Object value) {
+    final double v = toDouble(value);
+    if (Double.isNaN(v)) {
+      return;
+    }
+    include(v);
+    counts[bucket(v)]++;
+  }
+
+  void remove(Object value) {
+    final double v = toDouble(value);
+    if (Double.isNaN(v) || width == 0 || v < low || v >= high()) {
+      return;
+    }
+    final int bucket = bucket(v);
+    if (counts[bucket] > 0) {
+      counts[bucket]--;
+    }
+  }
+
+  void distinctValueAdded() {
+    distinctValues++;
+  }
+
+  void distinctValueRemoved() {
+    distinctValues--;
+  }
+
+  void clear() {
+    Arrays.fill(counts, 0);
+    low = 0;
+    width = 0;
+    distinctValues = 0;
+  }
+
+  public int getDistinctValues() {
+    return distinctValues;
+  }
+
+  /**
+   * @param lower inclusive, null if unbounded.
+   * @param upper inclusive, null if unbounded.
+   * @return the estimated number of values in the range, -1 if the bounds are not numbers or dates.
+   */
+  public double estimate(Object lower, Object upper) {
+    final double lo = lower == null ? Double.NEGATIVE_INFINITY : toDouble(lower);
+    final double hi = upper == null ? Double.POSITIVE_INFINITY : toDouble(upper);
+    if (Double.isNaN(lo) || Double.isNaN(hi)) {
+      return -1;
+    }
+    if (width == 0 || hi < lo) {
+      return 0;
+    }
+    double estimate = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      final double start = low + i * width;
+      final double overlap = Math.min(start + width, hi) - Math.max(start, lo);
+      if (overlap > 0) {
+        // The values are supposed uniform in a bucket.
+        estimate += counts[i] * Math.min(1D, overlap / width);
+      }
+    }
+    return estimate;
+  }
+
+  private void include(double v) {
+    if (width == 0) {
+      low = Math.floor(v);
+      width = 1;
+    }
+    while (v < low) {
+      // The current range become the upper half.
+      merge(BUCKETS / 2);
+      low -= width * BUCKETS;
+      width *= 2;
+    }
+    while (v >= high()) {
+      // The current range become the lower half.
+      merge(0);
+      width *= 2;
+    }
+  }
+
+  private void merge(int offset) {
+    final long[] merged = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      merged[offset + i / 2] += counts[i];
+    }
+    System.arraycopy(merged, 0, counts, 0, BUCKETS);
+  }
+
+  private double high() {
+    return low + width * BUCKETS;
+  }
+
+  private int bucket(double v) {
+    return Math.min(BUCKETS - 1, (int) ((v - low) / width));
+  }
+
+  private static double toDouble(Object value) {
+    final double v;
+    if (value instanceof Number) {
+      v = ((Number) value).doubleValue();
+    } else if (value instanceof Date) {
+      v = ((Date) value).getTime();
+    } else {
+      return Double.NaN;
+    }
+    return Double.isInfinite(v) ? Double.NaN : v;
+  }
+
+  @Override
+  public String toString() {
+    return "IndexStatistics{distinctValues=" + distinctValues + ", low=" + low + ", width=" + width + '}';
+  }
+}
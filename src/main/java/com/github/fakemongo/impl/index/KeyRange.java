@@ -0,0 +1,103 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.DBObject;
+import com.mongodb.QueryOperators;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.bson.types.ObjectId;
+
+/**
+ * Bounds of a query on one field ($gt, $gte, $lt, $lte, $eq, $in or plain value), used to walk only a part of an index.
+ * <p/>
+ * The bounds are inclusive and may be wider than the query : the results must still be filtered.
+ */
+final class KeyRange {
+  // null when unbounded.
+  final Object lower;
+  final Object upper;
+
+  KeyRange(Object lower, Object upper) {
+    this.lower = lower;
+    this.upper = upper;
+  }
+
+  /**
+   * @return true if only one value is in the range.
+   */
+  boolean isPoint() {
+    return lower != null && lower == upper;
+  }
+
+  /**
+   * @param queryValue value of the field in the query.
+   * @return the ranges of values matched by the query (one point by value of a $in), null if the query can't be bounded.
+   */
+  static List<KeyRange> of(Object queryValue) {
+    if (isBound(queryValue)) {
+      return Collections.singletonList(new KeyRange(queryValue, queryValue));
+    }
+    if (!(queryValue instanceof DBObject) || queryValue instanceof List) {
+      return null;
+    }
+    final DBObject expression = (DBObject) queryValue;
+    final List<KeyRange> points = points(expression.get(QueryOperators.IN));
+    if (points != null) {
+      // Narrower than any other bound.
+      return points;
+    }
+    Object lower = null;
+    Object upper = null;
+    for (String operator : expression.keySet()) {
+      if (!operator.startsWith("$")) {
+        // Embedded document equality.
+        return null;
+      }
+      final Object value = expression.get(operator);
+      if (!isBound(value)) {
+        continue;
+      }
+      // A conjunction : keeping only one of the bounds on each side is still a superset of the results.
+      if (lower == null && (QueryOperators.GT.equals(operator) || QueryOperators.GTE.equals(operator) || "$eq".equals(operator))) {
+        lower = value;
+      }
+      if (upper == null && (QueryOperators.LT.equals(operator) || QueryOperators.LTE.equals(operator) || "$eq".equals(operator))) {
+        upper = value;
+      }
+    }
+    if (lower == null && upper == null) {
+      return null;
+    }
+    return Collections.singletonList(new KeyRange(lower, upper));
+  }
+
+  private static List<KeyRange> points(Object in) {
+    if (!(in instanceof Collection)) {
+      return null;
+    }
+    final List<KeyRange> points = new ArrayList<KeyRange>(((Collection) in).size());
+    for (Object value : (Collection) in) {
+      if (!isBound(value)) {
+        return null;
+      }
+      points.add(new KeyRange(value, value));
+    }
+    return points;
+  }
+
+  /**
+   * Only scalars whose order is the same in the index and in the filters (lists and documents are not).
+   */
+  static boolean isBound(Object value) {
+    return value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Float
+        || value instanceof Short || value instanceof String || value instanceof Date || value instanceof ObjectId
+        || value instanceof Boolean;
+  }
+
+  @Override
+  public String toString() {
+    return "KeyRange{" + lower + ", " + upper + '}';
+  }
+}
@@ -0,0 +1,224 @@
+package com.github.fakemongo.impl.index;
+
+import com.github.fakemongo.impl.ExpressionParser;
+import com.github.fakemongo.impl.Filter;
+import com.github.fakemongo.impl.Util;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.QueryOperators;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The partialFilterExpression of an index : only the objects matching it are in the index, and the index can be used
+ * only by the queries implying it.
+ * <p/>
+ * As MongoDB, the expression is a conjunction ($and or fields) of equalities, $exists: true, $gt, $gte, $lt, $lte and
+ * $type. The implication is conservative : a query is accepted when each condition of the expression is satisfied by
+ * the value or the bounds the query gives to the same field.
+ */
+final class PartialFilter {
+  private static final Set<String> OPERATORS = new HashSet<String>(Arrays.asList(
+      "$eq", QueryOperators.GT, QueryOperators.GTE, QueryOperators.LT, QueryOperators.LTE, QueryOperators.EXISTS, QueryOperators.TYPE));
+
+  private final DBObject expression;
+  private final Filter filter;
+  private final List<Condition> conditions = new ArrayList<Condition>();
+  private final Comparator comparator;
+
+  PartialFilter(DBObject expression) throws MongoException {
+    final ExpressionParser expressionParser = new ExpressionParser();
+    this.expression = expression;
+    this.filter = expressionParser.buildFilter(expression);
+    this.comparator = expressionParser.buildObjectComparator(true);
+    addConditions(expressionParser, expression);
+  }
+
+  private void addConditions(ExpressionParser expressionParser, DBObject expression) {
+    for (String field : expression.keySet()) {
+      final Object value = expression.get(field);
+      if (QueryOperators.AND.equals(field) && value instanceof List) {
+        for (Object clause : (List) value) {
+          if (!ExpressionParser.isDbObject(clause)) {
+            throw unsupported(expression);
+          }
+          addConditions(expressionParser, ExpressionParser.toDbObject(clause));
+        }
+      } else if (field.startsWith("$") || !isSupported(value)) {
+        throw unsupported(expression);
+      } else {
+        conditions.add(new Condition(field, value, expressionParser.buildFilter(new BasicDBObject(field, value))));
+      }
+    }
+  }
+
+  private static boolean isSupported(Object value) {
+    if (!isOperators(value)) {
+      return true;
+    }
+    final DBObject operators = ExpressionParser.toDbObject(value);
+    for (String operator : operators.keySet()) {
+      if (!OPERATORS.contains(operator)
+          || QueryOperators.EXISTS.equals(operator) && !Boolean.TRUE.equals(operators.get(operator))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static MongoException unsupported(DBObject expression) {
+    return new MongoException(67, "unsupported expression in partial index: " + expression);
+  }
+
+  DBObject getExpression() {
+    return expression;
+  }
+
+  /**
+   * @return true if the object must be in the index.
+   */
+  boolean matches(DBObject object) {
+    return filter.apply(object);
+  }
+
+  /**
+   * @return true if all the objects matching the query match the expression.
+   */
+  boolean isImpliedBy(DBObject query) {
+    for (Condition condition : conditions) {
+      if (!condition.isImpliedBy(query.get(condition.field))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isOperators(Object value) {
+    if (!ExpressionParser.isDbObject(value) || value instanceof List) {
+      return false;
+    }
+    final Set<String> keys = ExpressionParser.toDbObject(value).keySet();
+    return !keys.isEmpty() && keys.iterator().next().startsWith("$");
+  }
+
+  /**
+   * @return true if a query with this value is an equality on a single value.
+   */
+  private static boolean isPoint(Object value) {
+    return value != null && !isOperators(value) && !(value instanceof Collection) && !(value instanceof Pattern);
+  }
+
+  private final class Condition {
+    private final String field;
+    private final Object value;
+    private final Filter filter;
+
+    Condition(String field, Object value, Filter filter) {
+      this.field = field;
+      this.value = value;
+      this.filter = filter;
+    }
+
+    boolean isImpliedBy(Object queryValue) {
+      if (queryValue == null) {
+        return false;
+      }
+      if (queryValue.equals(value) || isPoint(queryValue) && matchesPoint(queryValue)) {
+        return true;
+      }
+      if (!isOperators(queryValue)) {
+        return false;
+      }
+      final DBObject query = ExpressionParser.toDbObject(queryValue);
+      final Object in = query.get(QueryOperators.IN);
+      if (in instanceof Collection && query.keySet().size() == 1) {
+        for (Object point : (Collection) in) {
+          if (!isPoint(point) || !matchesPoint(point)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      return isOperators(value) && isRangeImplied(ExpressionParser.toDbObject(value), query);
+    }
+
+    private boolean matchesPoint(Object point) {
+      final DBObject object = new BasicDBObject();
+      Util.putValue(object, field, point);
+      return filter.apply(object);
+    }
+
+    /**
+     * @return true if each operator of the condition is satisfied by a bound of the query.
+     */
+    private boolean isRangeImplied(DBObject condition, DBObject query) {
+      for (String operator : condition.keySet()) {
+        final Object bound = condition.get(operator);
+        if (QueryOperators.EXISTS.equals(operator)) {
+          if (!hasNonNullBound(query)) {
+            return false;
+          }
+        } else if (QueryOperators.GT.equals(operator) || QueryOperators.GTE.equals(operator)) {
+          if (!isBoundedBy(query, bound, QueryOperators.GT.equals(operator), QueryOperators.GT, QueryOperators.GTE, 1)) {
+            return false;
+          }
+        } else if (QueryOperators.LT.equals(operator) || QueryOperators.LTE.equals(operator)) {
+          if (!isBoundedBy(query, bound, QueryOperators.LT.equals(operator), QueryOperators.LT, QueryOperators.LTE, -1)) {
+            return false;
+          }
+        } else {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean hasNonNullBound(DBObject query) {
+      for (String operator : Arrays.asList("$eq", QueryOperators.GT, QueryOperators.GTE, QueryOperators.LT, QueryOperators.LTE)) {
+        if (query.get(operator) != null) {
+          return true;
+        }
+      }
+      return Boolean.TRUE.equals(query.get(QueryOperators.EXISTS));
+    }
+
+    /**
+     * @param direction 1 for a lower bound, -1 for an upper bound.
+     * @return true if the query bound on this side is at least as tight as the bound of the condition.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isBoundedBy(DBObject query, Object bound, boolean strict, String strictOperator, String operator, int direction) {
+      final Object eq = query.get("$eq");
+      if (isPoint(eq) && matchesPoint(eq)) {
+        return true;
+      }
+      final Object strictQueryBound = query.get(strictOperator);
+      if (isSameBracket(strictQueryBound, bound) && comparator.compare(strictQueryBound, bound) * direction >= 0) {
+        return true;
+      }
+      final Object queryBound = query.get(operator);
+      if (isSameBracket(queryBound, bound)) {
+        final int compare = comparator.compare(queryBound, bound) * direction;
+        return compare > 0 || compare == 0 && !strict;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The range operators only compare values of the same type bracket.
+   */
+  private static boolean isSameBracket(Object queryBound, Object bound) {
+    return queryBound instanceof Number && bound instanceof Number
+        || queryBound instanceof String && bound instanceof String
+        || queryBound instanceof Date && bound instanceof Date;
+  }
+}
@@ -0,0 +1,236 @@
+package com.github.fakemongo.impl.index;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The objects of a key of an index, in the order of insertion.
+ * <p/>
+ * Up to {@link #SMALL} objects, only an array scanned on each lookup. Beyond, the array keeps a hole for each
+ * removed object (filled at the next growth) and an open addressing table gives the position of each object : a
+ * remove is O(1).
+ * <p/>
+ * Objects are found by identity (the indexes share the same objects), then by equality (a {@link GeoIndex} wraps
+ * them).
+ * <p/>
+ * NOT Thread Safe. The ThreadSafety must be done by the caller.
+ */
+public final class PostingList<E> {
+  static final int SMALL = 8;
+  private static final int FREE = -1;
+  private static final int DELETED = -2;
+  private static final Object[] EMPTY = new Object[0];
+
+  private Object[] elements;
+  // Used positions in elements, holes included.
+  private int count;
+  private int size;
+  // Positions of the elements, hashed by identity. Null while small.
+  private int[] positions;
+
+  public PostingList() {
+    this.elements = EMPTY;
+  }
+
+  public PostingList(E element) {
+    this.elements = new Object[]{element};
+    this.count = 1;
+    this.size = 1;
+  }
+
+  /**
+   * @return a view of the objects, in the order of insertion.
+   */
+  public List<E> getElements() {
+    return new AbstractList<E>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public E get(int index) {
+        if (index < 0 || index >= size) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (count == size) {
+          return (E) elements[index];
+        }
+        int remaining = index;
+        for (int i = 0; ; i++) {
+          if (elements[i] != null && remaining-- == 0) {
+            return (E) elements[i];
+          }
+        }
+      }
+
+      @Override
+      public Iterator<E> iterator() {
+        return new Iterator<E>() {
+          private int position = nextPosition(0);
+
+          @Override
+          public boolean hasNext() {
+            return position < count;
+          }
+
+          @Override
+          @SuppressWarnings("unchecked")
+          public E next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            final E element = (E) elements[position];
+            position = nextPosition(position + 1);
+            return element;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(E element) {
+    return element != null && indexOf(element) >= 0;
+  }
+
+  public void add(E element) {
+    if (element == null) {
+      // A null is a hole.
+      throw new IllegalArgumentException("element can't be null");
+    }
+    if (count == elements.length) {
+      grow();
+    }
+    elements[count] = element;
+    if (positions != null) {
+      insertPosition(count);
+    }
+    count++;
+    size++;
+  }
+
+  /**
+   * Remove one occurrence of the object.
+   */
+  public void remove(E element) {
+    if (element == null) {
+      return;
+    }
+    final int position = indexOf(element);
+    if (position < 0) {
+      return;
+    }
+    if (positions == null) {
+      System.arraycopy(elements, position + 1, elements, position, count - position - 1);
+      elements[--count] = null;
+    } else {
+      positions[slotOf(position)] = DELETED;
+      elements[position] = null;
+    }
+    size--;
+  }
+
+  private int nextPosition(int from) {
+    int position = from;
+    while (position < count && elements[position] == null) {
+      position++;
+    }
+    return position;
+  }
+
+  private int indexOf(E element) {
+    if (positions == null) {
+      for (int i = 0; i < count; i++) {
+        if (elements[i] == element) {
+          return i;
+        }
+      }
+    } else {
+      final int mask = positions.length - 1;
+      int slot = hash(element) & mask;
+      while (positions[slot] != FREE) {
+        final int position = positions[slot];
+        if (position >= 0 && elements[position] == element) {
+          return position;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      if (element.equals(elements[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int slotOf(int position) {
+    final int mask = positions.length - 1;
+    int slot = hash(elements[position]) & mask;
+    while (positions[slot] != position) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void insertPosition(int position) {
+    final int mask = positions.length - 1;
+    int slot = hash(elements[position]) & mask;
+    while (positions[slot] >= 0) {
+      slot = (slot + 1) & mask;
+    }
+    positions[slot] = position;
+  }
+
+  /**
+   * Fill the holes, then grow the array if still at least half full.
+   */
+  private void grow() {
+    int capacity = elements.length;
+    if (size * 2 >= capacity) {
+      capacity = capacity < SMALL ? Math.max(1, capacity * 2) : capacity + (capacity >> 1);
+    }
+    final Object[] old = elements;
+    elements = new Object[capacity];
+    int position = 0;
+    for (int i = 0; i < count; i++) {
+      if (old[i] != null) {
+        elements[position++] = old[i];
+      }
+    }
+    count = position;
+    if (capacity > SMALL) {
+      // Never more than 3/4 full, the holes included.
+      positions = new int[Integer.highestOneBit(capacity * 4 / 3) << 1];
+      Arrays.fill(positions, FREE);
+      for (int i = 0; i < count; i++) {
+        insertPosition(i);
+      }
+    } else {
+      positions = null;
+    }
+  }
+
+  private static int hash(Object element) {
+    final int h = System.identityHashCode(element) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public String toString() {
+    return getElements().toString();
+  }
+}
@@ -3,12 +3,14 @@ package com.mongodb;
 import com.github.fakemongo.Fongo;
 import com.github.fakemongo.impl.Aggregator;
 import com.github.fakemongo.impl.ExpressionParser;
+import com.github.fakemongo.impl.Filter;
 import com.github.fakemongo.impl.geo.GeoUtil;
 import com.mongodb.connection.ServerVersion;
 import com.mongodb.util.JSON;
 import com.vividsolutions.jts.geom.Coordinate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -71,9 +73,17 @@ public class FongoDB extends DB {
     if (this.collMap.containsKey(collectionName)) {
       this.notOkErrorResult("collection already exists").throwOnError();
     }
+    final boolean capped = options != null && Boolean.TRUE.equals(options.get("capped"));
+    if (capped && options.get("size") == null) {
+      this.notOkErrorResult(72, "the 'size' field is required when 'capped' is true").throwOnError();
+    }
 
-    final DBCollection collection = getCollection(collectionName);
-    this.addCollection((FongoDBCollection) collection);
+    final FongoDBCollection collection = getCollection(collectionName);
+    if (capped) {
+      final Number max = (Number) options.get("max");
+      collection.capped(((Number) options.get("size")).longValue(), max == null ? 0 : max.longValue());
+    }
+    this.addCollection(collection);
     return collection;
   }
 
@@ -221,7 +231,11 @@ public class FongoDB extends DB {
       return okResult();
     } else if (cmd.containsField("create")) {
       String collectionName = (String) cmd.get("create");
-      doGetCollection(collectionName);
+      if (Boolean.TRUE.equals(cmd.get("capped"))) {
+        createCollection(collectionName, cmd);
+      } else {
+        doGetCollection(collectionName);
+      }
       return okResult();
     } else if (cmd.containsField("count")) {
       String collectionName = (String) cmd.get("count");
@@ -263,6 +277,8 @@ public class FongoDB extends DB {
       return okResult();
     } else if (cmd.containsField("validate")) {
       return okResult();
+    } else if (cmd.containsField("currentOp")) {
+      return runCurrentOp(cmd);
     } else if (cmd.containsField("buildInfo") || cmd.containsField("buildinfo")) {
       CommandResult okResult = okResult();
       List<Integer> versionList = fongo.getServerVersion().getVersionList();
@@ -489,6 +505,19 @@ public class FongoDB extends DB {
     return new CommandResult(result, fongo.getServerAddress());
   }
 
+  /**
+   * Remove the objects expired at this time from the TTL indexes of the collections.
+   *
+   * @return the number of removed objects.
+   */
+  public int removeExpired(Date now) {
+    int removed = 0;
+    for (FongoDBCollection collection : collMap.values()) {
+      removed += collection.removeExpired(now);
+    }
+    return removed;
+  }
+
   @Override
   public String toString() {
     return "FongoDB." + this.getName();
@@ -514,6 +543,28 @@ public class FongoDB extends DB {
     }
   }
 
+  /**
+   * The operations in progress matching the other fields of the command ($all and $ownOps are ignored).
+   */
+  private CommandResult runCurrentOp(DBObject cmd) {
+    final BasicDBObject query = new BasicDBObject();
+    for (String field : cmd.keySet()) {
+      if (!"currentOp".equals(field) && !"$all".equals(field) && !"$ownOps".equals(field)) {
+        query.put(field, cmd.get(field));
+      }
+    }
+    final Filter filter = new ExpressionParser().buildFilter(query);
+    final BasicDBList inprog = new BasicDBList();
+    for (DBObject operation : fongo.currentOp()) {
+      if (filter.apply(operation)) {
+        inprog.add(operation);
+      }
+    }
+    CommandResult okResult = okResult();
+    okResult.put("inprog", inprog);
+    return okResult;
+  }
+
   private CommandResult runFindAndModify(DBObject cmd, String key) {
     if (!cmd.containsField("remove") && !cmd.containsField("update")) {
       return notOkErrorResult(null, "need remove or update");
@@ -4,7 +4,9 @@ import com.github.fakemongo.FongoException;
 import com.github.fakemongo.impl.*;
 import com.github.fakemongo.impl.geo.GeoUtil;
 import com.github.fakemongo.impl.index.GeoIndex;
+import com.github.fakemongo.impl.index.IdIndex;
 import com.github.fakemongo.impl.index.IndexAbstract;
+import com.github.fakemongo.impl.index.IndexBuild;
 import com.github.fakemongo.impl.index.IndexFactory;
 import com.github.fakemongo.impl.text.TextSearch;
 import com.vividsolutions.jts.geom.Coordinate;
@@ -24,7 +26,13 @@ import org.slf4j.LoggerFactory;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
 
 import static com.mongodb.assertions.Assertions.isTrueArgument;
 import static java.util.Collections.emptyList;
@@ -38,8 +46,6 @@ import static java.util.Collections.emptyList;
 public class FongoDBCollection extends DBCollection {
   private final static Logger LOG = LoggerFactory.getLogger(FongoDBCollection.class);
 
-  public static final String FONGO_SPECIAL_ORDER_BY = "$$$$$FONGO_ORDER_BY$$$$$";
-
   private static final String ID_NAME_INDEX = "_id_";
   private static final String SYSTEM_INDEXES_COLL_NAME = "system.indexes";
   private final FongoDB fongoDb;
@@ -47,12 +53,28 @@ public class FongoDBCollection extends DBCollection {
   private final UpdateEngine updateEngine;
   private final boolean nonIdCollection;
   private final ExpressionParser.ObjectComparator objectComparator;
-  // Fields/Index
-  private final List<IndexAbstract> indexes = new ArrayList<IndexAbstract>();
+  // Fields/Index (copy on write : the query planner reads it without lock).
+  private final List<IndexAbstract> indexes = new CopyOnWriteArrayList<IndexAbstract>();
+  // Background builds of indexes in progress, guarded by the write lock.
+  private final List<IndexBuild> indexBuilds = new ArrayList<IndexBuild>();
   private final IndexAbstract _idIndex;
   private final boolean validateOnInsert;
+  // Readers (find, count, distinct...) share the lock, writers (insert, update, remove, index management) are exclusive.
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  // Immutable version of the documents in natural order, dropped by each write and rebuilt by the next reader.
+  private volatile List<DBObject> snapshot;
+  // The documents in insertion order for a capped collection, null for a regular collection.
+  private volatile CappedBuffer capped;
+  // Indexes usable by each shape of query, computed with the indexes of a generation.
+  private final ConcurrentMap<String, QueryPlan> planCache = new ConcurrentHashMap<String, QueryPlan>();
+  private volatile int planGeneration = 0;
+  private final AtomicLong planCacheHits = new AtomicLong();
+  private final AtomicLong planCacheMisses = new AtomicLong();
 
   private final String SYSTEM_ELEMENT = "system.";
+  // Number of expired objects removed under one acquisition of the lock.
+  private static final int EXPIRY_BATCH_SIZE = 1000;
+  private static final int PLAN_CACHE_SIZE = 1000;
 
   public FongoDBCollection(FongoDB db, String name) {
     this(db, name, false, true);
@@ -73,7 +95,7 @@ public class FongoDBCollection extends DBCollection {
     }
   }
 
-  private synchronized WriteResult updateResult(int updateCount, boolean updatedExisting, final Object upsertedId) {
+  private WriteResult updateResult(int updateCount, boolean updatedExisting, final Object upsertedId) {
     return new WriteResult(updateCount, updatedExisting, upsertedId);
   }
 
@@ -90,7 +112,16 @@ public class FongoDBCollection extends DBCollection {
   }
 
   @Override
-  public synchronized WriteResult insert(final List<? extends DBObject> documents, final InsertOptions insertOptions) {
+  public WriteResult insert(final List<? extends DBObject> documents, final InsertOptions insertOptions) {
+    lock.writeLock().lock();
+    try {
+      return _insert(documents, insertOptions);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private WriteResult _insert(final List<? extends DBObject> documents, final InsertOptions insertOptions) {
     WriteConcern writeConcern = insertOptions.getWriteConcern() != null ? insertOptions.getWriteConcern() : getWriteConcern();
     for (final DBObject obj : documents) {
       DBObject cloned = filterLists(Util.cloneIdFirst(encodeDecode(obj, insertOptions.getDbEncoder())));
@@ -142,7 +173,7 @@ public class FongoDBCollection extends DBCollection {
       throw new FongoException("Whoa, hold up there.  Fongo's designed for lightweight testing.  100,000 items per collection max");
     }
 
-    addToIndexes(obj, null, concern);
+    addToIndexes(obj, null, concern, false);
   }
 
   public DBObject filterLists(DBObject dbo) {
@@ -219,15 +250,29 @@ public class FongoDBCollection extends DBCollection {
   }
 
 
-  protected synchronized void fInsert(DBObject obj, WriteConcern concern) {
-    putIdIfNotPresent(obj);
-    putSizeCheck(obj, concern);
+  protected void fInsert(DBObject obj, WriteConcern concern) {
+    lock.writeLock().lock();
+    try {
+      putIdIfNotPresent(obj);
+      putSizeCheck(obj, concern);
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
 
   @Override
-  public synchronized WriteResult update(DBObject q, DBObject o, boolean upsert, boolean multi, WriteConcern concern,
-                                         DBEncoder encoder) throws MongoException {
+  public WriteResult update(DBObject q, DBObject o, boolean upsert, boolean multi, WriteConcern concern,
+                            DBEncoder encoder) throws MongoException {
+    lock.writeLock().lock();
+    try {
+      return _update(q, o, upsert, multi, concern);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private WriteResult _update(DBObject q, DBObject o, boolean upsert, boolean multi, WriteConcern concern) {
 
     q = filterLists(q);
     o = filterLists(o);
@@ -278,7 +323,7 @@ public class FongoDBCollection extends DBCollection {
       }
       @SuppressWarnings("unchecked") Iterator<DBObject> oldObjects = _idIndex.retrieveObjects(q).iterator();
       if (oldObjects.hasNext()) {
-        addToIndexes(Util.clone(o), oldObjects.hasNext() ? oldObjects.next() : null, concern);
+        addToIndexes(Util.clone(o), oldObjects.hasNext() ? oldObjects.next() : null, concern, true);
         updatedDocuments++;
         updatedExisting = true;
       }
@@ -289,7 +334,7 @@ public class FongoDBCollection extends DBCollection {
           DBObject newObject = Util.clone(obj);
           updateEngine.doUpdate(newObject, o, q, false);
           // Check for uniqueness (throw MongoException if error)
-          addToIndexes(newObject, obj, concern);
+          addToIndexes(newObject, obj, concern, isNotUpdateCommand(o));
 
           updatedDocuments++;
           updatedExisting = true;
@@ -452,7 +497,19 @@ public class FongoDBCollection extends DBCollection {
   }
 
   @Override
-  public synchronized WriteResult remove(DBObject o, WriteConcern concern, DBEncoder encoder) throws MongoException {
+  public WriteResult remove(DBObject o, WriteConcern concern, DBEncoder encoder) throws MongoException {
+    lock.writeLock().lock();
+    try {
+      return _remove(o);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private WriteResult _remove(DBObject o) {
+    if (capped != null) {
+      throw fongoDb.writeConcernException(20, "cannot remove from a capped collection: " + nsName());
+    }
     o = filterLists(o);
     if (LOG.isDebugEnabled()) {
       LOG.debug("remove: " + o);
@@ -468,16 +525,121 @@ public class FongoDBCollection extends DBCollection {
       }
     }
     // Real remove.
+    final Oplog oplog = oplog();
     for (DBObject object : ids) {
       LOG.debug("remove object : {}", object);
       removeFromIndexes(object);
+      if (oplog != null) {
+        oplog.delete(getDB().getName(), getName(), object);
+      }
       updatedDocuments++;
     }
     return updateResult(updatedDocuments, true, null);
   }
 
   @Override
-  public synchronized void createIndex(final DBObject keys, final DBObject options) {
+  public void createIndex(final DBObject keys, final DBObject options) {
+    if (isOptionSet(options, "background")) {
+      createIndexInBackground(keys, options);
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      _createIndex(keys, options);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void _createIndex(final DBObject keys, final DBObject options) {
+    final BasicDBObject rec = indexRecord(keys, options);
+    if (rec == null) {
+      return;
+    }
+
+    try {
+      IndexAbstract index = newIndex(keys, rec);
+      @SuppressWarnings("unchecked") List<List<Object>> notUnique = index.addAll(_idIndex.values());
+      if (!notUnique.isEmpty()) {
+        duplicateKeyInIndex(rec, notUnique);
+        return;
+      }
+      indexes.add(index);
+      invalidatePlanCache();
+    } catch (MongoException me) {
+      fongoDb.errorResult(me.getCode(), me.getMessage()).throwOnError();
+    }
+
+    // Add index if all fine.
+    fongoDb.getCollection(SYSTEM_INDEXES_COLL_NAME).insert(rec);
+  }
+
+  /**
+   * Build the index from a snapshot of the collection without holding the lock : the writes done meanwhile are logged
+   * by the build and applied to the index before it is published.
+   */
+  private void createIndexInBackground(final DBObject keys, final DBObject options) {
+    final BasicDBObject rec;
+    final IndexBuild build;
+    lock.writeLock().lock();
+    try {
+      rec = indexRecord(keys, options);
+      if (rec == null) {
+        return;
+      }
+      IndexAbstract index;
+      try {
+        index = newIndex(keys, rec);
+      } catch (MongoException me) {
+        throw fongoDb.errorResult(me.getCode(), me.getMessage()).getException();
+      }
+      build = new IndexBuild(fongoDb.fongo.nextOperationId(), nsName(), index, rec, snapshot());
+      indexBuilds.add(build);
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    fongoDb.fongo.indexBuildStarted(build);
+    try {
+      List<List<Object>> notUnique = build.build();
+      lock.writeLock().lock();
+      try {
+        indexBuilds.remove(build);
+        if (build.isAborted()) {
+          fongoDb.notOkErrorResult(276, "Index build aborted: " + rec.get("name") + " on " + nsName() + " (collection dropped)").throwOnError();
+        }
+        if (notUnique.isEmpty()) {
+          notUnique = build.replay();
+        }
+        if (!notUnique.isEmpty()) {
+          duplicateKeyInIndex(rec, notUnique);
+          return;
+        }
+        indexes.add(build.getIndex());
+        invalidatePlanCache();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } catch (MongoException me) {
+      fongoDb.errorResult(me.getCode(), me.getMessage()).throwOnError();
+    } finally {
+      lock.writeLock().lock();
+      try {
+        // The build may have failed before being published.
+        indexBuilds.remove(build);
+      } finally {
+        lock.writeLock().unlock();
+      }
+      fongoDb.fongo.indexBuildFinished(build);
+    }
+
+    fongoDb.getCollection(SYSTEM_INDEXES_COLL_NAME).insert(rec);
+  }
+
+  /**
+   * @return the record of the index in system.indexes, null if the index already exists.
+   */
+  private BasicDBObject indexRecord(final DBObject keys, final DBObject options) {
     DBCollection indexColl = fongoDb.getCollection(SYSTEM_INDEXES_COLL_NAME);
     BasicDBObject rec = new BasicDBObject();
     rec.append("v", 1);
@@ -496,38 +658,55 @@ public class FongoDBCollection extends DBCollection {
           fongoDb.notOkErrorResult(85, String.format("Index with name: %s already exists with different options", nsName())).throwOnError();
         }
       }
-      return;
+      return null;
+    }
+    // Nor being built in background : both builds would publish it.
+    for (IndexBuild build : indexBuilds) {
+      if (build.getIndex().getName().equals(rec.get("name"))
+          || createIndexNameFromKeys(build.getIndex().getKeys()).equals(createIndexNameFromKeys(keys))) {
+        fongoDb.notOkErrorResult(12586, "cannot perform operation: a background operation is currently running for collection " + nsName()).throwOnError();
+      }
     }
 
     // Unique index must not be in previous find.
-    boolean unique = options != null && options.get("unique") != null && (Boolean.TRUE.equals(options.get("unique")) || "1".equals(options.get("unique")) || Integer.valueOf(1).equals(options.get("unique")));
+    boolean unique = isOptionSet(options, "unique");
     if (unique) {
       rec.append("unique", unique);
     }
-    boolean sparse = options != null && options.get("sparse") != null && (Boolean.TRUE.equals(options.get("sparse")) || "1".equals(options.get("sparse")) || Integer.valueOf(1).equals(options.get("sparse")));
+    boolean sparse = isOptionSet(options, "sparse");
     if (sparse) {
       rec.append("sparse", sparse);
     }
 
     rec.putAll(options);
+    return rec;
+  }
 
-    try {
-      IndexAbstract index = IndexFactory.create((String) rec.get("name"), keys, unique, sparse);
-      @SuppressWarnings("unchecked") List<List<Object>> notUnique = index.addAll(_idIndex.values());
-      if (!notUnique.isEmpty()) {
-        // Duplicate key.
-        if (enforceDuplicates(getWriteConcern())) {
-          fongoDb.notOkErrorResult(11000, "E11000 duplicate key error index: " + getFullName() + ".$" + rec.get("name") + "  dup key: { : " + notUnique + " }").throwOnError();
-        }
-        return;
-      }
-      indexes.add(index);
-    } catch (MongoException me) {
-      fongoDb.errorResult(me.getCode(), me.getMessage()).throwOnError();
+  private IndexAbstract newIndex(final DBObject keys, final BasicDBObject rec) {
+    final Object partialFilterExpression = rec.get("partialFilterExpression");
+    if (partialFilterExpression != null && !ExpressionParser.isDbObject(partialFilterExpression)) {
+      throw new MongoException(67, "partialFilterExpression must be an object");
+    }
+    if (rec.get("expireAfterSeconds") != null && capped != null) {
+      throw new MongoException(67, "Cannot create TTL index on a capped collection: " + nsName());
+    }
+    final IndexAbstract index = IndexFactory.create((String) rec.get("name"), keys, isOptionSet(rec, "unique"), isOptionSet(rec, "sparse"),
+        ExpressionParser.toDbObject(partialFilterExpression), rec.get("expireAfterSeconds"));
+    if (index.getExpireAfterSeconds() != null) {
+      fongoDb.fongo.ttlIndexCreated();
     }
+    return index;
+  }
 
-    // Add index if all fine.
-    indexColl.insert(rec);
+  private static boolean isOptionSet(final DBObject options, final String option) {
+    final Object value = options == null ? null : options.get(option);
+    return value != null && (Boolean.TRUE.equals(value) || "1".equals(value) || Integer.valueOf(1).equals(value));
+  }
+
+  private void duplicateKeyInIndex(final DBObject rec, final List<List<Object>> notUnique) {
+    if (enforceDuplicates(getWriteConcern())) {
+      fongoDb.notOkErrorResult(11000, "E11000 duplicate key error index: " + getFullName() + ".$" + rec.get("name") + "  dup key: { : " + notUnique + " }").throwOnError();
+    }
   }
 
   public String createIndexNameFromKeys(DBObject keys) {
@@ -591,8 +770,29 @@ public class FongoDBCollection extends DBCollection {
    * <p/>
    * note: decoder, readPref, options are ignored
    */
-  synchronized List<DBObject> __find(final DBObject pRef, DBObject fields, int numToSkip, int batchSize, int limit,
-                                     int options, ReadPreference readPref, DBDecoder decoder) throws MongoException {
+  List<DBObject> __find(final DBObject pRef, DBObject fields, int numToSkip, int batchSize, int limit,
+                        int options, ReadPreference readPref, DBDecoder decoder) throws MongoException {
+    final List<DBObject> results = new ArrayList<DBObject>();
+    addAll(results, _find(pRef, fields, numToSkip, Integer.MAX_VALUE, limit));
+    LOG.debug("found results {}", results);
+    return results;
+  }
+
+  private static <T> void addAll(Collection<T> collection, Iterator<T> iterator) {
+    while (iterator.hasNext()) {
+      collection.add(iterator.next());
+    }
+  }
+
+  /**
+   * Lazy version of {@link #__find(DBObject, DBObject, int, int, int, int, ReadPreference, DBDecoder)} : the documents
+   * are filtered, cloned and projected by batch of <code>batchSize</code> while the iterator is consumed.
+   */
+  Iterator<DBObject> __findIterator(final DBObject pRef, DBObject fields, int numToSkip, int batchSize, int limit) {
+    return _find(pRef, fields, numToSkip, batchSize, limit);
+  }
+
+  private Iterator<DBObject> _find(final DBObject pRef, DBObject fields, int numToSkip, int batchSize, int limit) {
     DBObject ref = filterLists(pRef == null ? new BasicDBObject() : pRef);
     long maxScan = Long.MAX_VALUE;
     if (LOG.isDebugEnabled()) {
@@ -612,15 +812,21 @@ public class FongoDBCollection extends DBCollection {
     }
 
     Filter filter = buildFilter(ref);
-    int foundCount = 0;
     int upperLimit = Integer.MAX_VALUE;
     if (limit > 0) {
       upperLimit = limit;
     }
 
-    Collection<DBObject> objectsFromIndex = filterByIndexes(ref);
-    List<DBObject> results = new ArrayList<DBObject>();
     List objects = idsIn(ref);
+    if (objects.isEmpty() && orderby != null && !orderby.keySet().isEmpty() && maxScan == Long.MAX_VALUE) {
+      // An index in the order of the sort : no sort, and stop as soon as enough objects are found.
+      final int k = limit > 0 ? (int) Math.min((long) numToSkip + upperLimit, Integer.MAX_VALUE) : 0;
+      final List<DBObject> ordered = orderedByIndex(orderby, ref, filter, k);
+      if (ordered != null) {
+        return new FindIterator(ordered.iterator(), ExpressionParser.AllFilter, fields, numToSkip, batchSize, upperLimit, maxScan);
+      }
+    }
+    Collection<DBObject> objectsFromIndex = snapshotByIndexes(ref);
     if (!objects.isEmpty()) {
 //      if (!(ref.get(ID_FIELD_NAME) instanceof DBObject)) {
       // Special case : find({id:<val}) doesn't handle skip...
@@ -634,32 +840,93 @@ public class FongoDBCollection extends DBCollection {
         objectsFromIndex = sortObjects(new BasicDBObject(ID_FIELD_NAME, 1), objectsFromIndex);
       }
     }
-    int seen = 0;
+    final Comparator<DBObject> comparator = naturalOrNear(orderby, ref);
+    if (comparator != null && limit > 0 && maxScan == Long.MAX_VALUE) {
+      // Only the first skip + limit objects are needed : no need to sort everything.
+      final int k = (int) Math.min((long) numToSkip + upperLimit, Integer.MAX_VALUE);
+      final List<DBObject> topObjects = topObjects(comparator, objectsFromIndex, filter, k);
+      return new FindIterator(topObjects.iterator(), ExpressionParser.AllFilter, fields, numToSkip, batchSize, upperLimit, maxScan);
+    }
+    if (comparator != null && orderby == null) {
+      // $near : only the objects near enough are sorted by distance.
+      final List<DBObject> nearObjects = filterObjects(objectsFromIndex, filter);
+      Collections.sort(nearObjects, comparator);
+      return new FindIterator(nearObjects.iterator(), ExpressionParser.AllFilter, fields, numToSkip, batchSize, upperLimit, maxScan);
+    }
     Iterable<DBObject> objectsToSearch = sortObjects(orderby, objectsFromIndex);
-    for (Iterator<DBObject> iter = objectsToSearch.iterator();
-         iter.hasNext() && foundCount < upperLimit && maxScan-- > 0; ) {
-      DBObject dbo = iter.next();
-      if (filter.apply(dbo)) {
-        if (seen++ >= numToSkip) {
-          foundCount++;
-          DBObject clonedDbo = Util.clone(dbo);
-          if (nonIdCollection) {
-            clonedDbo.removeField(ID_FIELD_NAME);
-          }
-          clonedDbo.removeField(FONGO_SPECIAL_ORDER_BY);
-//          handleDBRef(clonedDbo);
-          results.add(clonedDbo);
-        }
+    return new FindIterator(objectsToSearch.iterator(), filter, fields, numToSkip, batchSize, upperLimit, maxScan);
+  }
+
+  /**
+   * Iterate over the sorted candidates of a query, and build the results batch after batch.
+   */
+  private class FindIterator implements Iterator<DBObject> {
+    private static final int DEFAULT_BATCH_SIZE = 101;
+
+    private final Iterator<DBObject> candidates;
+    private final Filter filter;
+    private final DBObject fields;
+    private final int numToSkip;
+    private final int batchSize;
+    private final int upperLimit;
+    private long maxScan;
+    private int seen = 0;
+    private int foundCount = 0;
+    private Iterator<DBObject> batch = Collections.<DBObject>emptyList().iterator();
+
+    FindIterator(Iterator<DBObject> candidates, Filter filter, DBObject fields, int numToSkip, int batchSize, int upperLimit, long maxScan) {
+      this.candidates = candidates;
+      this.filter = filter;
+      this.fields = fields;
+      this.numToSkip = numToSkip;
+      this.batchSize = batchSize == 0 ? DEFAULT_BATCH_SIZE : Math.abs(batchSize);
+      this.upperLimit = upperLimit;
+      this.maxScan = maxScan;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!batch.hasNext() && candidates.hasNext() && foundCount < upperLimit && maxScan > 0) {
+        batch = nextBatch().iterator();
       }
+      return batch.hasNext();
     }
 
-    if (!Util.isDBObjectEmpty(fields)) {
-      results = applyProjections(results, fields);
+    @Override
+    public DBObject next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return batch.next();
     }
 
-    LOG.debug("found results {}", results);
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
 
-    return replaceWithObjectClass(results);
+    private List<DBObject> nextBatch() {
+      List<DBObject> results = new ArrayList<DBObject>();
+      while (results.size() < batchSize && candidates.hasNext() && foundCount < upperLimit && maxScan-- > 0) {
+        DBObject dbo = candidates.next();
+        if (filter.apply(dbo)) {
+          if (seen++ >= numToSkip) {
+            foundCount++;
+            DBObject clonedDbo = Util.clone(dbo);
+            if (nonIdCollection) {
+              clonedDbo.removeField(ID_FIELD_NAME);
+            }
+//          handleDBRef(clonedDbo);
+            results.add(clonedDbo);
+          }
+        }
+      }
+
+      if (!Util.isDBObjectEmpty(fields)) {
+        results = applyProjections(results, fields);
+      }
+      return replaceWithObjectClass(results);
+    }
   }
 
   /**
@@ -670,6 +937,7 @@ public class FongoDBCollection extends DBCollection {
   private Collection<DBObject> filterByIndexes(DBObject ref) {
     Collection<DBObject> dbObjectIterable = null;
     if (ref != null) {
+      ref = orOfEqualitiesAsIn(ref);
       IndexAbstract matchingIndex = searchIndex(ref);
       if (matchingIndex != null) {
         //noinspection unchecked
@@ -686,6 +954,64 @@ public class FongoDBCollection extends DBCollection {
     return dbObjectIterable;
   }
 
+  /**
+   * Same as {@link #filterByIndexes(DBObject)}, but can be called without holding the lock : the returned collection
+   * is never modified by the writers.
+   * A query without usable index reads the current snapshot and doesn't wait for the writers.
+   */
+  private Collection<DBObject> snapshotByIndexes(DBObject ref) {
+    if (ref == null || searchIndex(orOfEqualitiesAsIn(ref)) == null) {
+      return snapshot();
+    }
+    lock.readLock().lock();
+    try {
+      return new ArrayList<DBObject>(filterByIndexes(ref));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param limit number of objects needed, 0 for all.
+   * @return the objects matching the query in the order of the sort, found by walking an index, or null if no index
+   * gives this order.
+   */
+  private List<DBObject> orderedByIndex(DBObject orderby, DBObject ref, Filter filter, int limit) {
+    lock.readLock().lock();
+    try {
+      final DBObject indexQuery = orOfEqualitiesAsIn(ref);
+      final IndexAbstract index = searchSortIndex(orderby, indexQuery);
+      if (index == null) {
+        return null;
+      }
+      //noinspection unchecked
+      return index.retrieveOrderedObjects(indexQuery, filter, index.sortDirection(orderby) < 0, limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return all the documents (in natural order) as of the last write.
+   */
+  private List<DBObject> snapshot() {
+    List<DBObject> current = snapshot;
+    if (current == null) {
+      lock.readLock().lock();
+      try {
+        current = snapshot;
+        if (current == null) {
+          //noinspection unchecked
+          current = Collections.unmodifiableList(_idIndex.values());
+          snapshot = current;
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+    return current;
+  }
+
   private List<DBObject> applyProjections(List<DBObject> results, DBObject projection) {
     final List<DBObject> ret = new ArrayList<DBObject>(results.size());
 
@@ -1016,6 +1342,11 @@ public class FongoDBCollection extends DBCollection {
     return true;
   }
 
+  /**
+   * Sort the objects.
+   *
+   * @param orderby sort specification, <code>null</code> keeps the natural order (no copy).
+   */
   public Collection<DBObject> sortObjects(final DBObject orderby, final Collection<DBObject> objects) {
     Collection<DBObject> objectsToSearch = objects;
     if (orderby != null) {
@@ -1023,28 +1354,9 @@ public class FongoDBCollection extends DBCollection {
       if (!orderbyKeySet.isEmpty()) {
         DBObject[] objectsToSort = objects.toArray(new DBObject[objects.size()]);
 
-        Arrays.sort(objectsToSort, new Comparator<DBObject>() {
-          @Override
-          public int compare(DBObject o1, DBObject o2) {
-            for (String sortKey : orderbyKeySet) {
-              final List<String> path = Util.split(sortKey);
-              int sortDirection = (Integer) orderby.get(sortKey);
-
-              List<Object> o1list = expressionParser.getEmbeddedValues(path, o1);
-              List<Object> o2list = expressionParser.getEmbeddedValues(path, o2);
-
-              int compareValue = expressionParser.compareLists(o1list, o2list) * sortDirection;
-              if (compareValue != 0) {
-                return compareValue;
-              }
-            }
-            return 0;
-          }
-        });
+        Arrays.sort(objectsToSort, sortComparator(orderby));
         objectsToSearch = Arrays.asList(objectsToSort);
       }
-    } else {
-      objectsToSearch = sortObjects(new BasicDBObject(FONGO_SPECIAL_ORDER_BY, 1), objects);
     }
     if (LOG.isDebugEnabled()) {
       LOG.debug("sorted objectsToSearch " + objectsToSearch);
@@ -1052,10 +1364,41 @@ public class FongoDBCollection extends DBCollection {
     return objectsToSearch;
   }
 
+  /**
+   * Keep only the <code>k</code> first objects (in <code>orderby</code> order) accepted by the filter.
+   */
+  private List<DBObject> topObjects(final Comparator<DBObject> comparator, final Iterable<DBObject> objects, final Filter filter, final int k) {
+    final TopK<DBObject> topK = new TopK<DBObject>(comparator, k);
+    for (DBObject object : objects) {
+      if (filter.apply(object)) {
+        topK.offer(object);
+      }
+    }
+    return topK.sorted();
+  }
+
+  private static List<DBObject> filterObjects(final Iterable<DBObject> objects, final Filter filter) {
+    final List<DBObject> filtered = new ArrayList<DBObject>();
+    for (DBObject object : objects) {
+      if (filter.apply(object)) {
+        filtered.add(object);
+      }
+    }
+    return filtered;
+  }
+
+  private Comparator<DBObject> sortComparator(final DBObject orderby) {
+    return expressionParser.sortComparator(orderby);
+  }
+
   // @Override
-  public synchronized long getCount(final DBObject pQuery, final DBObject projection, final long limit, final long skip,
-                                    final ReadPreference readPreference, final long maxTime, final TimeUnit maxTimeUnit,
-                                    final BsonValue hint) {
+  public long getCount(final DBObject pQuery, final DBObject projection, final long limit, final long skip,
+                       final ReadPreference readPreference, final long maxTime, final TimeUnit maxTimeUnit,
+                       final BsonValue hint) {
+    return _getCount(pQuery, limit, skip);
+  }
+
+  private long _getCount(final DBObject pQuery, final long limit, final long skip) {
     final DBObject query = filterLists(pQuery);
     Filter filter = query == null ? ExpressionParser.AllFilter : buildFilter(query);
     long count = 0;
@@ -1064,7 +1407,7 @@ public class FongoDBCollection extends DBCollection {
       upperLimit = limit;
     }
     int seen = 0;
-    for (Iterator<DBObject> iter = filterByIndexes(query).iterator(); iter.hasNext() && count < upperLimit; ) {
+    for (Iterator<DBObject> iter = snapshotByIndexes(query).iterator(); iter.hasNext() && count < upperLimit; ) {
       DBObject value = iter.next();
       if (filter.apply(value)) {
         if (seen++ >= skip) {
@@ -1076,19 +1419,35 @@ public class FongoDBCollection extends DBCollection {
   }
 
   @Override
-  public synchronized long getCount(DBObject query, DBObject fields, ReadPreference readPrefs) {
+  public long getCount(DBObject query, DBObject fields, ReadPreference readPrefs) {
     //as we're in memory we don't need to worry about readPrefs
     return getCount(query, fields, 0, 0);
   }
 
   @Override
-  public synchronized DBObject findAndModify(DBObject query, DBObject fields, DBObject sort, boolean remove, DBObject update, boolean returnNew, boolean upsert) {
+  public DBObject findAndModify(DBObject query, DBObject fields, DBObject sort, boolean remove, DBObject update, boolean returnNew, boolean upsert) {
+    lock.writeLock().lock();
+    try {
+      return _findAndModify(query, fields, sort, remove, update, returnNew, upsert);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private DBObject _findAndModify(DBObject query, DBObject fields, DBObject sort, boolean remove, DBObject update, boolean returnNew, boolean upsert) {
     LOG.debug("findAndModify({}, {}, {}, {}, {}, {}, {}", query, fields, sort, remove, update, returnNew, upsert);
     query = filterLists(query);
     update = filterLists(update);
     Filter filter = buildFilter(query);
 
-    Iterable<DBObject> objectsToSearch = sortObjects(sort, filterByIndexes(query));
+    final Comparator<DBObject> comparator = naturalOrNear(sort, query);
+    final Iterable<DBObject> objectsToSearch;
+    if (comparator != null) {
+      // Only the first object is modified.
+      objectsToSearch = topObjects(comparator, filterByIndexes(query), filter, 1);
+    } else {
+      objectsToSearch = filterByIndexes(query);
+    }
     DBObject beforeObject = null;
     DBObject afterObject = null;
     for (DBObject dbo : objectsToSearch) {
@@ -1097,7 +1456,7 @@ public class FongoDBCollection extends DBCollection {
         if (!remove) {
           afterObject = Util.clone(beforeObject);
           updateEngine.doUpdate(afterObject, update, query, false);
-          addToIndexes(afterObject, beforeObject, getWriteConcern());
+          addToIndexes(afterObject, beforeObject, getWriteConcern(), isNotUpdateCommand(update));
           break;
         } else {
           remove(dbo);
@@ -1125,24 +1484,39 @@ public class FongoDBCollection extends DBCollection {
   }
 
   @Override
-  public synchronized List distinct(final String key, final DBObject pQuery, final ReadPreference readPreference) {
+  public List distinct(final String key, final DBObject pQuery, final ReadPreference readPreference) {
+    return _distinct(key, pQuery);
+  }
+
+  private List _distinct(final String key, final DBObject pQuery) {
     final DBObject query = filterLists(pQuery);
-    Set<Object> results = new LinkedHashSet<Object>();
+    // The first value of each distinct key : 1, 1L and 1.0 are the same value.
+    Map<Object, Object> results = new LinkedHashMap<Object, Object>();
     Filter filter = buildFilter(query);
-    for (DBObject value : filterByIndexes(query)) {
+    for (DBObject value : snapshotByIndexes(query)) {
       if (filter.apply(value)) {
         List<Object> keyValues = expressionParser.getEmbeddedValues(key, value);
         for (Object keyValue : keyValues) {
           if (keyValue instanceof List) {
-            results.addAll((List) keyValue);
+            for (Object item : (List) keyValue) {
+              addDistinct(results, item);
+            }
           } else {
-            results.add(keyValue);
+            addDistinct(results, keyValue);
           }
         }
       }
     }
     //noinspection unchecked
-    return new ArrayList(results);
+    return new ArrayList(results.values());
+  }
+
+  private static void addDistinct(Map<Object, Object> results, Object value) {
+    final ValueKey key = ValueKey.of(value);
+    final Object distinctKey = key != null ? key : value;
+    if (!results.containsKey(distinctKey)) {
+      results.put(distinctKey, value);
+    }
   }
 
   @Override
@@ -1249,16 +1623,23 @@ public class FongoDBCollection extends DBCollection {
   }
 
 
-  protected synchronized void _dropIndex(String name) throws MongoException {
+  protected void _dropIndex(String name) throws MongoException {
+    lock.writeLock().lock();
+    try {
+      dropIndexByName(name);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void dropIndexByName(String name) {
     final DBCollection indexColl = fongoDb.getCollection("system.indexes");
     final WriteResult wr = indexColl.remove(new BasicDBObject("name", name).append("ns", nsName()), WriteConcern.ACKNOWLEDGED);
     boolean isDrop = wr.getN() == 1;
-    ListIterator<IndexAbstract> iterator = indexes.listIterator();
-
-    while (iterator.hasNext()) {
-      IndexAbstract index = iterator.next();
+    for (IndexAbstract index : indexes) {
       if (index.getName().equals(name)) {
-        iterator.remove();
+        indexes.remove(index);
+        invalidatePlanCache();
         isDrop = true;
         break;
       }
@@ -1272,7 +1653,7 @@ public class FongoDBCollection extends DBCollection {
     return this.getDB().getName() + "." + this.getName();
   }
 
-  protected synchronized void _dropIndexes() {
+  protected void _dropIndexes() {
     final List<DBObject> indexes = fongoDb.getCollection("system.indexes").find(new BasicDBObject("ns", nsName())).toArray();
     // Two step for no concurrent modification exception
     for (final DBObject index : indexes) {
@@ -1285,23 +1666,52 @@ public class FongoDBCollection extends DBCollection {
 
   @Override
   public void drop() {
-    _idIndex.clear();
-    _dropIndexes(); // _idIndex must stay.
+    lock.writeLock().lock();
+    try {
+      _idIndex.clear();
+      snapshot = null;
+      if (capped != null) {
+        capped.clear();
+      }
+      for (IndexBuild build : indexBuilds) {
+        build.abort();
+      }
+      _dropIndexes(); // _idIndex must stay.
+      invalidatePlanCache();
+      final Oplog oplog = oplog();
+      if (oplog != null) {
+        oplog.invalidate(getDB().getName(), getName());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
     fongoDb.removeCollection(this);
   }
 
   /**
-   * Search the most restrictive index for query.
-   *
-   * @param query query for restriction
-   * @return the most restrictive index, or null.
+   * The indexes which can handle the query depend only of its shape : they are computed once by shape.
    */
-  private synchronized IndexAbstract searchIndex(DBObject query) {
+  private QueryPlan queryPlan(DBObject query) {
+    // Read before the indexes : a plan computed with old indexes will be ignored.
+    final int generation = planGeneration;
+    final String shape = QueryShape.of(query);
+    QueryPlan plan = planCache.get(shape);
+    if (plan != null && plan.generation == generation) {
+      planCacheHits.incrementAndGet();
+      return plan;
+    }
+    planCacheMisses.incrementAndGet();
+
     IndexAbstract result = null;
     int foundCommon = -1;
-    Set<String> queryFields = query.keySet();
+    List<IndexAbstract> candidates = new ArrayList<IndexAbstract>(this.indexes.size());
     for (IndexAbstract index : this.indexes) {
       if (index.canHandle(query)) {
+        candidates.add(index);
+        // A partial index depends on the values of the query, not only on its shape : see searchIndex().
+        if (index.isPartial()) {
+          continue;
+        }
         // The most restrictive first.
         if (index.getFields().size() > foundCommon || (result != null && !result.isUnique() && index.isUnique())) {
           result = index;
@@ -1309,18 +1719,152 @@ public class FongoDBCollection extends DBCollection {
         }
       }
     }
+    plan = new QueryPlan(generation, result, candidates);
+    if (planCache.size() >= PLAN_CACHE_SIZE) {
+      planCache.clear();
+    }
+    planCache.put(shape, plan);
+    return plan;
+  }
+
+  /**
+   * Must be called after each change of the indexes.
+   */
+  private void invalidatePlanCache() {
+    planGeneration++;
+    planCache.clear();
+  }
+
+  public long getPlanCacheHits() {
+    return planCacheHits.get();
+  }
+
+  public long getPlanCacheMisses() {
+    return planCacheMisses.get();
+  }
+
+  private static final class QueryPlan {
+    private final int generation;
+    // Chosen without statistics.
+    private final IndexAbstract index;
+    private final List<IndexAbstract> candidates;
+
+    QueryPlan(int generation, IndexAbstract index, List<IndexAbstract> candidates) {
+      this.generation = generation;
+      this.index = index;
+      this.candidates = candidates;
+    }
+  }
+
+  /**
+   * Search an index walking the documents in the order of the sort.
+   * The index chosen for the query is kept if it gives this order : a sort on few documents is better than a walk of
+   * another index. Other indexes must contain all the documents.
+   *
+   * @return the index, or null if the documents must be sorted.
+   */
+  private IndexAbstract searchSortIndex(DBObject orderby, DBObject query) {
+    final IndexAbstract queryIndex = searchIndex(query);
+    if (queryIndex != null) {
+      return queryIndex.sortDirection(orderby) != 0 ? queryIndex : null;
+    }
+    for (IndexAbstract index : this.indexes) {
+      if (index.sortDirection(orderby) != 0 && index.size() == _idIndex.size()) {
+        LOG.debug("searchSortIndex() found index {} for sort {}", index, orderby);
+        return index;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Rewrite {$or: [{a: 1}, {a: 2}]} into {a: {$in: [1, 2]}}, so an index on "a" can be used.
+   * Only to restrict the candidates : the results must still be filtered with the original query.
+   */
+  static DBObject orOfEqualitiesAsIn(DBObject query) {
+    final Object or = query.get(QueryOperators.OR);
+    if (!(or instanceof List) || ((List) or).isEmpty()) {
+      return query;
+    }
+    String field = null;
+    final BasicDBList values = new BasicDBList();
+    for (Object clause : (List) or) {
+      if (!(clause instanceof DBObject) || ((DBObject) clause).keySet().size() != 1) {
+        return query;
+      }
+      final String clauseField = ((DBObject) clause).keySet().iterator().next();
+      final Object value = ((DBObject) clause).get(clauseField);
+      if (clauseField.startsWith("$") || (field != null && !field.equals(clauseField)) || value == null
+          || ExpressionParser.isDbObject(value) || value instanceof List || value instanceof Pattern) {
+        return query;
+      }
+      field = clauseField;
+      values.add(value);
+    }
+    if (query.containsField(field)) {
+      return query;
+    }
+    final DBObject rewritten = new BasicDBObject();
+    for (String key : query.keySet()) {
+      if (!QueryOperators.OR.equals(key)) {
+        rewritten.put(key, query.get(key));
+      }
+    }
+    rewritten.put(field, new BasicDBObject(QueryOperators.IN, values));
+    return rewritten;
+  }
+
+  /**
+   * Search the most restrictive index for query.
+   * The index with the most fields (unique first) is chosen, unless the statistics of another index estimate it walks
+   * less than half the objects : estimations are rough, the choice must be clear.
+   *
+   * @param query query for restriction
+   * @return the most restrictive index, or null.
+   */
+  private IndexAbstract searchIndex(DBObject query) {
+    final QueryPlan plan = queryPlan(query);
+    IndexAbstract result = plan.index;
+    Set<String> queryFields = query.keySet();
+    if (result == null || plan.candidates.size() > 1) {
+      double cost = result == null ? Double.MAX_VALUE : result.estimatedCost(query);
+      for (IndexAbstract index : plan.candidates) {
+        // A partial index holds only the objects matching its filter.
+        if (index.isPartial() && !index.canBeUsedFor(query)) {
+          continue;
+        }
+        final double indexCost = index.estimatedCost(query);
+        if (result == null || indexCost * 2 < cost) {
+          result = index;
+          cost = indexCost;
+        }
+      }
+    }
 
     LOG.debug("searchIndex() found index {} for fields {}", result, queryFields);
 
     return result;
   }
 
+  /**
+   * Without explicit sort, only the results of a $near query are ordered (by distance), the others stay in natural
+   * order.
+   *
+   * @return <code>null</code> for the natural order.
+   */
+  private Comparator<DBObject> naturalOrNear(DBObject orderby, DBObject query) {
+    if (orderby == null) {
+      return query == null ? null : expressionParser.nearComparator(query);
+    }
+    return orderby.keySet().isEmpty() ? null : sortComparator(orderby);
+  }
+
   /**
    * Search the geo index.
    *
    * @return the geo index, or null.
    */
-  private synchronized IndexAbstract searchGeoIndex(boolean unique) {
+  private IndexAbstract searchGeoIndex(boolean unique) {
     IndexAbstract result = null;
     for (IndexAbstract index : indexes) {
       if (index.isGeoIndex()) {
@@ -1345,8 +1889,15 @@ public class FongoDBCollection extends DBCollection {
    *
    * @param object    new object to insert.
    * @param oldObject null if insert, old object if update.
+   *                  Caller must hold the write lock.
+   * @param replace   true if the update replaces the object.
    */
-  private void addToIndexes(DBObject object, DBObject oldObject, WriteConcern concern) {
+  private void addToIndexes(DBObject object, DBObject oldObject, WriteConcern concern, boolean replace) {
+    final int cappedSize = capped == null ? 0 : bsonSize(object);
+    if (capped != null && oldObject != null && capped.sizeOf(oldObject) != cappedSize) {
+      throw fongoDb.writeConcernException(10003, "Cannot change the size of a document in a capped collection: "
+          + capped.sizeOf(oldObject) + " != " + cappedSize);
+    }
     // Ensure "insert/update" create collection into "fongoDB"
     // First, try to see if index can add the new value.
     for (IndexAbstract index : indexes) {
@@ -1362,6 +1913,7 @@ public class FongoDBCollection extends DBCollection {
 
     //     Set<String> queryFields = object.keySet();
     final DBObject idFirst = Util.cloneIdFirst(object);
+    snapshot = null;
     try {
       for (final IndexAbstract index : indexes) {
         if (index.canHandle(object)) {
@@ -1370,31 +1922,227 @@ public class FongoDBCollection extends DBCollection {
           // In case of update and removing a field, we must remove from the index.
           index.remove(oldObject);
       }
+      for (IndexBuild build : indexBuilds) {
+        build.logAdd(idFirst, oldObject);
+      }
+      if (capped != null) {
+        if (oldObject == null) {
+          for (DBObject evicted : capped.add(idFirst, cappedSize)) {
+            removeFromIndexes(evicted);
+          }
+        } else {
+          capped.replace(oldObject, idFirst);
+        }
+      }
     } catch (MongoException e) {
       LOG.info("", e);
       throw this.fongoDb.writeConcernException(e.getCode(), e.getMessage());
     }
+    final Oplog oplog = oplog();
+    if (oplog != null) {
+      if (oldObject == null) {
+        oplog.insert(getDB().getName(), getName(), idFirst);
+      } else {
+        oplog.update(getDB().getName(), getName(), oldObject, idFirst, replace);
+      }
+    }
     this.fongoDb.addCollection(this);
   }
 
+  /**
+   * @return the oplog recording the writes of this collection, null if no change stream was opened. The system
+   * collections and the work collections of the aggregations are not recorded.
+   */
+  private Oplog oplog() {
+    if (nonIdCollection || !validateOnInsert) {
+      return null;
+    }
+    return fongoDb.fongo.getOplog();
+  }
+
   /**
    * Remove an object from indexes.
    *
    * @param object object to remove.
+   *               Caller must hold the write lock.
    */
-  private synchronized void removeFromIndexes(DBObject object) {
+  private void removeFromIndexes(DBObject object) {
+    snapshot = null;
     for (IndexAbstract index : indexes) {
       if (index.canHandle(object)) {
         index.remove(object);
       }
     }
+    for (IndexBuild build : indexBuilds) {
+      build.logRemove(object);
+    }
+  }
+
+  /**
+   * Remove the objects expired at this time from the TTL indexes. Each index is walked from its oldest date up to the
+   * expiry date, by batches : the writes are not blocked during the whole removal.
+   *
+   * @param now the time of the TTL monitor.
+   * @return the number of removed objects.
+   */
+  public int removeExpired(Date now) {
+    int removed = 0;
+    if (capped != null) {
+      // The documents of a capped collection are never removed.
+      return removed;
+    }
+    for (IndexAbstract index : indexes) {
+      final Long expireAfterSeconds = index.getExpireAfterSeconds();
+      if (expireAfterSeconds == null) {
+        continue;
+      }
+      final String field = (String) index.getFields().iterator().next();
+      // The dates only : the other types are never expired.
+      final DBObject query = new BasicDBObject(field, new BasicDBObject(QueryOperators.GTE, new Date(Long.MIN_VALUE))
+          .append(QueryOperators.LT, new Date(now.getTime() - expireAfterSeconds * 1000)));
+      final Filter filter = buildFilter(query);
+      int batch;
+      do {
+        lock.writeLock().lock();
+        try {
+          if (!indexes.contains(index)) {
+            // Dropped meanwhile.
+            break;
+          }
+          @SuppressWarnings("unchecked") final List<DBObject> expired = index.retrieveOrderedObjects(query, filter, false, EXPIRY_BATCH_SIZE);
+          final Oplog oplog = oplog();
+          for (DBObject object : expired) {
+            removeFromIndexes(object);
+            if (oplog != null) {
+              oplog.delete(getDB().getName(), getName(), object);
+            }
+          }
+          batch = expired.size();
+          removed += batch;
+        } finally {
+          lock.writeLock().unlock();
+        }
+      } while (batch == EXPIRY_BATCH_SIZE);
+    }
+    return removed;
+  }
+
+  /**
+   * Make this empty collection a capped collection.
+   *
+   * @param size maximum size in bytes, rounded like MongoDB (at least 4096, then a multiple of 256).
+   * @param max  maximum number of documents, 0 for no maximum.
+   */
+  void capped(long size, long max) {
+    lock.writeLock().lock();
+    try {
+      final long roundedSize = size <= 4096 ? 4096 : (size + 255) / 256 * 256;
+      capped = new CappedBuffer(roundedSize, max);
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
-  public synchronized Collection<IndexAbstract> getIndexes() {
+  @Override
+  public boolean isCapped() {
+    return capped != null;
+  }
+
+  /**
+   * Open a tailable cursor on this capped collection : it returns the documents matching the query in insertion order,
+   * then the ones inserted later.
+   *
+   * @param query     the query, without sort.
+   * @param fields    the projection.
+   * @param awaitData true if a getMore must wait for the next documents.
+   */
+  public FongoTailableCursor tailableCursor(DBObject query, DBObject fields, boolean awaitData) {
+    final CappedBuffer buffer = capped;
+    if (buffer == null) {
+      throw new MongoException(2, "error processing query: " + nsName() + " tailable cursor requested on non capped collection");
+    }
+    lock.readLock().lock();
+    try {
+      return new FongoTailableCursor(this, buffer, buffer.first(), buildFilter(filterLists(query == null ? new BasicDBObject() : query)), fields, awaitData);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Read the documents of a capped collection from a position, filtered, cloned and projected like a find.
+   *
+   * @return the position following the last read document.
+   */
+  long readCapped(CappedBuffer buffer, long position, Filter filter, DBObject fields, int max, List<DBObject> result) {
+    final List<DBObject> candidates = new ArrayList<DBObject>();
+    long next = position;
+    lock.readLock().lock();
+    try {
+      if (position < buffer.first()) {
+        throw new MongoException(136, "CollectionScan died due to position in capped collection being deleted. Last seen record id: RecordId(" + position + ")");
+      }
+      while (result.size() + candidates.size() < max && next < buffer.next()) {
+        final List<DBObject> read = new ArrayList<DBObject>();
+        next = buffer.read(next, max - result.size() - candidates.size(), read);
+        for (DBObject object : read) {
+          if (filter.apply(object)) {
+            candidates.add(object);
+          }
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    final Iterator<DBObject> iterator = new FindIterator(candidates.iterator(), ExpressionParser.AllFilter, fields, 0, max, Integer.MAX_VALUE, Long.MAX_VALUE);
+    while (iterator.hasNext()) {
+      result.add(iterator.next());
+    }
+    return next;
+  }
+
+  private static int bsonSize(DBObject object) {
+    return DefaultDBEncoder.FACTORY.create().writeObject(new BasicOutputBuffer(), object);
+  }
+
+  public Collection<IndexAbstract> getIndexes() {
     return Collections.unmodifiableList(indexes);
   }
 
-  public synchronized List<DBObject> geoNear(Coordinate near, DBObject query, Number limit, Number maxDistance, boolean spherical) {
+  /**
+   * Sort documents of this collection (found by their _id) in natural order : the order of a find without sort.
+   */
+  public void sortInNaturalOrder(final List<DBObject> objects) {
+    if (objects.size() < 2 || !(_idIndex instanceof IdIndex)) {
+      return;
+    }
+    final Map<DBObject, Integer> positions = new IdentityHashMap<DBObject, Integer>();
+    lock.readLock().lock();
+    try {
+      for (DBObject object : objects) {
+        positions.put(object, ((IdIndex) _idIndex).naturalPosition(object));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    Collections.sort(objects, new Comparator<DBObject>() {
+      @Override
+      public int compare(DBObject o1, DBObject o2) {
+        return positions.get(o1).compareTo(positions.get(o2));
+      }
+    });
+  }
+
+  public List<DBObject> geoNear(Coordinate near, DBObject query, Number limit, Number maxDistance, boolean spherical) {
+    lock.readLock().lock();
+    try {
+      return _geoNear(near, query, limit, maxDistance, spherical);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<DBObject> _geoNear(Coordinate near, DBObject query, Number limit, Number maxDistance, boolean spherical) {
     IndexAbstract matchingIndex = searchGeoIndex(true);
     if (matchingIndex == null) {
       fongoDb.notOkErrorResult(-5, "no geo indices for geoNear").throwOnError();
@@ -1408,7 +2156,7 @@ public class FongoDBCollection extends DBCollection {
   }
 
   //Text search Emulation see http://docs.mongodb.org/manual/tutorial/search-for-text/ for mongo
-  public synchronized DBObject text(String search, Number limit, DBObject project) {
+  public DBObject text(String search, Number limit, DBObject project) {
     TextSearch ts = new TextSearch(this);
     return ts.findByTextSearch(search, project == null ? new BasicDBObject() : project, limit == null ? 100 : limit.intValue());
   }
@@ -1428,7 +2176,12 @@ public class FongoDBCollection extends DBCollection {
 
   @Override
   public long count() {
-    return _idIndex.size();
+    lock.readLock().lock();
+    try {
+      return _idIndex.size();
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   @Override
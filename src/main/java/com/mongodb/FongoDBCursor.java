@@ -28,6 +28,8 @@ public class FongoDBCursor extends DBCursor {
   private DBObject currentObject;
   private List<DBObject> objects = null;
   private Iterator<DBObject> iterator;
+  // Only for a tailable cursor.
+  private FongoTailableCursor tailableCursor;
 
   public FongoDBCursor(FongoDBCollection fongoDBCollection, DBObject query, DBObject projection) {
     this(fongoDBCollection, query, projection, new FindOptions(), new BasicDBObject(), null);
@@ -43,23 +45,47 @@ public class FongoDBCursor extends DBCursor {
     this.sort = sort;
   }
 
+  private DBObject buildQuery() {
+    final DBObject q;
+    if (this.query != null && this.query.containsField("$query")) {
+      q = Util.clone(query);
+    } else {
+      q = new BasicDBObject("$query", Util.clone(this.query));
+    }
+    if (sort != null) {
+      q.put("$orderby", sort);
+    }
+    q.putAll(modifiers);
+    return q;
+  }
+
+  /**
+   * Start the query : documents are pulled from the collection by batch, when iterating.
+   */
   private void fetch() {
+    if (this.iterator == null) {
+      iterator = dbCollection.__findIterator(buildQuery(), projection, this.findOptions.getSkip(), this.findOptions.getBatchSize(),
+          this.getLimit());
+    }
+  }
+
+  /**
+   * Materialize all the results (only for {@link #toArray()} and {@link #length()}).
+   */
+  private void fetchAll() {
     if (this.objects == null) {
       objects = new ArrayList<DBObject>();
-
-      final DBObject q;
-      if (this.query != null && this.query.containsField("$query")) {
-        q = Util.clone(query);
+      if (this.iterator == null) {
+        fetch();
+        while (iterator.hasNext()) {
+          objects.add(iterator.next());
+        }
+        iterator = objects.iterator();
       } else {
-        q = new BasicDBObject("$query", Util.clone(this.query));
-      }
-      if (sort != null) {
-        q.put("$orderby", sort);
+        // Already iterating : keep the current position.
+        objects.addAll(dbCollection.__find(buildQuery(), projection, this.findOptions.getSkip(), this.findOptions.getBatchSize(),
+            this.getLimit(), this.getOptions(), getReadPreference(), null));
       }
-      q.putAll(modifiers);
-      objects.addAll(dbCollection.__find(q, projection, this.findOptions.getSkip(), this.findOptions.getBatchSize(),
-          this.getLimit(), this.getOptions(), getReadPreference(), null));
-      iterator = objects.iterator();
     }
   }
 
@@ -78,15 +104,48 @@ public class FongoDBCursor extends DBCursor {
 
   @Override
   public synchronized List<DBObject> toArray(int max) {
-    fetch();
+    fetchAll();
     return objects;
   }
 
+  private boolean isTailable() {
+    return findOptions.getCursorType() != CursorType.NonTailable || (getOptions() & Bytes.QUERYOPTION_TAILABLE) != 0;
+  }
+
+  private boolean isAwaitData() {
+    return findOptions.getCursorType() == CursorType.TailableAwait || (getOptions() & Bytes.QUERYOPTION_AWAITDATA) != 0;
+  }
+
+  /**
+   * Read the next batch of a tailable cursor if the current one is consumed.
+   *
+   * @return true if a document is available.
+   */
+  private boolean fetchTail(long awaitMillis) {
+    if (tailableCursor == null) {
+      tailableCursor = dbCollection.tailableCursor(query != null && query.containsField("$query") ? (DBObject) query.get("$query") : query, projection,
+          isAwaitData());
+    }
+    if (iterator == null || !iterator.hasNext()) {
+      iterator = tailableCursor.next(findOptions.getBatchSize(), awaitMillis).iterator();
+    }
+    return iterator.hasNext();
+  }
+
   @Override
   public boolean hasNext() {
     if (closed) {
       throw new IllegalStateException("Cursor has been closed");
     }
+    if (isTailable()) {
+      // Parks until a document is inserted.
+      while (!fetchTail(FongoTailableCursor.DEFAULT_AWAIT_MILLIS)) {
+        if (closed) {
+          return false;
+        }
+      }
+      return true;
+    }
     fetch();
     return iterator.hasNext();
   }
@@ -96,7 +155,11 @@ public class FongoDBCursor extends DBCursor {
     if (closed) {
       throw new IllegalStateException("Cursor has been closed");
     }
-    fetch();
+    if (isTailable()) {
+      hasNext();
+    } else {
+      fetch();
+    }
     this.numSeen++;
     return currentObject(iterator.next());
   }
@@ -106,6 +169,13 @@ public class FongoDBCursor extends DBCursor {
     if (closed) {
       throw new IllegalStateException("Cursor has been closed");
     }
+    if (isTailable()) {
+      if (!fetchTail(isAwaitData() ? FongoTailableCursor.DEFAULT_AWAIT_MILLIS : 0)) {
+        return null;
+      }
+      this.numSeen++;
+      return currentObject(iterator.next());
+    }
     return next();
   }
 
@@ -116,7 +186,7 @@ public class FongoDBCursor extends DBCursor {
 
   @Override
   public int length() {
-    fetch();
+    fetchAll();
     return this.objects.size();
   }
 
@@ -192,6 +262,12 @@ public class FongoDBCursor extends DBCursor {
     return super.sort(orderBy);
   }
 
+  @Override
+  public DBCursor cursorType(CursorType cursorType) {
+    findOptions.cursorType(cursorType);
+    return super.cursorType(cursorType);
+  }
+
   @Override
   public DBCursor limit(int limit) {
     findOptions.limit(limit);
@@ -236,6 +312,9 @@ public class FongoDBCursor extends DBCursor {
   @Override
   public void close() {
     this.closed = true;
+    if (tailableCursor != null) {
+      tailableCursor.close();
+    }
     super.close();
   }
 
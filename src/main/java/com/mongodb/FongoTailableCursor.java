@@ -0,0 +1,93 @@
+package com.mongodb;
+
+import com.github.fakemongo.impl.CappedBuffer;
+import com.github.fakemongo.impl.Filter;
+import com.github.fakemongo.impl.ServerCursor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tailable cursor on a capped collection : it keeps its position in the collection, and returns the documents
+ * inserted after the last one it returned. With awaitData, a read parks until a document arrives instead of polling.
+ */
+public final class FongoTailableCursor implements ServerCursor {
+  // As mongod, when the cursor has no maxAwaitTimeMS.
+  public static final long DEFAULT_AWAIT_MILLIS = 1000;
+
+  private final FongoDBCollection collection;
+  private final CappedBuffer buffer;
+  private final Filter filter;
+  private final DBObject fields;
+  private final boolean awaitData;
+  private long position;
+  private volatile boolean closed;
+
+  FongoTailableCursor(FongoDBCollection collection, CappedBuffer buffer, long position, Filter filter, DBObject fields, boolean awaitData) {
+    this.collection = collection;
+    this.buffer = buffer;
+    this.position = position;
+    this.filter = filter;
+    this.fields = fields;
+    this.awaitData = awaitData;
+  }
+
+  @Override
+  public boolean isAwaitData() {
+    return awaitData;
+  }
+
+  public FongoDBCollection getCollection() {
+    return collection;
+  }
+
+  @Override
+  public String getNamespace() {
+    return collection.getFullName();
+  }
+
+  /**
+   * Read the next documents matching the query.
+   *
+   * @param batchSize   maximum number of documents.
+   * @param awaitMillis time to wait for a document if there is none, 0 to return at once.
+   * @return the documents, empty if none arrived in time.
+   * @throws MongoException if the next document has been evicted from the collection (code 136).
+   */
+  @Override
+  public synchronized List<DBObject> next(int batchSize, long awaitMillis) {
+    final int max = batchSize <= 0 ? Integer.MAX_VALUE : batchSize;
+    final List<DBObject> result = new ArrayList<DBObject>();
+    final long deadline = System.currentTimeMillis() + awaitMillis;
+    while (!closed) {
+      position = collection.readCapped(buffer, position, filter, fields, max, result);
+      final long remaining = deadline - System.currentTimeMillis();
+      if (!result.isEmpty() || remaining <= 0) {
+        break;
+      }
+      try {
+        buffer.await(position, remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return result;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * A tailable cursor stays open after the last document, until it is closed.
+   */
+  @Override
+  public boolean isExhausted() {
+    return closed;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+}
@@ -5,6 +5,7 @@ import com.mongodb.*;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
 import com.mongodb.util.FongoJSON;
 import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
@@ -12,6 +13,7 @@ import org.bson.conversions.Bson;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -78,7 +80,24 @@ public class FongoMongoCollection<TDocument> extends MongoCollectionImpl<TDocume
   public List<String> createIndexes(List<IndexModel> indexes) {
     ArrayList<String> names = new ArrayList<String>(indexes.size());
     for (IndexModel indexModel : indexes) {
-      this.dbCollection.createIndex(dbObject(indexModel.getKeys()), indexModel.getOptions().getName(), indexModel.getOptions().isUnique());
+      final IndexOptions indexOptions = indexModel.getOptions();
+      final DBObject options = new BasicDBObject();
+      if (indexOptions.getName() != null) {
+        options.put("name", indexOptions.getName());
+      }
+      if (indexOptions.isUnique()) {
+        options.put("unique", Boolean.TRUE);
+      }
+      if (indexOptions.isBackground()) {
+        options.put("background", Boolean.TRUE);
+      }
+      if (indexOptions.getPartialFilterExpression() != null) {
+        options.put("partialFilterExpression", dbObject(indexOptions.getPartialFilterExpression()));
+      }
+      if (indexOptions.getExpireAfter(TimeUnit.SECONDS) != null) {
+        options.put("expireAfterSeconds", indexOptions.getExpireAfter(TimeUnit.SECONDS));
+      }
+      this.dbCollection.createIndex(dbObject(indexModel.getKeys()), options);
       names.add(indexModel.getOptions().getName());
     }
 //    return super.createIndexes(indexes);
@@ -9,6 +9,7 @@ import com.mongodb.client.FindIterable;
 import com.mongodb.client.ListCollectionsIterable;
 import com.mongodb.client.ListIndexesIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
 import com.mongodb.client.model.CountOptions;
@@ -83,6 +84,45 @@ public abstract class AbstractFongoV3Test {
     assertThat(collection).isNotNull();
   }
 
+  @Test
+  public void find_with_batchSize_reads_the_documents_by_batch() {
+    // Given
+    final MongoCollection<Document> collection = newCollection();
+    for (int i = 0; i < 10; i++) {
+      collection.insertOne(new Document("_id", i));
+    }
+
+    // When
+    final MongoCursor<Document> cursor = collection.find().sort(ascending("_id")).batchSize(3).iterator();
+    final List<Object> ids = new ArrayList<Object>();
+    ids.add(cursor.next().get("_id"));
+
+    // Then
+    assertThat(fongoRule.getFongo().getOpenCursorCount()).isEqualTo(1);
+    while (cursor.hasNext()) {
+      ids.add(cursor.next().get("_id"));
+    }
+    assertThat(ids).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    assertThat(fongoRule.getFongo().getOpenCursorCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void closing_a_cursor_kills_it() {
+    // Given
+    final MongoCollection<Document> collection = newCollection();
+    for (int i = 0; i < 10; i++) {
+      collection.insertOne(new Document("_id", i));
+    }
+    final MongoCursor<Document> cursor = collection.find().batchSize(2).iterator();
+    cursor.next();
+
+    // When
+    cursor.close();
+
+    // Then
+    assertThat(fongoRule.getFongo().getOpenCursorCount()).isEqualTo(0);
+  }
+
   @Test
   public void getCollection_and_count_works_with_empty_collection() {
     // Given
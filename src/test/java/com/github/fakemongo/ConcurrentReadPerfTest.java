@@ -0,0 +1,96 @@
+package com.github.fakemongo;
+
+import ch.qos.logback.classic.Level;
+import com.github.fakemongo.impl.ExpressionParser;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.FongoDBCollection;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Readers share the collection lock : throughput of the read benchmarks must grow with the number of threads.
+ */
+@State(Scope.Benchmark)
+public class ConcurrentReadPerfTest {
+  public int size = 10000;
+
+  private DBCollection collection;
+
+  private final AtomicInteger nextId = new AtomicInteger();
+
+  @Setup
+  public void prepare() {
+    collection = new Fongo("fongo").getDB("db").getCollection("coll");
+    collection.createIndex(new BasicDBObject("n", 1));
+    for (int k = 0; k < size; k++) {
+      collection.insert(new BasicDBObject("_id", k).append("n", k % 100).append("v", k));
+    }
+    nextId.set(size);
+  }
+
+  @Benchmark
+  public Object findOneById() {
+    return collection.findOne(new BasicDBObject("_id", nextId.get() % size));
+  }
+
+  @Benchmark
+  public Object findWithIndex() {
+    return collection.find(new BasicDBObject("n", 42)).toArray();
+  }
+
+  @Benchmark
+  public long countWithoutIndex() {
+    return collection.count(new BasicDBObject("v", new BasicDBObject("$gte", size / 2)));
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(3)
+  public Object readWhileWriting() {
+    return collection.find(new BasicDBObject("n", 42)).toArray();
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public Object writeWhileReading() {
+    final int id = nextId.incrementAndGet();
+    collection.insert(new BasicDBObject("_id", id).append("n", id % 100).append("v", id));
+    return collection.remove(new BasicDBObject("_id", id));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    // Desactivate logback
+    ch.qos.logback.classic.Logger log = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(FongoDBCollection.class);
+    log.setLevel(Level.ERROR);
+    log = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ExpressionParser.class);
+    log.setLevel(Level.ERROR);
+
+    for (int threads : new int[]{1, 2, 4, 8}) {
+      Options opt = new OptionsBuilder()
+          .include(ConcurrentReadPerfTest.class.getSimpleName() + ".(findOneById|findWithIndex|countWithoutIndex)")
+          .forks(1)
+          .threads(threads)
+          .warmupIterations(5)
+          .measurementIterations(10)
+          .build();
+
+      new Runner(opt).run();
+    }
+
+    Options opt = new OptionsBuilder()
+        .include(ConcurrentReadPerfTest.class.getSimpleName() + ".readWrite")
+        .forks(1)
+        .warmupIterations(5)
+        .measurementIterations(10)
+        .build();
+
+    new Runner(opt).run();
+  }
+}
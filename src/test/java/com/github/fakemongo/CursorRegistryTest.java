@@ -0,0 +1,56 @@
+package com.github.fakemongo;
+
+import com.github.fakemongo.impl.IteratorCursor;
+import com.github.fakemongo.impl.ServerCursor;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CursorRegistryTest {
+
+  private static ServerCursor cursor() {
+    return new IteratorCursor("db.coll", Arrays.<DBObject>asList(new BasicDBObject("_id", 1), new BasicDBObject("_id", 2)).iterator());
+  }
+
+  @Test
+  public void getReturnsTheRegisteredCursor() {
+    CursorRegistry registry = new CursorRegistry();
+    ServerCursor cursor = cursor();
+
+    long id = registry.register(cursor, false, 0);
+
+    assertThat(id).isNotEqualTo(0);
+    assertThat(registry.get(id, 0)).isSameAs(cursor);
+    assertThat(registry.get(id + 1, 0)).isNull();
+  }
+
+  @Test
+  public void killClosesTheCursor() {
+    CursorRegistry registry = new CursorRegistry();
+    ServerCursor cursor = cursor();
+    long id = registry.register(cursor, false, 0);
+
+    assertThat(registry.kill(id)).isTrue();
+    assertThat(registry.kill(id)).isFalse();
+    assertThat(cursor.isExhausted()).isTrue();
+    assertThat(registry.get(id, 0)).isNull();
+  }
+
+  @Test
+  public void idleCursorsAreKilled() {
+    CursorRegistry registry = new CursorRegistry();
+    long idle = registry.register(cursor(), false, 0);
+    long used = registry.register(cursor(), false, 0);
+    long noTimeout = registry.register(cursor(), true, 0);
+    registry.get(used, CursorRegistry.DEFAULT_TIMEOUT_MILLIS - 1);
+
+    assertThat(registry.killIdle(CursorRegistry.DEFAULT_TIMEOUT_MILLIS)).isEqualTo(1);
+    assertThat(registry.get(idle, CursorRegistry.DEFAULT_TIMEOUT_MILLIS)).isNull();
+    assertThat(registry.get(used, CursorRegistry.DEFAULT_TIMEOUT_MILLIS)).isNotNull();
+    assertThat(registry.get(noTimeout, 10 * CursorRegistry.DEFAULT_TIMEOUT_MILLIS)).isNotNull();
+    assertThat(registry.size()).isEqualTo(2);
+  }
+}
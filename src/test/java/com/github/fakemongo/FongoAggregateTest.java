@@ -960,6 +960,103 @@ public class FongoAggregateTest {
     }
   }
 
+  @Test
+  public void should_stream_stages_around_a_$group() {
+    // Given
+    final DBCollection collection = fongoRule.newCollection();
+    collection.insert(fongoRule.parseList("[{ \"_id\" : 1, \"author\" : \"a\", \"tags\" : [\"x\", \"y\"] },\n" +
+        "{ \"_id\" : 2, \"author\" : \"b\", \"tags\" : [\"y\", \"z\"] },\n" +
+        "{ \"_id\" : 3, \"author\" : \"c\", \"tags\" : [\"y\"] },\n" +
+        "{ \"_id\" : 4, \"author\" : \"d\", \"tags\" : [] }]"));
+
+    // When
+    AggregationOutput output = collection.aggregate(fongoRule.parseList("[{ $match : { _id : { $gt : 1 } } },\n" +
+        "{ $unwind : \"$tags\" },\n" +
+        "{ $group : { _id : \"$tags\", count : { $sum : 1 } } },\n" +
+        "{ $sort : { count : -1, _id : 1 } },\n" +
+        "{ $skip : 1 },\n" +
+        "{ $limit : 1 }]"));
+
+    // Then
+    Assertions.assertThat(output.results()).containsExactly(fongoRule.parseDBObject("{ \"_id\" : \"z\", \"count\" : 1 }"));
+  }
+
+  @Test
+  public void should_streamed_stages_not_modify_the_collection() {
+    // Given
+    final DBCollection collection = fongoRule.newCollection();
+    collection.insert(fongoRule.parseDBObject("{ \"_id\" : 1, \"tags\" : [\"x\", \"y\"] }"));
+
+    // When
+    AggregationOutput output = collection.aggregate(fongoRule.parseList("[{ $unwind : \"$tags\" }, { $sort : { tags : -1 } }]"));
+
+    // Then
+    Assertions.assertThat(output.results()).containsExactly(fongoRule.parseDBObject("{ \"_id\" : 1, \"tags\" : \"y\" }"),
+        fongoRule.parseDBObject("{ \"_id\" : 1, \"tags\" : \"x\" }"));
+    Assertions.assertThat(collection.findOne()).isEqualTo(fongoRule.parseDBObject("{ \"_id\" : 1, \"tags\" : [\"x\", \"y\"] }"));
+  }
+
+  @Test
+  public void should_$group_accumulate_many_groups_in_one_pass() {
+    // Given
+    final DBCollection collection = fongoRule.newCollection();
+    for (int i = 0; i < 3000; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("key", i % 1000).append("value", i).append("tag", i / 2000));
+    }
+
+    // When
+    AggregationOutput output = collection.aggregate(fongoRule.parseList("[{ $group : { _id : \"$key\", count : { $sum : 1 }, " +
+        "total : { $sum : \"$value\" }, avg : { $avg : \"$value\" }, first : { $first : \"$value\" }, " +
+        "last : { $last : \"$value\" }, min : { $min : \"$value\" }, tags : { $addToSet : \"$tag\" } } },\n" +
+        "{ $sort : { _id : 1 } }]"));
+
+    // Then
+    final List<DBObject> results = Lists.newArrayList(output.results());
+    Assertions.assertThat(results).hasSize(1000);
+    Assertions.assertThat(results.get(1)).isEqualTo(fongoRule.parseDBObject("{ \"_id\" : 1, \"count\" : 3, \"total\" : 3003, " +
+        "\"avg\" : 1001.0, \"first\" : 1, \"last\" : 2001, \"min\" : 1, \"tags\" : [0, 1] }"));
+  }
+
+  @Test
+  public void should_push_down_the_leading_stages_to_the_collection() {
+    // Given
+    final DBCollection collection = fongoRule.newCollection();
+    collection.createIndex(new BasicDBObject("value", 1));
+    for (int i = 0; i < 100; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("value", i % 10).append("odd", i % 2 == 1));
+    }
+
+    // When
+    AggregationOutput output = collection.aggregate(fongoRule.parseList("[{ $match : { value : { $gte : 5 } } },\n" +
+        "{ $sort : { value : -1, _id : 1 } },\n" +
+        "{ $match : { odd : true } },\n" +
+        "{ $limit : 4 },\n" +
+        "{ $skip : 1 },\n" +
+        "{ $match : { _id : { $gt : 19 } } },\n" +
+        "{ $project : { _id : 1 } }]"));
+
+    // Then
+    Assertions.assertThat(output.results()).containsExactly(fongoRule.parseDBObject("{ \"_id\" : 29 }"),
+        fongoRule.parseDBObject("{ \"_id\" : 39 }"));
+  }
+
+  @Test
+  public void should_stream_$addFields_and_$project() {
+    // Given
+    final DBCollection collection = fongoRule.newCollection();
+    collection.insert(fongoRule.parseList("[{ \"_id\" : 1, \"name\" : \"x\", \"a\" : 1, \"b\" : 2 },\n" +
+        "{ \"_id\" : 2, \"name\" : \"y\", \"a\" : 3, \"b\" : 4 }]"));
+
+    // When
+    AggregationOutput output = collection.aggregate(fongoRule.parseList("[{ $match : { _id : { $gt : 1 } } },\n" +
+        "{ $addFields : { total : { $add : [\"$a\", \"$b\"] } } },\n" +
+        "{ $project : { total : 1, author : \"$name\" } }]"));
+
+    // Then
+    Assertions.assertThat(output.results()).containsExactly(fongoRule.parseDBObject("{ \"_id\" : 2, \"total\" : 7.0, \"author\" : \"y\" }"));
+    Assertions.assertThat(collection.findOne(new BasicDBObject("_id", 2))).isEqualTo(fongoRule.parseDBObject("{ \"_id\" : 2, \"name\" : \"y\", \"a\" : 3, \"b\" : 4 }"));
+  }
+
   private DBCollection createTestCollection() {
     DBCollection collection = fongoRule.newCollection();
     collection.insert(new BasicDBObject("myId", "p0").append("date", 1));
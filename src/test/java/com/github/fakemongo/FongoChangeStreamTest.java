@@ -0,0 +1,146 @@
+package com.github.fakemongo;
+
+import com.github.fakemongo.impl.ChangeStreamCursor;
+import com.github.fakemongo.junit.FongoRule;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bson.Document;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FongoChangeStreamTest {
+
+  @Rule
+  public FongoRule fongoRule = new FongoRule(!true);
+
+  private ChangeStreamCursor watch(DBCollection collection, DBObject options, DBObject... stages) {
+    final List<DBObject> pipeline = new ArrayList<DBObject>();
+    Collections.addAll(pipeline, stages);
+    return new ChangeStreamCursor(fongoRule.getFongo(), collection.getDB().getName(), collection.getName(), options, pipeline);
+  }
+
+  @Test
+  public void should_record_the_writes_of_the_collection() {
+    // Given
+    DBCollection collection = fongoRule.newCollection();
+    DBCollection other = fongoRule.newCollection();
+    ChangeStreamCursor cursor = watch(collection, new BasicDBObject());
+
+    // When
+    collection.insert(new BasicDBObject("_id", 1).append("a", 1).append("b", new BasicDBObject("c", 1)));
+    other.insert(new BasicDBObject("_id", 1));
+    collection.update(new BasicDBObject("_id", 1), new BasicDBObject("$set", new BasicDBObject("b.c", 2)).append("$unset", new BasicDBObject("a", 1)));
+    collection.update(new BasicDBObject("_id", 1), new BasicDBObject("x", 1));
+    collection.remove(new BasicDBObject("_id", 1));
+    List<DBObject> changes = cursor.next(10, 0);
+
+    // Then
+    assertThat(changes).hasSize(4);
+    assertThat(changes.get(0).get("operationType")).isEqualTo("insert");
+    assertThat(changes.get(0).get("fullDocument")).isEqualTo(new BasicDBObject("_id", 1).append("a", 1).append("b", new BasicDBObject("c", 1)));
+    assertThat(changes.get(0).get("documentKey")).isEqualTo(new BasicDBObject("_id", 1));
+    assertThat(changes.get(1).get("operationType")).isEqualTo("update");
+    assertThat(((DBObject) changes.get(1).get("updateDescription")).get("updatedFields")).isEqualTo(new BasicDBObject("b.c", 2));
+    assertThat((List) ((DBObject) changes.get(1).get("updateDescription")).get("removedFields")).containsExactly("a");
+    assertThat(changes.get(2).get("operationType")).isEqualTo("replace");
+    assertThat(changes.get(2).get("fullDocument")).isEqualTo(new BasicDBObject("_id", 1).append("x", 1));
+    assertThat(changes.get(3).get("operationType")).isEqualTo("delete");
+  }
+
+  @Test
+  public void should_resume_after_a_token() {
+    // Given
+    DBCollection collection = fongoRule.newCollection();
+    ChangeStreamCursor cursor = watch(collection, new BasicDBObject());
+    collection.insert(new BasicDBObject("_id", 1));
+    collection.insert(new BasicDBObject("_id", 2));
+    Object resumeToken = cursor.next(1, 0).get(0).get("_id");
+
+    // When
+    ChangeStreamCursor resumed = watch(collection, new BasicDBObject("resumeAfter", resumeToken));
+
+    // Then
+    List<DBObject> changes = resumed.next(10, 0);
+    assertThat(changes).hasSize(1);
+    assertThat(changes.get(0).get("documentKey")).isEqualTo(new BasicDBObject("_id", 2));
+  }
+
+  @Test
+  public void should_not_resume_after_an_unknown_token() {
+    DBCollection collection = fongoRule.newCollection();
+    try {
+      watch(collection, new BasicDBObject("resumeAfter", new BasicDBObject("_data", "00000000000000FF")));
+      fail("an unknown token must be refused");
+    } catch (MongoException e) {
+      assertThat(e.getCode()).isEqualTo(280);
+    }
+  }
+
+  @Test
+  public void should_filter_with_match_and_lookup_the_full_document() {
+    // Given
+    DBCollection collection = fongoRule.newCollection();
+    ChangeStreamCursor cursor = watch(collection, new BasicDBObject("fullDocument", "updateLookup"),
+        new BasicDBObject("$match", new BasicDBObject("operationType", "update")));
+
+    // When
+    collection.insert(new BasicDBObject("_id", 1).append("n", 1));
+    collection.update(new BasicDBObject("_id", 1), new BasicDBObject("$inc", new BasicDBObject("n", 1)));
+
+    // Then
+    List<DBObject> changes = cursor.next(10, 0);
+    assertThat(changes).hasSize(1);
+    assertThat(changes.get(0).get("fullDocument")).isEqualTo(new BasicDBObject("_id", 1).append("n", 2));
+  }
+
+  @Test
+  public void should_invalidate_when_the_collection_is_dropped() {
+    // Given
+    DBCollection collection = fongoRule.newCollection();
+    ChangeStreamCursor cursor = watch(collection, new BasicDBObject());
+
+    // When
+    collection.drop();
+
+    // Then
+    List<DBObject> changes = cursor.next(10, 0);
+    assertThat(changes).hasSize(1);
+    assertThat(changes.get(0).get("operationType")).isEqualTo("invalidate");
+    assertThat(cursor.isExhausted()).isTrue();
+  }
+
+  @Test
+  public void should_watch_push_the_inserts_to_the_driver() throws Exception {
+    // Given
+    final MongoCollection<Document> collection = fongoRule.newMongoCollection();
+    MongoCursor<ChangeStreamDocument<Document>> cursor = collection.watch().iterator();
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        collection.insertOne(new Document("_id", 1));
+      }
+    });
+
+    // When
+    thread.start();
+    ChangeStreamDocument<Document> change = cursor.next();
+    thread.join();
+
+    // Then
+    assertThat(change.getOperationType()).isEqualTo(OperationType.INSERT);
+    assertThat(change.getFullDocument()).isEqualTo(new Document("_id", 1));
+    cursor.close();
+  }
+}
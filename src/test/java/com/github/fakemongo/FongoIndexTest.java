@@ -2,18 +2,28 @@ package com.github.fakemongo;
 
 import com.github.fakemongo.impl.Util;
 import com.github.fakemongo.impl.index.IndexAbstract;
+import com.github.fakemongo.impl.index.IndexBuild;
 import com.github.fakemongo.junit.FongoRule;
 import com.google.common.collect.Lists;
 import com.mongodb.*;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
 import org.assertj.core.api.Assertions;
+import org.bson.Document;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.RuleChain;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.junit.Assume.assumeFalse;
@@ -548,6 +558,27 @@ public class FongoIndexTest {
     assertEquals(6, objects.size());
   }
 
+  @Test
+  public void selectiveIndexMustBeUsedBeforeCompoundIndex() {
+    assumeFalse(fongoRule.isRealMongo());
+    DBCollection collection = fongoRule.newCollection();
+
+    collection.createIndex(new BasicDBObject("kind", 1).append("flag", 1));
+    collection.createIndex(new BasicDBObject("userId", 1));
+
+    for (int i = 0; i < 100; i++) {
+      collection.insert(new BasicDBObject("kind", i % 2).append("flag", i % 3 == 0).append("userId", i));
+    }
+
+    IndexAbstract indexKindFlag = getIndex(collection, "kind_1_flag_1");
+    IndexAbstract indexUserId = getIndex(collection, "userId_1");
+
+    List<DBObject> objects = collection.find(new BasicDBObject("kind", 0).append("flag", true).append("userId", 42)).toArray();
+    assertEquals(1, objects.size());
+    assertEquals(0, indexKindFlag.getLookupCount());
+    assertEquals(1, indexUserId.getLookupCount());
+  }
+
   @Test
   public void testFindOneOrData() {
     DBCollection collection = fongoRule.newCollection();
@@ -866,4 +897,168 @@ public class FongoIndexTest {
     Assertions.assertThat(collection2.getIndexInfo()).hasSize(2);
     // Assertions.assertThat(collection1.getIndexInfo()).hasSize(0);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void should_build_index_in_background() {
+    // Given
+    DBCollection collection = fongoRule.newCollection("coll");
+    for (int i = 0; i < 100; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("n", i % 10));
+    }
+
+    // When
+    collection.createIndex(new BasicDBObject("n", 1), new BasicDBObject("background", true));
+    collection.insert(new BasicDBObject("_id", 100).append("n", 42));
+
+    // Then
+    IndexAbstract index = getIndex(collection, "n_1");
+    Assertions.assertThat(index.size()).isEqualTo(101);
+    Assertions.assertThat(collection.find(new BasicDBObject("n", 42)).toArray()).hasSize(1);
+    Assertions.assertThat(collection.getIndexInfo().get(1).get("background")).isEqualTo(true);
+    Assertions.assertThat((List) fongoRule.getDB().command(new BasicDBObject("currentOp", 1)).get("inprog")).isEmpty();
+  }
+
+  @Test
+  public void should_not_build_unique_index_in_background_with_duplicates() {
+    ExpectedMongoException.expectCode(exception, 11000, MongoException.class);
+    DBCollection collection = fongoRule.newCollection("coll");
+    collection.insert(new BasicDBObject("n", 1));
+    collection.insert(new BasicDBObject("n", 1));
+
+    collection.createIndex(new BasicDBObject("n", 1), new BasicDBObject("background", true).append("unique", true));
+  }
+
+  @Test
+  public void should_not_build_an_index_being_built_in_background() {
+    // Given
+    final DBCollection[] collection = new DBCollection[1];
+    final MongoException[] concurrentBuild = new MongoException[1];
+    Fongo fongo = new Fongo("background") {
+      @Override
+      public void indexBuildStarted(IndexBuild build) {
+        super.indexBuildStarted(build);
+        try {
+          collection[0].createIndex(new BasicDBObject("n", 1), new BasicDBObject("name", "other"));
+        } catch (MongoException e) {
+          concurrentBuild[0] = e;
+        }
+      }
+    };
+    collection[0] = fongo.getDB("db").getCollection("coll");
+    collection[0].insert(new BasicDBObject("_id", 1).append("n", 1));
+
+    // When
+    collection[0].createIndex(new BasicDBObject("n", 1), new BasicDBObject("background", true));
+
+    // Then
+    Assertions.assertThat(concurrentBuild[0]).isNotNull();
+    Assertions.assertThat(concurrentBuild[0].getCode()).isEqualTo(12586);
+    Assertions.assertThat(collection[0].getIndexInfo()).hasSize(2);
+    Assertions.assertThat(collection[0].getIndexInfo().get(1).get("name")).isEqualTo("n_1");
+  }
+
+  @Test
+  public void should_index_only_the_objects_matching_the_partial_filter() {
+    // Given
+    DBCollection collection = fongoRule.newCollection("coll");
+    collection.createIndex(new BasicDBObject("a", 1), new BasicDBObject("partialFilterExpression", new BasicDBObject("status", "active")));
+
+    // When
+    collection.insert(new BasicDBObject("_id", 1).append("a", 1).append("status", "active"));
+    collection.insert(new BasicDBObject("_id", 2).append("a", 1).append("status", "done"));
+    collection.insert(new BasicDBObject("_id", 3).append("a", 2).append("status", "done"));
+    collection.update(new BasicDBObject("_id", 3), new BasicDBObject("$set", new BasicDBObject("status", "active")));
+    collection.update(new BasicDBObject("_id", 2), new BasicDBObject("$set", new BasicDBObject("a", 2)));
+
+    // Then
+    IndexAbstract index = getIndex(collection, "a_1");
+    Assertions.assertThat(index.size()).isEqualTo(2);
+    Assertions.assertThat(collection.find(new BasicDBObject("a", 1).append("status", "active")).toArray()).hasSize(1);
+    Assertions.assertThat(collection.find(new BasicDBObject("a", 2)).toArray()).hasSize(2);
+    Assertions.assertThat(collection.getIndexInfo().get(1).get("partialFilterExpression")).isEqualTo(new BasicDBObject("status", "active"));
+  }
+
+  @Test
+  public void should_allow_duplicates_outside_of_a_unique_partial_index() {
+    DBCollection collection = fongoRule.newCollection("coll");
+    collection.createIndex(new BasicDBObject("a", 1), new BasicDBObject("unique", true)
+        .append("partialFilterExpression", new BasicDBObject("status", "active")));
+
+    collection.insert(new BasicDBObject("a", 1).append("status", "done"));
+    collection.insert(new BasicDBObject("a", 1).append("status", "done"));
+    collection.insert(new BasicDBObject("a", 1).append("status", "active"));
+
+    ExpectedMongoException.expectCode(exception, 11000, MongoException.class);
+    collection.insert(new BasicDBObject("a", 1).append("status", "active"));
+  }
+
+  @Test
+  public void should_remove_expired_documents_of_a_ttl_index() {
+    // Given
+    Fongo fongo = fongoRule.getFongo();
+    fongo.setClock(Clock.fixed(Instant.ofEpochMilli(1000000000L), ZoneOffset.UTC));
+    DBCollection collection = fongoRule.newCollection("coll");
+    collection.createIndex(new BasicDBObject("createdAt", 1), new BasicDBObject("expireAfterSeconds", 60));
+    collection.insert(new BasicDBObject("_id", 1).append("createdAt", new Date(1000000000L - 120000)));
+    collection.insert(new BasicDBObject("_id", 2).append("createdAt", new Date(1000000000L - 30000)));
+    collection.insert(new BasicDBObject("_id", 3).append("createdAt", "not a date"));
+    collection.insert(new BasicDBObject("_id", 4));
+
+    // When
+    int removed = fongo.removeExpiredDocuments();
+
+    // Then
+    Assertions.assertThat(removed).isEqualTo(1);
+    Assertions.assertThat(collection.distinct("_id")).containsOnly(2, 3, 4);
+
+    // When
+    fongo.setClock(Clock.offset(fongo.getClock(), Duration.ofMinutes(1)));
+
+    // Then
+    Assertions.assertThat(fongo.removeExpiredDocuments()).isEqualTo(1);
+    Assertions.assertThat(collection.distinct("_id")).containsOnly(3, 4);
+    Assertions.assertThat(collection.getIndexInfo().get(1).get("expireAfterSeconds")).isEqualTo(60);
+  }
+
+  @Test
+  public void should_remove_expired_documents_of_a_ttl_index_created_with_index_options() {
+    // Given
+    Fongo fongo = fongoRule.getFongo();
+    fongo.setClock(Clock.fixed(Instant.ofEpochMilli(1000000000L), ZoneOffset.UTC));
+    MongoCollection<Document> collection = fongoRule.newMongoCollection("coll");
+    collection.createIndex(new Document("createdAt", 1), new IndexOptions().expireAfter(60L, TimeUnit.SECONDS));
+    collection.insertOne(new Document("_id", 1).append("createdAt", new Date(1000000000L - 30000)));
+
+    // When
+    fongo.setClock(Clock.offset(fongo.getClock(), Duration.ofMinutes(1)));
+    int removed = fongo.removeExpiredDocuments();
+
+    // Then
+    Assertions.assertThat(removed).isEqualTo(1);
+    Assertions.assertThat(collection.count()).isEqualTo(0L);
+    Document ttlIndex = null;
+    for (Document index : collection.listIndexes()) {
+      if ("createdAt_1".equals(index.getString("name"))) {
+        ttlIndex = index;
+      }
+    }
+    Assertions.assertThat(ttlIndex).isNotNull();
+    Assertions.assertThat(((Number) ttlIndex.get("expireAfterSeconds")).longValue()).isEqualTo(60L);
+  }
+
+  @Test
+  public void should_not_create_a_ttl_index_on_a_capped_collection() {
+    ExpectedMongoException.expectCode(exception, 67, MongoException.class);
+    DBCollection collection = fongoRule.getDB().createCollection("capped", new BasicDBObject("capped", true).append("size", 4096));
+
+    collection.createIndex(new BasicDBObject("createdAt", 1), new BasicDBObject("expireAfterSeconds", 60));
+  }
+
+  @Test
+  public void should_not_create_a_compound_ttl_index() {
+    ExpectedMongoException.expectCode(exception, 67, MongoException.class);
+    DBCollection collection = fongoRule.newCollection("coll");
+
+    collection.createIndex(new BasicDBObject("a", 1).append("b", 1), new BasicDBObject("expireAfterSeconds", 60));
+  }
+}
@@ -115,6 +115,50 @@ public class FongoTest {
     db.createCollection("coll", new BasicDBObject());
   }
 
+  @Test
+  public void should_capped_collection_evict_the_oldest_documents() {
+    DB db = fongoRule.getDB();
+    DBCollection coll = db.createCollection("capped", new BasicDBObject("capped", true).append("size", 4096).append("max", 3));
+    for (int i = 1; i <= 5; i++) {
+      coll.insert(new BasicDBObject("_id", i));
+    }
+
+    assertThat(coll.isCapped()).isTrue();
+    assertThat(coll.find().toArray()).containsExactly(new BasicDBObject("_id", 3), new BasicDBObject("_id", 4), new BasicDBObject("_id", 5));
+    assertThat(coll.findOne(new BasicDBObject("_id", 1))).isNull();
+  }
+
+  @Test
+  public void should_not_remove_from_capped_collection() {
+    DB db = fongoRule.getDB();
+    DBCollection coll = db.createCollection("capped", new BasicDBObject("capped", true).append("size", 4096));
+    coll.insert(new BasicDBObject("_id", 1));
+
+    exception.expect(WriteConcernException.class);
+    coll.remove(new BasicDBObject("_id", 1));
+  }
+
+  @Test
+  public void should_tailable_cursor_receive_the_inserted_documents() throws Exception {
+    DB db = fongoRule.getDB();
+    final DBCollection coll = db.createCollection("capped", new BasicDBObject("capped", true).append("size", 4096));
+    coll.insert(new BasicDBObject("_id", 1));
+    DBCursor cursor = coll.find().cursorType(CursorType.TailableAwait);
+    assertThat(cursor.next()).isEqualTo(new BasicDBObject("_id", 1));
+
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        coll.insert(new BasicDBObject("_id", 2));
+      }
+    });
+    thread.start();
+
+    assertThat(cursor.next()).isEqualTo(new BasicDBObject("_id", 2));
+    thread.join();
+    cursor.close();
+  }
+
   @Test
   public void testCountMethod() {
     DBCollection collection = newCollection();
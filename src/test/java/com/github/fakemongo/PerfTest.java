@@ -119,6 +119,21 @@ public class PerfTest {
     db.drop();
   }
 
+  @Benchmark
+  public void doitCountWithFilter() {
+    final DB db = createDB();
+    final DBCollection collection = db.getCollection("coll");
+
+    for (int k = 0; k < size; k++) {
+      collection.insert(new BasicDBObject("_id", k).append("n", new BasicDBObject("a", k % 10)).append("s", "s" + (k % 7)));
+    }
+    for (int k = 0; k < 100; k++) {
+      collection.count(new BasicDBObject("n.a", new BasicDBObject("$gte", k % 10)).append("s", "s3"));
+    }
+
+    db.dropDatabase();
+  }
+
   public static void main(String[] args) throws RunnerException {
     // Desactivate logback
     ch.qos.logback.classic.Logger log = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(FongoDBCollection.class);
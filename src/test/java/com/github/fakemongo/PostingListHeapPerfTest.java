@@ -0,0 +1,133 @@
+package com.github.fakemongo;
+
+import com.github.fakemongo.impl.index.IndexedList;
+import com.github.fakemongo.impl.index.PostingList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Heap of the objects of the keys of an index : {@link IndexedList} against {@link PostingList}, for keys of 1 (unique
+ * index), a few and many objects.
+ * <p/>
+ * main() prints the retained heap by object, the benchmarks the time to fill then empty the keys (run them with
+ * "-prof gc" for the allocations).
+ */
+@State(Scope.Benchmark)
+public class PostingListHeapPerfTest {
+  private static final int OBJECTS = 1000000;
+
+  @Param({"1", "4", "1000"})
+  public int objectsByKey;
+
+  private List<DBObject> objects;
+
+  @Setup
+  public void prepare() {
+    objects = createObjects(100000);
+  }
+
+  @Benchmark
+  public Object indexedList() {
+    final List<IndexedList<DBObject>> keys = new ArrayList<IndexedList<DBObject>>();
+    IndexedList<DBObject> values = null;
+    for (int i = 0; i < objects.size(); i++) {
+      if (i % objectsByKey == 0) {
+        values = new IndexedList<DBObject>(new ArrayList<DBObject>(Collections.singletonList(objects.get(i))));
+        keys.add(values);
+      } else {
+        values.add(objects.get(i));
+      }
+    }
+    for (int i = 0; i < objects.size(); i++) {
+      keys.get(i / objectsByKey).remove(objects.get(i));
+    }
+    return keys;
+  }
+
+  @Benchmark
+  public Object postingList() {
+    final List<PostingList<DBObject>> keys = new ArrayList<PostingList<DBObject>>();
+    PostingList<DBObject> values = null;
+    for (int i = 0; i < objects.size(); i++) {
+      if (i % objectsByKey == 0) {
+        values = new PostingList<DBObject>(objects.get(i));
+        keys.add(values);
+      } else {
+        values.add(objects.get(i));
+      }
+    }
+    for (int i = 0; i < objects.size(); i++) {
+      keys.get(i / objectsByKey).remove(objects.get(i));
+    }
+    return keys;
+  }
+
+  private static List<DBObject> createObjects(int count) {
+    final List<DBObject> objects = new ArrayList<DBObject>(count);
+    for (int i = 0; i < count; i++) {
+      objects.add(new BasicDBObject("_id", i));
+    }
+    return objects;
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void printHeap(int objectsByKey, List<DBObject> objects) {
+    final List<IndexedList<DBObject>> indexedLists = new ArrayList<IndexedList<DBObject>>(OBJECTS);
+    long before = usedHeap();
+    for (int i = 0; i < OBJECTS; i++) {
+      if (i % objectsByKey == 0) {
+        indexedLists.add(new IndexedList<DBObject>(new ArrayList<DBObject>(Collections.singletonList(objects.get(i)))));
+      } else {
+        indexedLists.get(indexedLists.size() - 1).add(objects.get(i));
+      }
+    }
+    final long indexedListHeap = usedHeap() - before;
+    indexedLists.clear();
+
+    final List<PostingList<DBObject>> postingLists = new ArrayList<PostingList<DBObject>>(OBJECTS);
+    before = usedHeap();
+    for (int i = 0; i < OBJECTS; i++) {
+      if (i % objectsByKey == 0) {
+        postingLists.add(new PostingList<DBObject>(objects.get(i)));
+      } else {
+        postingLists.get(postingLists.size() - 1).add(objects.get(i));
+      }
+    }
+    final long postingListHeap = usedHeap() - before;
+    postingLists.clear();
+
+    System.out.printf("%5d objects by key : IndexedList %6.1f bytes/object, PostingList %6.1f bytes/object%n",
+        objectsByKey, (double) indexedListHeap / OBJECTS, (double) postingListHeap / OBJECTS);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    final List<DBObject> objects = createObjects(OBJECTS);
+    for (int objectsByKey : new int[]{1, 2, 4, 16, 1000}) {
+      printHeap(objectsByKey, objects);
+    }
+
+    Options opt = new OptionsBuilder()
+        .include(PostingListHeapPerfTest.class.getSimpleName())
+        .forks(1)
+        .warmupIterations(5)
+        .measurementIterations(10)
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CappedBufferTest {
+
+  private static DBObject doc(int id) {
+    return new BasicDBObject("_id", id);
+  }
+
+  @Test
+  public void evictsTheOldestWhenMaxIsReached() {
+    CappedBuffer buffer = new CappedBuffer(1000, 2);
+    DBObject first = doc(1);
+
+    assertThat(buffer.add(first, 10)).isEmpty();
+    assertThat(buffer.add(doc(2), 10)).isEmpty();
+    assertThat(buffer.add(doc(3), 10)).containsExactly(first);
+    assertThat(buffer.size()).isEqualTo(2);
+    assertThat(buffer.first()).isEqualTo(1);
+    assertThat(buffer.next()).isEqualTo(3);
+  }
+
+  @Test
+  public void evictsTheOldestWhenSizeIsReached() {
+    CappedBuffer buffer = new CappedBuffer(100, 0);
+    buffer.add(doc(1), 40);
+    buffer.add(doc(2), 40);
+
+    assertThat(buffer.add(doc(3), 50)).containsExactly(doc(1), doc(2));
+    assertThat(buffer.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void readsFromAPositionInInsertionOrder() {
+    CappedBuffer buffer = new CappedBuffer(10000, 0);
+    for (int i = 0; i < 40; i++) {
+      buffer.add(doc(i), 10);
+    }
+    List<DBObject> result = new ArrayList<DBObject>();
+
+    assertThat(buffer.read(37, 10, result)).isEqualTo(40);
+    assertThat(result).containsExactly(doc(37), doc(38), doc(39));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void refusesToReadAnEvictedPosition() {
+    CappedBuffer buffer = new CappedBuffer(1000, 1);
+    buffer.add(doc(1), 10);
+    buffer.add(doc(2), 10);
+
+    buffer.read(0, 10, new ArrayList<DBObject>());
+  }
+
+  @Test
+  public void replacesAnUpdatedDocumentInPlace() {
+    CappedBuffer buffer = new CappedBuffer(1000, 0);
+    DBObject old = doc(1);
+    buffer.add(old, 10);
+    buffer.add(doc(2), 10);
+    DBObject updated = new BasicDBObject("_id", 1).append("a", 1);
+
+    buffer.replace(old, updated);
+    List<DBObject> result = new ArrayList<DBObject>();
+    buffer.read(0, 10, result);
+
+    assertThat(result).containsExactly(updated, doc(2));
+    assertThat(buffer.sizeOf(updated)).isEqualTo(10);
+    assertThat(buffer.sizeOf(old)).isEqualTo(-1);
+  }
+
+  @Test
+  public void awaitReturnsWhenADocumentIsAdded() throws Exception {
+    final CappedBuffer buffer = new CappedBuffer(1000, 0);
+    assertThat(buffer.await(0, 10)).isFalse();
+
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        buffer.add(doc(1), 10);
+      }
+    });
+    thread.start();
+
+    assertThat(buffer.await(0, 10000)).isTrue();
+    thread.join();
+  }
+}
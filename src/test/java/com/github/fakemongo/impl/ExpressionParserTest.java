@@ -386,6 +386,33 @@ public class ExpressionParserTest {
     ), results);
   }
 
+  @Test
+  public void testInOperatorWithMixedTypes() {
+    DBObject query = new BasicDBObject("a", new BasicDBObject("$in",
+        asList(2L, 3.5D, "x", Pattern.compile("^y"), new Binary("z".getBytes()), new BasicDBObject("b", 1))));
+    List<DBObject> results = doFilter(
+        query,
+        new BasicDBObject("a", 2),
+        new BasicDBObject("a", 2.0D),
+        new BasicDBObject("a", 3.5F),
+        new BasicDBObject("a", 3),
+        new BasicDBObject("a", "x"),
+        new BasicDBObject("a", "yes"),
+        new BasicDBObject("a", "z"),
+        new BasicDBObject("a", new BasicDBObject("b", 1)),
+        new BasicDBObject("a", new BasicDBObject("b", 2))
+    );
+    assertEquals(Arrays.<DBObject>asList(
+        new BasicDBObject("a", 2),
+        new BasicDBObject("a", 2.0D),
+        new BasicDBObject("a", 3.5F),
+        new BasicDBObject("a", "x"),
+        new BasicDBObject("a", "yes"),
+        new BasicDBObject("a", "z"),
+        new BasicDBObject("a", new BasicDBObject("b", 1))
+    ), results);
+  }
+
   @Test
   public void testInEmbeddedOperator() {
     DBObject query = new BasicDBObject("a.b", new BasicDBObject("$in", asList(2)));
@@ -1069,6 +1096,43 @@ public class ExpressionParserTest {
     assertTrue(results.isEmpty());
   }
 
+  @Test
+  public void testCompiledFiltersWithMixedTypes() {
+    DBObject query = new BasicDBObject("a", 3L).append("b.c", new BasicDBObject("$gte", 2).append("$lt", 4.5));
+    List<DBObject> results = doFilter(
+        query,
+        new BasicDBObject("a", 3).append("b", new BasicDBObject("c", 2L)),
+        new BasicDBObject("a", 3.0).append("b", new BasicDBObject("c", 4.4)),
+        new BasicDBObject("a", asList(1, 3)).append("b", asList(new BasicDBObject("c", 1), new BasicDBObject("c", 3))),
+        new BasicDBObject("a", "3").append("b", new BasicDBObject("c", 3)),
+        new BasicDBObject("a", 3).append("b", new BasicDBObject("c", 4.5)),
+        new BasicDBObject("a", 3).append("b", 3),
+        new BasicDBObject("a", 3).append("b", new BasicDBObject("c", null)),
+        new BasicDBObject("a", 3)
+    );
+    assertEquals(Arrays.<DBObject>asList(
+        new BasicDBObject("a", 3).append("b", new BasicDBObject("c", 2L)),
+        new BasicDBObject("a", 3.0).append("b", new BasicDBObject("c", 4.4)),
+        new BasicDBObject("a", asList(1, 3)).append("b", asList(new BasicDBObject("c", 1), new BasicDBObject("c", 3)))
+    ), results);
+  }
+
+  @Test
+  public void testAndFilterEvaluatesCheapFiltersFirst() {
+    ExpressionParser.AndFilter andFilter = new ExpressionParser.AndFilter();
+    Filter generic = new Filter() {
+      @Override
+      public boolean apply(DBObject o) {
+        return true;
+      }
+    };
+    andFilter.addFilter(generic);
+    Filter compiled = new ExpressionParser().buildFilter(new BasicDBObject("a", 1));
+    andFilter.addFilter(compiled);
+
+    assertEquals(Arrays.asList(compiled, generic), andFilter.filters);
+  }
+
   private void assertQuery(BasicDBObject query, List<DBObject> expected) {
     List<DBObject> results = doFilter(
         query,
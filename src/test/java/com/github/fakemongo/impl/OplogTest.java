@@ -0,0 +1,61 @@
+package com.github.fakemongo.impl;
+
+import com.github.fakemongo.Fongo;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.util.FongoJSON;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OplogTest {
+
+  private static DBObject json(String json) {
+    return (DBObject) FongoJSON.parse(json);
+  }
+
+  @Test
+  public void updateDescriptionGivesThePathsOfTheChangedFields() {
+    DBObject description = Oplog.updateDescription(json("{_id: 1, a: 1, b: {c: 1, d: 1}, e: [1], f: 1}"),
+        json("{_id: 1, a: 1, b: {c: 2, d: 1}, e: [1, 2], g: 1}"));
+
+    assertThat(description.get("updatedFields")).isEqualTo(json("{'b.c': 2, e: [1, 2], g: 1}"));
+    assertThat((List) description.get("removedFields")).containsExactly("f");
+  }
+
+  @Test
+  public void resumeTokenGivesBackThePosition() {
+    assertThat(Oplog.position(Oplog.resumeToken(42))).isEqualTo(42);
+  }
+
+  @Test(expected = MongoException.class)
+  public void invalidResumeTokenIsRefused() {
+    Oplog.position(new BasicDBObject("_data", "not a token"));
+  }
+
+  @Test
+  public void oldestEventsAreEvicted() {
+    Oplog oplog = new Oplog(new Fongo("oplog"), 2);
+    for (int i = 0; i < 3; i++) {
+      oplog.insert("db", "coll", new BasicDBObject("_id", i));
+    }
+    List<DBObject> events = new ArrayList<DBObject>();
+
+    assertThat(oplog.first()).isEqualTo(1);
+    assertThat(oplog.read(1, 10, events)).isEqualTo(3);
+    assertThat(events).hasSize(2);
+    assertThat(events.get(0).get("_id")).isEqualTo(Oplog.resumeToken(1));
+  }
+
+  @Test(expected = MongoException.class)
+  public void evictedPositionCannotBeRead() {
+    Oplog oplog = new Oplog(new Fongo("oplog"), 1);
+    oplog.insert("db", "coll", new BasicDBObject("_id", 1));
+    oplog.insert("db", "coll", new BasicDBObject("_id", 2));
+
+    oplog.read(0, 10, new ArrayList<DBObject>());
+  }
+}
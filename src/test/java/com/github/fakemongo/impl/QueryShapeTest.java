@@ -0,0 +1,30 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QueryShapeTest {
+
+  @Test
+  public void shapeKeepsFieldsAndOperatorsWithoutValues() {
+    BasicDBList in = new BasicDBList();
+    in.add(1);
+    in.add(2);
+    in.add(3);
+
+    assertThat(QueryShape.of(new BasicDBObject("a", 1).append("b", new BasicDBObject("$in", in)).append("c", null)))
+        .isEqualTo("{a:?,b:{$in:[?]},c:null}");
+    assertThat(QueryShape.of(new BasicDBObject("a", "x"))).isEqualTo(QueryShape.of(new BasicDBObject("a", 42)));
+  }
+
+  @Test
+  public void shapeOfEmbeddedDocumentIsNotTheShapeOfAValue() {
+    assertThat(QueryShape.of(new BasicDBObject("a", new BasicDBObject("b", 1))))
+        .isNotEqualTo(QueryShape.of(new BasicDBObject("a", 1)));
+    assertThat(QueryShape.of(new BasicDBObject("a:?", 1)))
+        .isNotEqualTo(QueryShape.of(new BasicDBObject("a", new BasicDBObject("?", 1))));
+  }
+}
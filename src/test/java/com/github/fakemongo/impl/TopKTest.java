@@ -0,0 +1,49 @@
+package com.github.fakemongo.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TopKTest {
+
+  private static final Comparator<String> FIRST_CHAR = new Comparator<String>() {
+    @Override
+    public int compare(String o1, String o2) {
+      return o1.charAt(0) - o2.charAt(0);
+    }
+  };
+
+  @Test
+  public void keepsTheSmallestElementsSorted() {
+    List<Integer> result = TopK.sorted(Arrays.asList(5, 3, 9, 1, 7, 2).iterator(), new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return o1.compareTo(o2);
+      }
+    }, 3);
+
+    assertThat(result).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  public void keepsIterationOrderOfEqualElements() {
+    List<String> result = TopK.sorted(Arrays.asList("b1", "a1", "b2", "a2", "a3", "c1").iterator(), FIRST_CHAR, 4);
+
+    assertThat(result).containsExactly("a1", "a2", "a3", "b1");
+  }
+
+  @Test
+  public void returnsEverythingWhenKIsGreaterThanSize() {
+    List<String> result = TopK.sorted(Arrays.asList("c1", "a1", "b1").iterator(), FIRST_CHAR, 10);
+
+    assertThat(result).containsExactly("a1", "b1", "c1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveK() {
+    new TopK<String>(FIRST_CHAR, 0);
+  }
+}
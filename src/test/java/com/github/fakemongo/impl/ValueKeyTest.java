@@ -0,0 +1,46 @@
+package com.github.fakemongo.impl;
+
+import com.mongodb.BasicDBObject;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ValueKeyTest {
+
+  @Test
+  public void numbersAreNormalized() {
+    assertThat(ValueKey.of(1)).isEqualTo(ValueKey.of(1L)).isEqualTo(ValueKey.of(1.0D)).isEqualTo(ValueKey.of(1.0F));
+    assertThat(ValueKey.of(1).hashCode()).isEqualTo(ValueKey.of(1.0D).hashCode());
+    assertThat(ValueKey.of(0.5D)).isEqualTo(ValueKey.of(0.5F));
+    assertThat(ValueKey.of(0.1D)).isEqualTo(ValueKey.of(0.1F));
+    assertThat(ValueKey.of(1e20D)).isEqualTo(ValueKey.of(1e20F));
+    assertThat(ValueKey.of(1)).isNotEqualTo(ValueKey.of(1.5D));
+    assertThat(ValueKey.of(Long.MAX_VALUE)).isNotEqualTo(ValueKey.of(Long.MAX_VALUE - 1));
+  }
+
+  @Test
+  public void scalarsAreKeyedByValueAndType() {
+    ObjectId id = new ObjectId();
+    assertThat(ValueKey.of(new ObjectId(id.toHexString()))).isEqualTo(ValueKey.of(id));
+    assertThat(ValueKey.of(new Date(42))).isEqualTo(ValueKey.of(new Date(42)));
+    assertThat(ValueKey.of(new Date(42))).isNotEqualTo(ValueKey.of(42L));
+    assertThat(ValueKey.of("1")).isNotEqualTo(ValueKey.of(1));
+    assertThat(ValueKey.of(true)).isNotEqualTo(ValueKey.of(1));
+    assertThat(ValueKey.of(null)).isEqualTo(ValueKey.of(null));
+  }
+
+  @Test
+  public void otherValuesHaveNoKey() {
+    assertThat(ValueKey.of(new BasicDBObject("a", 1))).isNull();
+    assertThat(ValueKey.of(new Binary("a".getBytes()))).isNull();
+    assertThat(ValueKey.of(BigDecimal.ONE)).isNull();
+    assertThat(ValueKey.of(new Timestamp(42))).isNull();
+    assertThat(ValueKey.of(Double.NaN)).isNull();
+    assertThat(ValueKey.of(Double.POSITIVE_INFINITY)).isNull();
+  }
+}
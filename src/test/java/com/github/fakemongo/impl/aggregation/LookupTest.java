@@ -316,4 +316,103 @@ public class LookupTest {
     }
   }
 
-}
\ No newline at end of file
+  @Test
+  public void mustProbeTheIndexOfTheForeignFieldForFewLocalValues() throws Exception {
+    DBCollection leftCollection = fongoRule.newCollection();
+    fongoRule.insertJSON(leftCollection, "[{ \"_id\" : \"p1\", \"child\" : 3 }, { \"_id\" : \"p2\", \"child\" : 1000 }]");
+    DBCollection rightCollection = fongoRule.newCollection();
+    rightCollection.createIndex(fongoRule.parseDBObject("{ \"parent.id\" : 1 }"));
+    for (int i = 0; i < 100; i++) {
+      rightCollection.insert(fongoRule.parseDBObject("{ \"_id\" : " + i + ", \"parent\" : { \"id\" : " + (i % 10) + " } }"));
+    }
+    DBObject lookup = fongoRule.parseDBObject("{$lookup : {\n" +
+        "        \"from\" :\"" + rightCollection.getName() + "\"," +
+        "        \"localField\" : \"child\",\n" +
+        "        \"foreignField\" : \"parent.id\",\n" +
+        "        \"as\" : \"children\"\n" +
+        "    }\n" +
+        "}");
+
+    AggregationOutput output = leftCollection.aggregate(asList(lookup));
+
+    List<DBObject> result = (List<DBObject>) output.results();
+    Assertions.assertThat(result).hasSize(2);
+    Assertions.assertThat((BasicDBList) result.get(0).get("children")).hasSize(10);
+    for (Object child : (BasicDBList) result.get(0).get("children")) {
+      Assertions.assertThat(((Integer) ((DBObject) child).get("_id")) % 10).isEqualTo(3);
+    }
+    Assertions.assertThat((BasicDBList) result.get(1).get("children")).isEmpty();
+  }
+
+  @Test
+  public void mustJoinTheElementsOfALocalArrayOnce() throws Exception {
+    DBCollection leftCollection = fongoRule.newCollection();
+    fongoRule.insertJSON(leftCollection, "[{ \"_id\" : \"p1\", \"children\" : [\"s1\", \"s2\", \"s1\"] }]");
+    DBCollection rightCollection = fongoRule.newCollection();
+    fongoRule.insertJSON(rightCollection, "[{ \"_id\" : \"s1\" }, { \"_id\" : \"s2\" }, { \"_id\" : \"s3\" }]");
+    DBObject lookup = fongoRule.parseDBObject("{$lookup : {\n" +
+        "        \"from\" :\"" + rightCollection.getName() + "\"," +
+        "        \"localField\" : \"children\",\n" +
+        "        \"foreignField\" : \"_id\",\n" +
+        "        \"as\" : \"items\"\n" +
+        "    }\n" +
+        "}");
+
+    AggregationOutput output = leftCollection.aggregate(asList(lookup));
+
+    List<DBObject> result = (List<DBObject>) output.results();
+    Assertions.assertThat(result).hasSize(1);
+    Assertions.assertThat((BasicDBList) result.get(0).get("items")).containsExactly(fongoRule.parseDBObject("{ \"_id\" : \"s1\" }"),
+        fongoRule.parseDBObject("{ \"_id\" : \"s2\" }"));
+  }
+
+  @Test
+  public void mustReturnTheChildrenInTheOrderOfTheForeignCollection() throws Exception {
+    DBCollection leftCollection = fongoRule.newCollection();
+    fongoRule.insertJSON(leftCollection, "[{ \"_id\" : \"p1\", \"children\" : [\"s2\", \"s1\"] }]");
+    DBCollection rightCollection = fongoRule.newCollection();
+    fongoRule.insertJSON(rightCollection, "[{ \"_id\" : \"s1\" }, { \"_id\" : \"s2\" }, { \"_id\" : \"s3\" }]");
+    DBObject lookup = fongoRule.parseDBObject("{$lookup : {\n" +
+        "        \"from\" :\"" + rightCollection.getName() + "\"," +
+        "        \"localField\" : \"children\",\n" +
+        "        \"foreignField\" : \"_id\",\n" +
+        "        \"as\" : \"items\"\n" +
+        "    }\n" +
+        "}");
+
+    AggregationOutput output = leftCollection.aggregate(asList(lookup));
+
+    List<DBObject> result = (List<DBObject>) output.results();
+    Assertions.assertThat(result).hasSize(1);
+    Assertions.assertThat((BasicDBList) result.get(0).get("items")).containsExactly(fongoRule.parseDBObject("{ \"_id\" : \"s1\" }"),
+        fongoRule.parseDBObject("{ \"_id\" : \"s2\" }"));
+  }
+
+  @Test
+  public void mustReturnTheChildrenProbedByTheIndexInTheOrderOfTheForeignCollection() throws Exception {
+    DBCollection leftCollection = fongoRule.newCollection();
+    fongoRule.insertJSON(leftCollection, "[{ \"_id\" : \"p1\", \"children\" : [7, 3] }]");
+    DBCollection rightCollection = fongoRule.newCollection();
+    rightCollection.createIndex(fongoRule.parseDBObject("{ \"parent\" : 1 }"));
+    for (int i = 0; i < 100; i++) {
+      rightCollection.insert(fongoRule.parseDBObject("{ \"_id\" : " + i + ", \"parent\" : " + (i % 10) + " }"));
+    }
+    DBObject lookup = fongoRule.parseDBObject("{$lookup : {\n" +
+        "        \"from\" :\"" + rightCollection.getName() + "\"," +
+        "        \"localField\" : \"children\",\n" +
+        "        \"foreignField\" : \"parent\",\n" +
+        "        \"as\" : \"items\"\n" +
+        "    }\n" +
+        "}");
+
+    AggregationOutput output = leftCollection.aggregate(asList(lookup));
+
+    List<DBObject> result = (List<DBObject>) output.results();
+    List<Object> ids = new ArrayList<Object>();
+    for (Object child : (BasicDBList) result.get(0).get("items")) {
+      ids.add(((DBObject) child).get("_id"));
+    }
+    Assertions.assertThat(ids).containsExactly(3, 7, 13, 17, 23, 27, 33, 37, 43, 47, 53, 57, 63, 67, 73, 77, 83, 87, 93, 97);
+  }
+
+}
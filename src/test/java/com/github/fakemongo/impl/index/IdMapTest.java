@@ -0,0 +1,71 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdMapTest {
+
+  @Test
+  public void keysAreFoundByTheirId() {
+    IdMap<String> map = new IdMap<String>();
+    ObjectId objectId = new ObjectId();
+    map.put(key(1), "int");
+    map.put(key(1L), "long");
+    map.put(key(objectId), "objectId");
+    map.put(key("a"), "string");
+    map.put(key(new BasicDBObject("a", 1)), "document");
+
+    assertThat(map.size()).isEqualTo(5);
+    assertThat(map.getById(1)).isEqualTo("int");
+    assertThat(map.getById(1L)).isEqualTo("long");
+    assertThat(map.getById(new ObjectId(objectId.toHexString()))).isEqualTo("objectId");
+    assertThat(map.getById("a")).isEqualTo("string");
+    assertThat(map.getById(2)).isNull();
+    assertThat(map.get(key(1))).isEqualTo("int");
+    assertThat(map.get(key(new BasicDBObject("a", 1)))).isEqualTo("document");
+    assertThat(map.containsKey(key(1.0D))).isFalse();
+  }
+
+  @Test
+  public void orderOfInsertionIsKeptThroughRemovesAndRebuilds() {
+    IdMap<Integer> map = new IdMap<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(key(i), i);
+    }
+    for (int i = 0; i < 1000; i += 2) {
+      assertThat(map.remove(key(i))).isEqualTo(i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      map.put(key(1000 + i), 1000 + i);
+    }
+    // Replacing a value keeps its place.
+    map.put(key(1), -1);
+
+    List<Integer> expected = new ArrayList<Integer>();
+    expected.add(-1);
+    for (int i = 3; i < 1000; i += 2) {
+      expected.add(i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      expected.add(1000 + i);
+    }
+    assertThat(new ArrayList<Integer>(map.values())).isEqualTo(expected);
+    assertThat(map.size()).isEqualTo(1500);
+    assertThat(map.getById(0)).isNull();
+    assertThat(map.getById(1999)).isEqualTo(1999);
+
+    map.clear();
+    assertThat(map).isEmpty();
+    assertThat(map.getById(1)).isNull();
+  }
+
+  private static DBObject key(Object id) {
+    return new BasicDBObject("_id", id);
+  }
+}
@@ -0,0 +1,67 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexBuildTest {
+
+  @Test
+  public void writesDuringTheBuildAreReplayed() {
+    final DBObject a = new BasicDBObject("_id", 1).append("n", "a");
+    final DBObject b = new BasicDBObject("_id", 2).append("n", "b");
+    final DBObject c = new BasicDBObject("_id", 3).append("n", "c");
+    final IndexBuild build = new IndexBuild(1, "db.coll", new Index("n_1", new BasicDBObject("n", 1), false, false),
+        new BasicDBObject("name", "n_1"), Arrays.asList(a, b, c));
+
+    assertThat(build.build()).isEmpty();
+    final DBObject newB = new BasicDBObject("_id", 2).append("n", "z");
+    build.logAdd(newB, b);
+    build.logRemove(c);
+    final DBObject d = new BasicDBObject("_id", 4).append("n", "d");
+    build.logAdd(d, null);
+    assertThat(build.replay()).isEmpty();
+
+    final IndexAbstract index = build.getIndex();
+    assertThat(index.size()).isEqualTo(3);
+    assertThat(index.retrieveObjects(new BasicDBObject("n", "b"))).isEmpty();
+    assertThat(index.retrieveObjects(new BasicDBObject("n", "c"))).isEmpty();
+    assertThat(index.retrieveObjects(new BasicDBObject("n", "z"))).containsExactly(newB);
+    assertThat(index.retrieveObjects(new BasicDBObject("n", "d"))).containsExactly(d);
+  }
+
+  @Test
+  public void duplicateKeyDuringTheBuildFailsTheBuild() {
+    final IndexBuild build = new IndexBuild(1, "db.coll", new Index("n_1", new BasicDBObject("n", 1), true, false),
+        new BasicDBObject("name", "n_1"), Arrays.<DBObject>asList(new BasicDBObject("_id", 1).append("n", 1)));
+
+    assertThat(build.build()).isEmpty();
+    build.logAdd(new BasicDBObject("_id", 2).append("n", 1), null);
+    assertThat(build.replay()).isNotEmpty();
+  }
+
+  @Test
+  public void progressIsReported() {
+    final List<DBObject> objects = new ArrayList<DBObject>();
+    for (int i = 0; i < 4; i++) {
+      objects.add(new BasicDBObject("_id", i).append("n", i));
+    }
+    final IndexBuild build = new IndexBuild(7, "db.coll", new Index("n_1", new BasicDBObject("n", 1), false, false),
+        new BasicDBObject("name", "n_1"), objects);
+
+    DBObject operation = build.toDBObject();
+    assertThat(operation.get("opid")).isEqualTo(7L);
+    assertThat(operation.get("ns")).isEqualTo("db.coll");
+    assertThat(operation.get("progress")).isEqualTo(new BasicDBObject("done", 0L).append("total", 4L));
+
+    build.build();
+    operation = build.toDBObject();
+    assertThat(operation.get("progress")).isEqualTo(new BasicDBObject("done", 4L).append("total", 4L));
+    assertThat((String) operation.get("msg")).endsWith("4/4 100%");
+  }
+}
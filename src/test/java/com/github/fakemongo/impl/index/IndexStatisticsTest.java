@@ -0,0 +1,48 @@
+package com.github.fakemongo.impl.index;
+
+import java.util.Date;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class IndexStatisticsTest {
+
+  @Test
+  public void estimateRangeOfNumbers() {
+    IndexStatistics statistics = new IndexStatistics();
+    for (int i = 0; i < 1000; i++) {
+      statistics.add(i);
+    }
+
+    assertThat(statistics.estimate(100, 199)).isEqualTo(100D, offset(20D));
+    assertThat(statistics.estimate(null, 499)).isEqualTo(500D, offset(20D));
+    assertThat(statistics.estimate(900, null)).isEqualTo(100D, offset(20D));
+    assertThat(statistics.estimate(2000, null)).isEqualTo(0D);
+  }
+
+  @Test
+  public void estimateFollowsRemovesAndValuesBelowTheRange() {
+    IndexStatistics statistics = new IndexStatistics();
+    for (int i = 0; i < 100; i++) {
+      statistics.add(i);
+      statistics.add(-i * 1000D);
+    }
+    for (int i = 0; i < 50; i++) {
+      statistics.remove(i);
+    }
+
+    assertThat(statistics.estimate(null, null)).isEqualTo(150D);
+    assertThat(statistics.estimate(null, -50000)).isEqualTo(50D, offset(5D));
+  }
+
+  @Test
+  public void estimateIsUnknownForStrings() {
+    IndexStatistics statistics = new IndexStatistics();
+    statistics.add(new Date(1000));
+    statistics.add("a");
+
+    assertThat(statistics.estimate("a", "b")).isEqualTo(-1D);
+    assertThat(statistics.estimate(new Date(0), new Date(2000))).isEqualTo(1D);
+  }
+}
@@ -2,10 +2,16 @@ package com.github.fakemongo.impl.index;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.junit.Test;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
@@ -155,4 +161,188 @@ public class IndexTest {
     final String fithLevelValue = (String) topLevelObject.get(FIFTH_LEVEL_KEY);
     assertThat(fithLevelValue).isEqualTo(FIFTH_LEVEL_VALUE);
   }
+
+  /**
+   * Test {@link Index#retrieveObjects(DBObject)} only walks the bounds of the query on an ordered index.
+   */
+  @Test
+  public void testRetrieveObjectsWithRangeOnCompoundIndex() {
+    final Index iut = new Index(INDEX_NAME, new BasicDBObject("a", 1).append("b", 1), !UNIQUE, SPARSE);
+    for (int i = 0; i < 10; i++) {
+      iut.addOrUpdate(new BasicDBObject(ID_KEY, i).append("a", i / 2).append("b", i), null);
+    }
+
+    final DBObject query = new BasicDBObject("a", new BasicDBObject("$gt", 1).append("$lte", 3)).append("b", new BasicDBObject("$ne", 5));
+
+    assertThat(candidateCount(iut, query)).isEqualTo(6);
+    assertThat(ids(iut.retrieveObjects(query))).containsExactly(4, 6, 7);
+    assertThat(ids(iut.retrieveObjects(new BasicDBObject("a", 4).append("b", 9)))).containsExactly(9);
+  }
+
+  /**
+   * Test {@link Index#retrieveObjects(DBObject)} with bounds on a descending index.
+   */
+  @Test
+  public void testRetrieveObjectsWithRangeOnDescendingIndex() {
+    final Index iut = new Index(INDEX_NAME, new BasicDBObject("a", -1), !UNIQUE, SPARSE);
+    for (int i = 0; i < 10; i++) {
+      iut.addOrUpdate(new BasicDBObject(ID_KEY, i).append("a", i), null);
+    }
+
+    assertThat(ids(iut.retrieveObjects(new BasicDBObject("a", new BasicDBObject("$gte", 7))))).containsExactly(9, 8, 7);
+    assertThat(ids(iut.retrieveObjects(new BasicDBObject("a", new BasicDBObject("$lt", 2))))).containsExactly(1, 0);
+    assertThat(iut.retrieveObjects(new BasicDBObject("a", new BasicDBObject("$gt", 5).append("$lt", 3)))).isEmpty();
+  }
+
+  /**
+   * Test {@link Index#retrieveObjects(DBObject)} scans the whole index when a key holds a list.
+   */
+  @Test
+  public void testRetrieveObjectsWithRangeOnMultiKeyIndex() {
+    final Index iut = new Index(INDEX_NAME, new BasicDBObject("a", 1), !UNIQUE, SPARSE);
+    final BasicDBList list = new BasicDBList();
+    list.addAll(Arrays.asList(1, 20));
+    iut.addOrUpdate(new BasicDBObject(ID_KEY, 1).append("a", list), null);
+    iut.addOrUpdate(new BasicDBObject(ID_KEY, 2).append("a", 5), null);
+
+    assertThat(ids(iut.retrieveObjects(new BasicDBObject("a", new BasicDBObject("$gte", 10))))).containsExactly(1);
+
+    iut.remove(new BasicDBObject(ID_KEY, 1).append("a", list));
+    final DBObject query = new BasicDBObject("a", new BasicDBObject("$gte", 10));
+    assertThat(candidateCount(iut, query)).isEqualTo(0);
+  }
+
+  /**
+   * Test {@link Index#retrieveObjects(DBObject)} probes each value of a $in, in the order of the index.
+   */
+  @Test
+  public void testRetrieveObjectsWithInOnOrderedIndex() {
+    final Index iut = new Index(INDEX_NAME, new BasicDBObject("a", -1), !UNIQUE, SPARSE);
+    for (int i = 0; i < 10; i++) {
+      iut.addOrUpdate(new BasicDBObject(ID_KEY, i).append("a", i % 5), null);
+    }
+
+    final DBObject query = new BasicDBObject("a", new BasicDBObject("$in", Arrays.asList(1, 4, 1L, 42)));
+
+    assertThat(iut.candidateEntries(query)).hasSize(3);
+    assertThat(ids(iut.retrieveObjects(query))).containsExactly(4, 9, 1, 6);
+  }
+
+  /**
+   * Test {@link Index#retrieveObjects(DBObject)} gets each value of a $in from the _id index.
+   */
+  @Test
+  public void testRetrieveObjectsWithInOnIdIndex() {
+    final Index iut = new Index(INDEX_NAME, DEFAULT_ID_KEY, UNIQUE, SPARSE);
+    for (String id : Arrays.asList("c", "a", "d", "b")) {
+      iut.addOrUpdate(new BasicDBObject(ID_KEY, id), null);
+    }
+
+    final DBObject query = new BasicDBObject(ID_KEY, new BasicDBObject("$in", Arrays.asList("d", "b", "z", "b")));
+
+    assertThat(candidateCount(iut, query)).isEqualTo(2);
+    assertThat(ids(iut.retrieveObjects(query))).containsExactly("b", "d");
+    // Numbers can't be found by hash.
+    assertThat(iut.candidateEntries(new BasicDBObject(ID_KEY, new BasicDBObject("$in", Arrays.asList(1, 2))))).hasSize(1);
+  }
+
+  /**
+   * Test {@link Index#sortDirection(DBObject)} : the keys are ordered in the direction of the first field.
+   */
+  @Test
+  public void testSortDirection() {
+    final Index iut = new Index(INDEX_NAME, new BasicDBObject("a", -1).append("b", 1), !UNIQUE, SPARSE);
+
+    assertThat(iut.sortDirection(new BasicDBObject("a", -1))).isEqualTo(1);
+    assertThat(iut.sortDirection(new BasicDBObject("a", -1).append("b", -1))).isEqualTo(1);
+    assertThat(iut.sortDirection(new BasicDBObject("a", 1).append("b", 1))).isEqualTo(-1);
+    assertThat(iut.sortDirection(new BasicDBObject("a", -1).append("b", 1))).isEqualTo(0);
+    assertThat(iut.sortDirection(new BasicDBObject("b", 1))).isEqualTo(0);
+    assertThat(iut.sortDirection(new BasicDBObject("a", 1).append("b", 1).append("c", 1))).isEqualTo(0);
+  }
+
+  /**
+   * Test {@link Index#addAll(Iterable)} builds the same index than adding the objects one by one.
+   */
+  @Test
+  public void testAddAllBuildsTheSameIndex() {
+    final List<DBObject> objects = new ArrayList<DBObject>();
+    for (int i = 0; i < 5000; i++) {
+      final BasicDBObject object = new BasicDBObject(ID_KEY, i).append("a", (i * 7) % 100).append("b", i % 3);
+      if (i % 10 == 0) {
+        object.removeField("a");
+      }
+      objects.add(object);
+    }
+    final Index bulk = new Index(INDEX_NAME, new BasicDBObject("a", 1).append("b", -1), !UNIQUE, SPARSE);
+    final Index oneByOne = new Index(INDEX_NAME, new BasicDBObject("a", 1).append("b", -1), !UNIQUE, SPARSE);
+    assertThat(bulk.addAll(objects)).isEmpty();
+    for (DBObject object : objects) {
+      if (oneByOne.canHandle(object)) {
+        oneByOne.addOrUpdate(object, null);
+      }
+    }
+
+    assertThat(bulk.size()).isEqualTo(oneByOne.size()).isEqualTo(4500);
+    assertThat(ids(bulk.values())).isEqualTo(ids(oneByOne.values()));
+    assertThat(bulk.getStatistics().getDistinctValues()).isEqualTo(oneByOne.getStatistics().getDistinctValues());
+    final DBObject query = new BasicDBObject("a", new BasicDBObject("$gte", 10).append("$lt", 20)).append("b", 1);
+    assertThat(ids(bulk.retrieveObjects(query))).isEqualTo(ids(oneByOne.retrieveObjects(query)));
+  }
+
+  /**
+   * Test {@link Index#addAll(Iterable)} returns the duplicate key of a unique index.
+   */
+  @Test
+  public void testAddAllWithDuplicateKey() {
+    final Index iut = new Index(INDEX_NAME, new BasicDBObject("a", 1), UNIQUE, SPARSE);
+    final List<DBObject> objects = new ArrayList<DBObject>();
+    for (int i = 0; i < 3000; i++) {
+      objects.add(new BasicDBObject(ID_KEY, i).append("a", i == 2999 ? 42 : i));
+    }
+
+    assertThat(iut.addAll(objects)).containsExactly(Arrays.<Object>asList(42));
+  }
+
+  /**
+   * Test the _id index built by {@link IndexFactory} : lookups by id, order of insertion, uniqueness.
+   */
+  @Test
+  public void testIdIndex() {
+    final IndexAbstract iut = IndexFactory.create(INDEX_NAME, DEFAULT_ID_KEY, UNIQUE, SPARSE);
+    assertThat(iut).isInstanceOf(IdIndex.class);
+    final DBObject first = new BasicDBObject(ID_KEY, 3L).append("a", 1);
+    final DBObject second = new BasicDBObject(ID_KEY, 1).append("a", 2);
+    final DBObject third = new BasicDBObject(ID_KEY, new BasicDBObject("x", 1));
+    iut.addOrUpdate(first, null);
+    iut.addOrUpdate(second, null);
+    iut.addOrUpdate(third, null);
+
+    assertThat(iut.retrieveObjects(new BasicDBObject(ID_KEY, 1))).containsExactly(second);
+    assertThat(iut.retrieveObjects(new BasicDBObject(ID_KEY, 3L))).containsExactly(first);
+    assertThat(iut.retrieveObjects(new BasicDBObject(ID_KEY, new BasicDBObject("x", 1)))).containsExactly(third);
+    assertThat(iut.values()).containsExactly(first, second, third);
+    assertThat(iut.checkAddOrUpdate(new BasicDBObject(ID_KEY, 1), null)).isNotEmpty();
+    assertThat(iut.checkAddOrUpdate(new BasicDBObject(ID_KEY, 1).append("a", 3), second)).isEmpty();
+
+    iut.remove(second);
+    assertThat(iut.retrieveObjects(new BasicDBObject(ID_KEY, 1))).isEmpty();
+    assertThat(iut.size()).isEqualTo(2);
+  }
+
+  private static int candidateCount(Index index, DBObject query) {
+    int count = 0;
+    for (Map<DBObject, PostingList<DBObject>> entries : index.candidateEntries(query)) {
+      count += entries.size();
+    }
+    return count;
+  }
+
+  private static List<Object> ids(Collection<DBObject> objects) {
+    final List<Object> ids = new ArrayList<Object>();
+    for (DBObject object : objects) {
+      ids.add(object.get(ID_KEY));
+    }
+    return ids;
+  }
 }
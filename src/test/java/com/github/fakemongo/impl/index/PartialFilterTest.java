@@ -0,0 +1,63 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.util.FongoJSON;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartialFilterTest {
+
+  private static DBObject json(String json) {
+    return (DBObject) FongoJSON.parse(json);
+  }
+
+  @Test
+  public void matchesTheObjectsOfTheIndex() {
+    PartialFilter filter = new PartialFilter(json("{status: 'active', 'a.b': {$exists: true}}"));
+
+    assertThat(filter.matches(json("{status: 'active', a: {b: 1}}"))).isTrue();
+    assertThat(filter.matches(json("{status: 'active'}"))).isFalse();
+    assertThat(filter.matches(json("{status: 'done', a: {b: 1}}"))).isFalse();
+  }
+
+  @Test
+  public void equalityIsImpliedBySameValue() {
+    PartialFilter filter = new PartialFilter(json("{status: 'active'}"));
+
+    assertThat(filter.isImpliedBy(json("{status: 'active', n: 1}"))).isTrue();
+    assertThat(filter.isImpliedBy(json("{status: {$in: ['active']}}"))).isTrue();
+    assertThat(filter.isImpliedBy(json("{status: {$in: ['active', 'done']}}"))).isFalse();
+    assertThat(filter.isImpliedBy(json("{status: 'done'}"))).isFalse();
+    assertThat(filter.isImpliedBy(json("{n: 1}"))).isFalse();
+  }
+
+  @Test
+  public void rangeIsImpliedByTighterBounds() {
+    PartialFilter filter = new PartialFilter(json("{$and: [{n: {$gt: 5}}, {n: {$lte: 10}}]}"));
+
+    assertThat(filter.isImpliedBy(json("{n: 7}"))).isTrue();
+    assertThat(filter.isImpliedBy(json("{n: {$gte: 6, $lt: 10}}"))).isTrue();
+    assertThat(filter.isImpliedBy(json("{n: {$gt: 5, $lte: 10}}"))).isTrue();
+    assertThat(filter.isImpliedBy(json("{n: {$gte: 5, $lte: 10}}"))).isFalse();
+    assertThat(filter.isImpliedBy(json("{n: {$gt: 6}}"))).isFalse();
+    assertThat(filter.isImpliedBy(json("{n: 5}"))).isFalse();
+    assertThat(filter.isImpliedBy(json("{n: {$gt: 'a', $lt: 'b'}}"))).isFalse();
+  }
+
+  @Test
+  public void existsIsImpliedByAValue() {
+    PartialFilter filter = new PartialFilter(json("{n: {$exists: true}}"));
+
+    assertThat(filter.isImpliedBy(json("{n: 1}"))).isTrue();
+    assertThat(filter.isImpliedBy(json("{n: {$gt: 1}}"))).isTrue();
+    assertThat(filter.isImpliedBy(json("{n: null}"))).isFalse();
+  }
+
+  @Test(expected = MongoException.class)
+  public void unsupportedExpressionIsRefused() {
+    new PartialFilter(new BasicDBObject("n", new BasicDBObject("$ne", 1)));
+  }
+}
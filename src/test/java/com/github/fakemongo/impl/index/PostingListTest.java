@@ -0,0 +1,87 @@
+package com.github.fakemongo.impl.index;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostingListTest {
+
+  @Test
+  public void elementsAreInTheOrderOfInsertion() {
+    PostingList<Integer> list = new PostingList<Integer>(3);
+    list.add(1);
+    list.add(2);
+
+    assertThat(list.getElements()).containsExactly(3, 1, 2);
+    assertThat(list.getElements().get(2)).isEqualTo(2);
+    assertThat(list.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void removeOnlyOneOccurrence() {
+    PostingList<String> list = new PostingList<String>();
+    list.add("a");
+    list.add("b");
+    list.add("a");
+
+    list.remove("a");
+    assertThat(list.getElements()).containsExactly("b", "a");
+    list.remove("c");
+    assertThat(list.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void elementsAreFoundByIdentityThenByEquality() {
+    DBObject first = new BasicDBObject("_id", 1);
+    DBObject same = new BasicDBObject("_id", 1);
+    PostingList<DBObject> list = new PostingList<DBObject>();
+    for (int i = 0; i < 100; i++) {
+      list.add(i == 50 ? first : new BasicDBObject("_id", 1000 + i));
+    }
+
+    assertThat(list.contains(first)).isTrue();
+    assertThat(list.contains(same)).isTrue();
+    assertThat(list.contains(new BasicDBObject("_id", 2))).isFalse();
+    assertThat(list.contains(null)).isFalse();
+    list.remove(same);
+    assertThat(list.contains(first)).isFalse();
+    assertThat(list.size()).isEqualTo(99);
+  }
+
+  @Test
+  public void largeListKeepsTheOrderThroughRemovesAndGrowths() {
+    List<DBObject> objects = new ArrayList<DBObject>();
+    PostingList<DBObject> list = new PostingList<DBObject>();
+    for (int i = 0; i < 1000; i++) {
+      DBObject object = new BasicDBObject("_id", i);
+      objects.add(object);
+      list.add(object);
+    }
+    List<DBObject> expected = new ArrayList<DBObject>();
+    for (int i = 0; i < 1000; i++) {
+      if (i % 3 == 0) {
+        list.remove(objects.get(i));
+      } else {
+        expected.add(objects.get(i));
+      }
+    }
+    assertThat(list.getElements()).isEqualTo(expected);
+    assertThat(list.getElements().get(1)).isSameAs(objects.get(2));
+
+    for (int i = 1000; i < 2000; i++) {
+      DBObject object = new BasicDBObject("_id", i);
+      expected.add(object);
+      list.add(object);
+    }
+    assertThat(list.getElements()).isEqualTo(expected);
+    assertThat(list.size()).isEqualTo(expected.size());
+    for (DBObject object : expected) {
+      list.remove(object);
+    }
+    assertThat(list.getElements()).isEmpty();
+  }
+}
@@ -5,11 +5,15 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.collect.Iterables;
 import org.assertj.core.api.Assertions;
@@ -576,4 +580,195 @@ public class FongoDBCollectionTest {
     collection.insert(new BasicDBObject("sub", value));
     assertEquals(value, collection.findOne().get("sub"));
   }
+
+  @Test
+  public void findIteratorReturnsAllDocumentsByBatch() {
+    for (int i = 0; i < 10; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("even", i % 2 == 0));
+    }
+
+    Iterator<DBObject> iterator = collection.__findIterator(new BasicDBObject("even", true), null, 1, 2, 0);
+
+    List<Object> ids = new ArrayList<Object>();
+    while (iterator.hasNext()) {
+      ids.add(iterator.next().get("_id"));
+    }
+    assertThat(ids).containsExactly(2, 4, 6, 8);
+  }
+
+  @Test
+  public void cursorToArrayAfterIterationReturnsAllDocuments() {
+    for (int i = 0; i < 10; i++) {
+      collection.insert(new BasicDBObject("_id", i));
+    }
+
+    DBCursor cursor = collection.find().batchSize(3);
+    assertEquals(0, cursor.next().get("_id"));
+    assertEquals(1, cursor.next().get("_id"));
+
+    assertEquals(10, cursor.toArray().size());
+    assertEquals(2, cursor.next().get("_id"));
+  }
+
+  @Test
+  public void orOfEqualitiesIsRewrittenAsIn() {
+    DBObject query = new BasicDBObject("$or", Arrays.asList(new BasicDBObject("a", 1), new BasicDBObject("a", "x")))
+        .append("b", 2);
+
+    assertThat(FongoDBCollection.orOfEqualitiesAsIn(query))
+        .isEqualTo(new BasicDBObject("b", 2).append("a", new BasicDBObject("$in", Arrays.asList(1, "x"))));
+    DBObject otherFields = new BasicDBObject("$or", Arrays.asList(new BasicDBObject("a", 1), new BasicDBObject("c", 1)));
+    assertThat(FongoDBCollection.orOfEqualitiesAsIn(otherFields)).isSameAs(otherFields);
+  }
+
+  @Test
+  public void findOrOfEqualitiesWithIndex() {
+    collection.createIndex(new BasicDBObject("a", 1));
+    for (int i = 0; i < 10; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("a", i % 3));
+    }
+
+    List<DBObject> results = collection.find(new BasicDBObject("$or", Arrays.asList(new BasicDBObject("a", 2), new BasicDBObject("a", 0)))).toArray();
+
+    List<Object> ids = new ArrayList<Object>();
+    for (DBObject result : results) {
+      ids.add(result.get("_id"));
+    }
+    // In the order of the index.
+    assertThat(ids).containsExactly(0, 3, 6, 9, 2, 5, 8);
+  }
+
+  @Test
+  public void findSortedByIndexStopsAtLimit() {
+    collection.createIndex(new BasicDBObject("a", 1).append("b", 1));
+    for (int i = 0; i < 20; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("a", (i * 7) % 20).append("b", i % 2));
+    }
+
+    List<Object> ascending = new ArrayList<Object>();
+    for (DBObject result : collection.find(new BasicDBObject("b", 1)).sort(new BasicDBObject("a", 1)).limit(3).toArray()) {
+      ascending.add(result.get("a"));
+    }
+    List<Object> descending = new ArrayList<Object>();
+    for (DBObject result : collection.find().sort(new BasicDBObject("a", -1).append("b", -1)).skip(1).limit(3).toArray()) {
+      descending.add(result.get("a"));
+    }
+
+    assertThat(ascending).containsExactly(1, 3, 5);
+    assertThat(descending).containsExactly(18, 17, 16);
+  }
+
+  @Test
+  public void planCacheIsUsedBySameQueryShapeAndInvalidatedByIndexes() {
+    collection.createIndex(new BasicDBObject("a", 1));
+    for (int i = 0; i < 10; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("a", i).append("b", i));
+    }
+    assertEquals(1, collection.find(new BasicDBObject("a", 1)).toArray().size());
+    long misses = collection.getPlanCacheMisses();
+    long hits = collection.getPlanCacheHits();
+
+    assertEquals(1, collection.find(new BasicDBObject("a", 2)).toArray().size());
+    assertEquals(misses, collection.getPlanCacheMisses());
+    assertThat(collection.getPlanCacheHits()).isGreaterThan(hits);
+
+    collection.createIndex(new BasicDBObject("b", 1));
+    assertEquals(1, collection.find(new BasicDBObject("a", 3)).toArray().size());
+    assertEquals(misses + 1, collection.getPlanCacheMisses());
+  }
+
+  @Test
+  public void findWithoutSortKeepsTheInsertionOrder() {
+    for (int id : new int[]{3, 1, 4, 2}) {
+      collection.insert(new BasicDBObject("_id", id).append("a", id % 2));
+    }
+
+    assertThat(ids(collection.find().toArray())).containsExactly(3, 1, 4, 2);
+    assertThat(ids(collection.find(new BasicDBObject("a", 1)).toArray())).containsExactly(3, 1);
+    assertThat(ids(collection.find(new BasicDBObject("a", new BasicDBObject("$gte", 0))).limit(3).toArray())).containsExactly(3, 1, 4);
+    assertEquals(3, collection.findAndModify(new BasicDBObject("a", 1), new BasicDBObject("$set", new BasicDBObject("b", 1))).get("_id"));
+  }
+
+  @Test
+  public void nearQueriesWithoutSortAreOrderedByDistance() {
+    collection.createIndex(new BasicDBObject("loc", "2d"));
+    collection.insert(new BasicDBObject("_id", 1).append("loc", Arrays.asList(10D, 0D)));
+    collection.insert(new BasicDBObject("_id", 2).append("loc", Arrays.asList(1D, 0D)));
+    collection.insert(new BasicDBObject("_id", 3).append("loc", Arrays.asList(5D, 0D)));
+    DBObject near = new BasicDBObject("loc", new BasicDBObject("$near", Arrays.asList(0D, 0D)));
+    DBObject nearSphere = new BasicDBObject("loc", new BasicDBObject("$nearSphere", Arrays.asList(0D, 0D)));
+
+    assertThat(ids(collection.find(near).toArray())).containsExactly(2, 3, 1);
+    assertThat(ids(collection.find(near).limit(2).toArray())).containsExactly(2, 3);
+    assertThat(ids(collection.find(nearSphere).toArray())).containsExactly(2, 3, 1);
+    assertThat(ids(collection.find(nearSphere).skip(1).limit(1).toArray())).containsExactly(3);
+    assertThat(ids(collection.find(near).sort(new BasicDBObject("_id", 1)).toArray())).containsExactly(1, 2, 3);
+    assertEquals(2, collection.findAndModify(near, new BasicDBObject("$set", new BasicDBObject("b", 1))).get("_id"));
+    // The distance is not left in the documents.
+    assertThat(collection.findOne(new BasicDBObject("_id", 2)).keySet()).containsOnly("_id", "loc", "b");
+  }
+
+  @Test
+  public void nearQueriesDoNotModifyTheDocumentsOfConcurrentReaders() throws Exception {
+    collection.createIndex(new BasicDBObject("loc", "2d"));
+    for (int i = 0; i < 50; i++) {
+      collection.insert(new BasicDBObject("_id", i).append("loc", Arrays.asList(i, 0)));
+    }
+    final DBObject near = new BasicDBObject("loc", new BasicDBObject("$near", Arrays.asList(0, 0)));
+    final DBObject within = new BasicDBObject("loc", new BasicDBObject("$geoWithin",
+        new BasicDBObject("$box", Arrays.asList(Arrays.asList(-1, -1), Arrays.asList(100, 1)))));
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      final int thread = t;
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < 100; i++) {
+              if (thread == 0) {
+                collection.insert(new BasicDBObject("_id", 100 + i).append("loc", Arrays.asList(50 + i, 0)));
+                collection.update(new BasicDBObject("_id", i % 50), new BasicDBObject("$set", new BasicDBObject("n", i)));
+              } else if (thread == 1) {
+                List<Object> ids = new ArrayList<Object>();
+                for (DBObject result : collection.find(near).limit(5).toArray()) {
+                  ids.add(result.get("_id"));
+                }
+                assertThat(ids).containsExactly(0, 1, 2, 3, 4);
+                assertThat(collection.find(near).toArray().get(0).get("_id")).isEqualTo(0);
+              } else {
+                for (DBObject result : collection.find(thread == 2 ? new BasicDBObject() : within).toArray()) {
+                  assertThat(Arrays.asList("_id", "loc", "n")).containsAll(result.keySet());
+                }
+              }
+            }
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(failure.get()).isNull();
+    for (DBObject result : collection.find().toArray()) {
+      assertThat(Arrays.asList("_id", "loc", "n")).containsAll(result.keySet());
+    }
+  }
+
+  private static List<Object> ids(List<DBObject> objects) {
+    List<Object> ids = new ArrayList<Object>();
+    for (DBObject object : objects) {
+      ids.add(object.get("_id"));
+    }
+    return ids;
+  }
 }